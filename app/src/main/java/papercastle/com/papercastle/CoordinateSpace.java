@@ -3,36 +3,57 @@ package papercastle.com.papercastle;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.Rect;
 
-import java.util.List;
+import papercastle.com.papercastle.sim.Cell;
 
 /**
+ * Maps the cells of a level's Topology to the screen.
+ * The int forms take and return packed Topology cell ids and don't allocate.
  * Created by Josh on 5/26/2017.
  */
 
 public interface CoordinateSpace {
 
-    // returns the screen coordinate of the center of point p
-    public Point posToScreen(Point p);
+    // returns the screen coordinate of the center of cell p
+    public Point posToScreen(Cell p);
 
-    // returns the point represented by screen coordinate p
-    public Point screenToPos(Point p);
+    // writes the screen coordinate of the center of cell into out
+    public void posToScreen(int cell, Point out);
 
-    public int distance (Point a, Point b);
+    public int posToScreenX(int cell);
 
-    public void draw(Canvas canvas, Paint paint);
+    public int posToScreenY(int cell);
 
-    public void highlightCell(Point p, Canvas canvas, Paint paint);
+    // returns the cell represented by screen coordinate p
+    public Cell screenToPos(Point p);
+
+    // packed id of the cell at the screen coordinate, or Topology.NO_CELL if it is outside the level
+    public int screenToPos(int screenX, int screenY);
+
+    // draws the outlines of the cells in cells, a range of topology x and y with right and bottom exclusive
+    public void draw(Rect cells, Canvas canvas, Paint paint);
+
+    // writes the range of topology x and y of cells that could be drawn in the screen rectangle left, top, right,
+    // bottom into out, clipped to the level, with right and bottom exclusive. It can include a few cells that aren't
+    public void getCellBounds(int left, int top, int right, int bottom, Rect out);
+
+    public void highlightCell(Cell p, Canvas canvas, Paint paint);
+
+    public void highlightCell(int cell, Canvas canvas, Paint paint);
+
+    // fills cell with the paint's color
+    public void fillCell(int cell, Canvas canvas, Paint paint);
 
     public void updateGridSize(int gridSize);
 
     public int getGridSize();
 
-    public List<Point> neighbors(Point p);
-
-    public int numDirections();
+    // moves the level so its top left is at screen x, y
+    public void setScreenOrigin(int x, int y);
 
-    public Point getNeighborInDirection(Point p, int direction);
+    // size of the whole level on screen, in pixels from the screen origin
+    public int getLevelWidth();
 
-    public int getDirectionVector(Point a, Point b);
+    public int getLevelHeight();
 }
@@ -0,0 +1,171 @@
+package papercastle.com.papercastle;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long each part of the last CAPACITY frames took, with percentiles.
+ * Everything is allocated up front, so recording and reading percentiles don't allocate.
+ * Frames are recorded from the render thread, except addInput which is for the ui thread.
+ */
+
+final class FrameStats {
+
+    public static final int INPUT = 0;
+    public static final int UPDATE = 1; // moving objects in the simulation
+    public static final int LOS = 2;
+    public static final int CATCH = 3;
+    public static final int PREVIEW = 4; // running the plan ahead for the timeline, whose ticks aren't in the three above
+    public static final int DRAW = 5;
+    public static final int POST = 6; // unlockCanvasAndPost
+    public static final int FRAME = 7; // the whole frame, including anything not above
+    public static final int NUM_PHASES = 8;
+
+    private static final String[] NAMES = {"input", "update", "los", "catch", "preview", "draw", "post", "frame"};
+
+    public static final int CAPACITY = 1024;
+
+    // log scale buckets of microseconds, 16 per power of 2, so percentiles are within ~6%
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int NUM_BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    private final long[][] samples = new long[NUM_PHASES][CAPACITY]; // nanos, a ring per phase
+    private final int[][] histograms = new int[NUM_PHASES][NUM_BUCKETS]; // of the samples in the ring
+    private final long[] current = new long[NUM_PHASES]; // the frame being recorded
+    private final AtomicLong pendingInputNanos = new AtomicLong();
+    private int next; // ring index the current frame goes in
+    private int count; // frames in the ring
+    private long totalFrames;
+
+    // adds to phase in the current frame
+    public void record(final int phase, final long nanos) {
+        current[phase] += nanos;
+    }
+
+    // from the ui thread, counted in whichever frame ends next
+    public void addInput(final long nanos) {
+        pendingInputNanos.addAndGet(nanos);
+    }
+
+    public void endFrame(final long frameNanos) {
+        current[INPUT] += pendingInputNanos.getAndSet(0);
+        current[FRAME] = frameNanos;
+        for (int phase = 0; phase < NUM_PHASES; phase++) {
+            final long[] ring = samples[phase];
+            if (count == CAPACITY) {
+                histograms[phase][bucket(ring[next])]--;
+            }
+            ring[next] = current[phase];
+            histograms[phase][bucket(current[phase])]++;
+            current[phase] = 0;
+        }
+        next = (next + 1) % CAPACITY;
+        if (count < CAPACITY) count++;
+        totalFrames++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    // upper bound in nanos of the p'th percentile (0 to 100) of phase over the ring, or 0 if empty.
+    // never more than the max
+    public long percentile(final int phase, final double p) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long)Math.ceil(p / 100.0 * count));
+        final int[] histogram = histograms[phase];
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= rank) {
+                return Math.min(bucketUpperNanos(b), max(phase));
+            }
+        }
+        return max(phase);
+    }
+
+    public long max(final int phase) {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[phase][i]);
+        }
+        return max;
+    }
+
+    private static int bucket(final long nanos) {
+        final long micros = nanos / 1000;
+        if (micros < (1 << SUB_BUCKET_BITS)) {
+            return (int)Math.max(0, micros);
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int)(micros >>> (exp - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exp - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    private static long bucketUpperNanos(final int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return (bucket + 1) * 1000L;
+        }
+        final int exp = (bucket >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final long sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((((1L << SUB_BUCKET_BITS) + sub + 1) << (exp - SUB_BUCKET_BITS))) * 1000L;
+    }
+
+    // writes "name p50 p95 p99 max" in ms with one decimal to the end of out, returns how many chars
+    public int formatLine(final int phase, final char[] out) {
+        int i = out.length;
+        i = formatMs(max(phase), out, i);
+        i = formatMs(percentile(phase, 99), out, i);
+        i = formatMs(percentile(phase, 95), out, i);
+        i = formatMs(percentile(phase, 50), out, i);
+        final String name = NAMES[phase];
+        for (int c = name.length() - 1; c >= 0 && i > 0; c--) {
+            out[--i] = name.charAt(c);
+        }
+        return out.length - i;
+    }
+
+    // writes " x.y" before end, returns the new start
+    private static int formatMs(final long nanos, final char[] out, int end) {
+        long tenths = (nanos + 50000) / 100000;
+        out[--end] = (char)('0' + tenths % 10);
+        out[--end] = '.';
+        tenths /= 10;
+        do {
+            out[--end] = (char)('0' + tenths % 10);
+            tenths /= 10;
+        } while (tenths > 0 && end > 1);
+        out[--end] = ' ';
+        return end;
+    }
+
+    // summary percentiles, then every frame in the ring oldest first, all in microseconds
+    public void dump(final Writer out) throws IOException {
+        out.write("# " + totalFrames + " frames, last " + count + " below\n");
+        out.write("# phase p50 p95 p99 max\n");
+        for (int phase = 0; phase < NUM_PHASES; phase++) {
+            out.write("# " + NAMES[phase] + " " + percentile(phase, 50) / 1000 + " " + percentile(phase, 95) / 1000
+                    + " " + percentile(phase, 99) / 1000 + " " + max(phase) / 1000 + "\n");
+        }
+        for (int phase = 0; phase < NUM_PHASES; phase++) {
+            out.write(phase == 0 ? NAMES[phase] : "," + NAMES[phase]);
+        }
+        out.write("\n");
+        final int first = (next - count + CAPACITY) % CAPACITY;
+        for (int i = 0; i < count; i++) {
+            final int index = (first + i) % CAPACITY;
+            for (int phase = 0; phase < NUM_PHASES; phase++) {
+                if (phase > 0) out.write(",");
+                out.write(Long.toString(samples[phase][index] / 1000));
+            }
+            out.write("\n");
+        }
+    }
+}
@@ -3,18 +3,43 @@ package papercastle.com.papercastle;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
+import android.view.ViewConfiguration;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.LevelPack;
+import papercastle.com.papercastle.sim.Simulation;
 
 public class GameActivity extends Activity {
 
-    private static final long TARGET_FRAME_MS = 16;
+    private static final long MAX_CATCH_UP_NANOS = 250 * 1000000L; // the most game time one frame can run, so stalls don't snowball
+    private static final long VSYNC_TIMEOUT_NANOS = 100 * 1000000L; // keep going without vsync if the ui thread is stuck
+    private static final boolean SHOW_FRAME_STATS = false; // debug overlay of frame timings
+    private static final String FRAME_STATS_FILE = "frame-stats.txt"; // in the app's files dir, written on pause
+    // compiled by LevelPackCompiler into the apk's assets, uncompressed (aaptOptions noCompress "pack") so it
+    // can be mapped in place. Level.ALL_LEVELS is played if there isn't one
+    private static final String LEVEL_PACK_ASSET = "levels.pack";
+    private static final String RECORDING_FILE = "last-recording.txt"; // the current level's Recording, same
 
     GameView gameView;
 
@@ -52,8 +77,9 @@ public class GameActivity extends Activity {
 
     static class GameView extends SurfaceView {
 
-        // pause and resume stuff
-        private Thread gameThread = null;
+        // pause and resume stuff. the sim thread ticks the level and hands snapshots to the render thread to draw
+        private Thread simThread = null;
+        private Thread renderThread = null;
         private volatile boolean running;
 
         // drawing stuff
@@ -63,28 +89,96 @@ public class GameActivity extends Activity {
         private int canvasWidth = -1;
         private int uiWidth = -1;
         private int height = -1;
-        private int gridSize = -1;
 
         // level state
         private int currentLevel;
-        private LevelState levelState;
+        private final LevelPack levelPack; // null to play Level.ALL_LEVELS
+        private volatile LevelState levelState; // replaced by the ui thread on a new level
+
+        private final FrameStats frameStats = new FrameStats();
+
+        // what the current touch is doing, ui thread. A touch on the canvas that moves further than touchSlop
+        // pans instead of clicking, and one that ever has a second finger only zooms
+        private boolean scrubbing;
+        private boolean panning;
+        private boolean zooming;
+        private float downX;
+        private float downY;
+        private float lastX;
+        private float lastY;
+        private final int touchSlop;
+        private final ScaleGestureDetector scaleDetector;
+
+        // the sim thread steps once per display refresh, woken by the ui thread's Choreographer
+        private final Object vsyncLock = new Object();
+        private long vsyncNanos; // guarded by vsyncLock, System.nanoTime() base
+        private final Choreographer.FrameCallback vsyncCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                synchronized (vsyncLock) {
+                    vsyncNanos = frameTimeNanos;
+                    vsyncLock.notifyAll();
+                }
+                if (running) {
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            }
+        };
 
         public GameView(final Context context, final int startLevel) {
             super(context);
             currentLevel = startLevel;
+            levelPack = openLevelPack(context);
 
             canvasHolder = getHolder();
             paint = new Paint();
+            touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+            scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                @Override
+                public boolean onScale(ScaleGestureDetector detector) {
+                    if (!levelState.queueZoom((int)detector.getFocusX(), (int)detector.getFocusY(), detector.getScaleFactor())) {
+                        Log.e("GameView", "dropped zoom, too many clicks waiting for the sim thread");
+                    }
+                    return true;
+                }
+            });
 
             this.setOnTouchListener(new OnTouchListener() {
                 @Override
                 public boolean onTouch(View v, MotionEvent event) {
-                    if (event.getAction() != MotionEvent.ACTION_UP) {
-                        // TODO probably do dragging with this later
+                    final int action = event.getActionMasked();
+                    // a touch that starts on the timeline scrubs it until it lifts, wherever it goes
+                    if (action == MotionEvent.ACTION_DOWN) {
+                        scrubbing = levelState.isInTimeline((int)event.getX(), (int)event.getY());
+                        panning = false;
+                        zooming = false;
+                        downX = lastX = event.getX();
+                        downY = lastY = event.getY();
+                    }
+                    if (scrubbing) {
+                        if (!levelState.queueScrub((int)event.getX())) {
+                            Log.e("GameView", "dropped scrub, too many clicks waiting for the sim thread");
+                        }
+                        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                            scrubbing = false;
+                        }
+                        return true;
+                    }
+                    scaleDetector.onTouchEvent(event);
+                    if (action == MotionEvent.ACTION_POINTER_DOWN) {
+                        zooming = true;
+                    }
+                    if (action == MotionEvent.ACTION_MOVE && !zooming) {
+                        pan(event);
+                        return true;
+                    }
+                    if (action != MotionEvent.ACTION_UP || panning || zooming) {
                         return true;
                     }
                     if (v == GameView.this) {
+                        final long start = System.nanoTime();
                         handleClick((int)event.getX(), (int)event.getY());
+                        frameStats.addInput(System.nanoTime() - start);
                     } else {
                         Log.e("GameView", "touch listener got something for another view");
                     }
@@ -97,26 +191,68 @@ public class GameActivity extends Activity {
             resume();
         }
 
+        // ui thread. drags the level once the touch has gone far enough from where it started on the canvas
+        private void pan(final MotionEvent event) {
+            final float x = event.getX();
+            final float y = event.getY();
+            if (!panning && downX < canvasWidth && Math.hypot(x - downX, y - downY) > touchSlop) {
+                panning = true;
+            }
+            if (panning) {
+                // whole pixels, keeping the remainder for the next move
+                final int dx = (int)(x - lastX);
+                final int dy = (int)(y - lastY);
+                if (!levelState.queuePan(dx, dy)) {
+                    Log.e("GameView", "dropped pan, too many clicks waiting for the sim thread");
+                }
+                lastX += dx;
+                lastY += dy;
+            }
+        }
+
         private void handleClick(int screenX, int screenY) {
             if (levelState.isDone()) {
-                if (levelState.getGameState() == LevelState.GameState.SUCCESS) {
+                if (levelState.getGameState() == Simulation.GameState.SUCCESS) {
                     currentLevel++;
+                    setupLevel();
+                } else if (!levelState.queueRetry()) {
+                    Log.e("GameView", "dropped retry, too many clicks waiting for the sim thread");
                 }
-                setupLevel();
-            } else {
-                levelState.handleClick(screenX, screenY);
+            } else if (!levelState.queueClick(screenX, screenY)) {
+                Log.e("GameView", "dropped click, too many waiting for the sim thread");
+            }
+        }
+
+        private static LevelPack openLevelPack(final Context context) {
+            try (AssetFileDescriptor fd = context.getAssets().openFd(LEVEL_PACK_ASSET);
+                 FileInputStream in = fd.createInputStream()) {
+                final FileChannel channel = in.getChannel();
+                return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+            } catch (FileNotFoundException e) {
+                if (hasAsset(context, LEVEL_PACK_ASSET)) {
+                    Log.e("GameView", LEVEL_PACK_ASSET + " is compressed in the apk, so it can't be mapped", e);
+                }
+                return null;
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e("GameView", "couldn't open " + LEVEL_PACK_ASSET, e);
+                return null;
+            }
+        }
+
+        private static boolean hasAsset(final Context context, final String name) {
+            try {
+                final String[] assets = context.getAssets().list("");
+                return assets != null && Arrays.asList(assets).contains(name);
+            } catch (IOException e) {
+                return false;
             }
         }
 
         private void computeUIFactors(final int width, final int height) {
-            // want menu on side to be at least 10% of screen
+            // want menu on side to be at least 10% of screen, and each level's Viewport fits it to the rest
             uiWidth = width / 10;
             canvasWidth = width - uiWidth;
             this.height = height;
-            gridSize = Math.min(canvasWidth / Level.WIDTH, height / Level.HEIGHT);
-            canvasWidth = Math.min(canvasWidth, Level.WIDTH * gridSize);
-            uiWidth = width - canvasWidth;
-            Log.e("GameActivity", "calculated grid size " + gridSize);
         }
 
         private void setup() {
@@ -124,9 +260,15 @@ public class GameActivity extends Activity {
         }
 
         private void setupLevel() {
-            currentLevel = Math.min(currentLevel, Level.ALL_LEVELS.length - 1);
-            levelState = new LevelState(Level.ALL_LEVELS[currentLevel], gridSize);
-            levelState.updateUI(canvasWidth, uiWidth, height, gridSize);
+            final int numLevels = levelPack == null ? Level.ALL_LEVELS.length : levelPack.size();
+            currentLevel = Math.min(currentLevel, numLevels - 1);
+            // only the level being played is decoded
+            final Level level = levelPack == null ? Level.ALL_LEVELS[currentLevel] : levelPack.getLevel(currentLevel);
+            final LevelState newState = new LevelState(level);
+            newState.updateUI(canvasWidth, uiWidth, height);
+            newState.setFrameStats(frameStats, SHOW_FRAME_STATS);
+            newState.getRecording().setLevelName(levelPack == null ? Integer.toString(currentLevel) : levelPack.getName(currentLevel));
+            levelState = newState;
         }
 
         @Override
@@ -134,50 +276,75 @@ public class GameActivity extends Activity {
             super.onLayout(changed, l, t, r, b);
             computeUIFactors(getWidth(), getHeight());
             if (levelState != null) {
-                levelState.updateUI(canvasWidth, uiWidth, height, gridSize);
+                levelState.updateUI(canvasWidth, uiWidth, height);
             }
         }
 
-        private void doRun() {
-            long lastFrameMS = TARGET_FRAME_MS;
+        private void runSim() {
+            long lastVsync = System.nanoTime();
             while (running) {
-                long frameTime = -System.currentTimeMillis();
+                final long vsync = waitForVsync(lastVsync);
 
-                doUpdate(lastFrameMS);
+                // a long frame misses vsyncs, and the next one makes up the time in the same fixed ticks
+                levelState.update(Math.min(vsync - lastVsync, MAX_CATCH_UP_NANOS));
+                lastVsync = vsync;
 
-                doDraw();
+                LockSupport.unpark(renderThread);
+            }
+        }
 
-                frameTime += System.currentTimeMillis();
+        // draws each snapshot the sim thread publishes, while it works on the next one
+        private void runRender() {
+            long lastFrameEnd = System.nanoTime();
+            while (running) {
+                final LevelState state = levelState;
+                if (!state.takeSnapshot()) {
+                    LockSupport.parkNanos(this, VSYNC_TIMEOUT_NANOS);
+                    continue;
+                }
 
-                lastFrameMS = Math.max(TARGET_FRAME_MS, frameTime);
+                doDraw(state);
 
-                // TODO record statistics about frame time?
+                // including waiting for the snapshot, so dropped frames show up
+                final long now = System.nanoTime();
+                frameStats.endFrame(now - lastFrameEnd);
+                lastFrameEnd = now;
+            }
+        }
 
-                final long sleepTime = Math.max(0, TARGET_FRAME_MS - frameTime);
-                if (sleepTime > 0) {
+        // blocks until there's a vsync after last and returns its time, or now if none comes for a while
+        private long waitForVsync(final long last) {
+            synchronized (vsyncLock) {
+                final long deadline = System.nanoTime() + VSYNC_TIMEOUT_NANOS;
+                while (running && vsyncNanos <= last) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return System.nanoTime();
+                    }
                     try {
-                        Thread.sleep(sleepTime);
+                        vsyncLock.wait(remaining / 1000000, (int)(remaining % 1000000));
                     } catch (InterruptedException e) {
-                        Log.e("Error:", "runner thread interrupted while sleeping");
+                        Log.e("Error:", "runner thread interrupted waiting for vsync");
+                        return System.nanoTime();
                     }
                 }
-
+                return Math.max(vsyncNanos, last);
             }
         }
 
-        private void doUpdate(final long ms) {
-            levelState.update(ms);
-        }
-
-        private void doDraw() {
+        private void doDraw(final LevelState state) {
             if (canvasHolder.getSurface().isValid() && canvasWidth != -1 && height != -1) {
                 // Lock the canvas ready to draw
                 final Canvas canvas = canvasHolder.lockCanvas();
 
-                levelState.draw(canvas, paint);
+                final long drawStart = System.nanoTime();
+                state.draw(canvas, paint);
+                final long postStart = System.nanoTime();
+                frameStats.record(FrameStats.DRAW, postStart - drawStart);
 
                 // Draw everything to the screen
                 canvasHolder.unlockCanvasAndPost(canvas);
+                frameStats.record(FrameStats.POST, System.nanoTime() - postStart);
             }
         }
 
@@ -185,22 +352,64 @@ public class GameActivity extends Activity {
         // pause and resume stuff
         private void pause() {
             running = false;
+            Choreographer.getInstance().removeFrameCallback(vsyncCallback);
+            synchronized (vsyncLock) {
+                vsyncLock.notifyAll();
+            }
+            LockSupport.unpark(renderThread);
             try {
-                gameThread.join();
+                simThread.join();
+                renderThread.join();
             } catch (InterruptedException e) {
                 Log.e("Error:", "joining thread");
             }
+            dumpFrameStats();
+            dumpRecording();
+        }
+
+        // so a bug can be replayed with Replayer
+        private void dumpRecording() {
+            final File file = new File(getContext().getFilesDir(), RECORDING_FILE);
+            try (Writer out = new FileWriter(file)) {
+                levelState.getRecording().write(out);
+            } catch (IOException e) {
+                Log.e("GameView", "couldn't write recording to " + file, e);
+            }
+        }
+
+        private void dumpFrameStats() {
+            if (frameStats.getCount() == 0) {
+                return;
+            }
+            final File file = new File(getContext().getFilesDir(), FRAME_STATS_FILE);
+            try (Writer out = new FileWriter(file)) {
+                frameStats.dump(out);
+            } catch (IOException e) {
+                Log.e("GameView", "couldn't write frame stats to " + file, e);
+            }
         }
 
         private void resume() {
+            // onResume comes after the constructor already started it, and two threads would run the level twice as fast
+            if (running) {
+                return;
+            }
             running = true;
-            gameThread = new Thread(new Runnable() {
+            Choreographer.getInstance().postFrameCallback(vsyncCallback);
+            renderThread = new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    doRun();
+                    runRender();
                 }
-            });
-            gameThread.start();
+            }, "render");
+            simThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runSim();
+                }
+            }, "sim");
+            renderThread.start();
+            simThread.start();
         }
     }
 }
@@ -0,0 +1,187 @@
+package papercastle.com.papercastle;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.GameObject;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * Draws the simulation's objects onto a canvas, the moving ones from a RenderSnapshot.
+ * Keeps scratch points so drawing doesn't allocate, so each drawing thread needs its own painter.
+ */
+
+final class GameObjectPainter {
+
+    private final Topology topology;
+    private final CoordinateSpace cs;
+
+    private final Point screenPos = new Point();
+    private final Point lastScreenPoint = new Point();
+    private final Path losPath = new Path();
+
+    GameObjectPainter(Topology topology, CoordinateSpace cs) {
+        this.topology = topology;
+        this.cs = cs;
+    }
+
+    public void drawStatic(final GameObject object, final Canvas canvas, final Paint paint) {
+        paint.setColor(object.getColor());
+        cs.fillCell(object.getCurCellIndex(topology), canvas, paint);
+    }
+
+    // draws object i of the snapshot
+    public void draw(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        if (s.kind[i] == RenderSnapshot.KIND_GUARD) {
+            drawGuard(s, i, canvas, paint);
+        } else if (s.kind[i] == RenderSnapshot.KIND_SELECTABLE) {
+            drawSelectable(s, i, canvas, paint);
+        } else {
+            drawPath(s, i, canvas, paint);
+            drawBasic(s, i, canvas, paint);
+        }
+    }
+
+    // writes the screen position of object as of the last tick into out
+    public static void getCurScreenPos(final GameObject object, final Topology t, final CoordinateSpace cs, final Point out) {
+        final int pathIndex = object.getPathIndex();
+        final int a = indexOf(object.getPathPoint(pathIndex), t);
+        if (pathIndex == object.getPathLength() - 1) {
+            cs.posToScreen(a, out);
+            return;
+        }
+        final int b = indexOf(object.getPathPoint(pathIndex + 1), t);
+        setBetween(a, b, object.getPathFraction(), cs, out);
+    }
+
+    private static int indexOf(final int point, final Topology t) {
+        return t.indexOf(Cell.unpackX(point), Cell.unpackY(point));
+    }
+
+    // writes the screen position pathPos (in PATH_UNITS) along the length cells from path[start] into out
+    private void getScreenPos(final int[] path, final int start, final int length, final long pathPos, final Point out) {
+        final int pathIndex = (int)(pathPos / GameObject.PATH_UNITS);
+        if (pathIndex >= length - 1) {
+            cs.posToScreen(path[start + length - 1], out);
+            return;
+        }
+        final double pathMod = (pathPos - pathIndex * GameObject.PATH_UNITS) / (double)GameObject.PATH_UNITS;
+        setBetween(path[start + pathIndex], path[start + pathIndex + 1], pathMod, cs, out);
+    }
+
+    private static void setBetween(final int a, final int b, final double p, final CoordinateSpace cs, final Point out) {
+        out.set((int)interpolate(cs.posToScreenX(a), cs.posToScreenX(b), p),
+                (int)interpolate(cs.posToScreenY(a), cs.posToScreenY(b), p));
+    }
+
+    private static double interpolate(int a, int b, double p) {
+        return a * (1 - p) + b * p;
+    }
+
+    // darker version of color
+    private static int pathColor(final int color) {
+        return Color.argb(160, Color.red(color) / 2, Color.green(color) / 2, Color.blue(color) / 2);
+    }
+
+    private static int selectedColor(final int color) {
+        return Color.argb(255, 255 - Color.red(color), 255 - Color.green(color), 255 - Color.blue(color));
+    }
+
+    private void drawPath(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        paint.setColor(pathColor(s.color[i]));
+        paint.setStrokeWidth(5);
+
+        final long pathPos = s.getDrawPathPos(i);
+        final int pathIndex = (int)(pathPos / GameObject.PATH_UNITS);
+
+        if (pathIndex < s.pathLength[i] - 1) {
+            getScreenPos(s.pathCells, s.pathStart[i], s.pathLength[i], pathPos, lastScreenPoint);
+            for (int j = pathIndex + 1; j < s.pathLength[i]; j++) {
+                final int next = s.pathCells[s.pathStart[i] + j];
+                final int nextX = cs.posToScreenX(next);
+                final int nextY = cs.posToScreenY(next);
+                canvas.drawLine(lastScreenPoint.x, lastScreenPoint.y, nextX, nextY, paint);
+                lastScreenPoint.set(nextX, nextY);
+            }
+        }
+    }
+
+    private void drawBasic(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        getScreenPos(s.pathCells, s.pathStart[i], s.pathLength[i], s.getDrawPathPos(i), screenPos);
+        paint.setColor(s.color[i]);
+        paint.setStyle(Paint.Style.FILL);
+        canvas.drawCircle(screenPos.x, screenPos.y, cs.getGridSize() / 4, paint);
+    }
+
+    private void drawSelectable(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        drawPath(s, i, canvas, paint);
+        drawBasic(s, i, canvas, paint);
+
+        if (s.selected[i]) {
+            paint.setColor(selectedColor(s.color[i]));
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(10);
+            canvas.drawCircle(screenPos.x, screenPos.y, cs.getGridSize() / 4, paint);
+        }
+    }
+
+    private void drawGuard(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        // draw LOS
+        drawLOS(s, i, canvas, paint);
+
+        drawBasic(s, i, canvas, paint);
+        // draw a gold circle in the middle of basic
+        paint.setColor(Color.argb(255, 255, 0xd7, 0));
+        canvas.drawCircle(screenPos.x, screenPos.y, cs.getGridSize() / 12, paint);
+    }
+
+    // TODO how to compute how much it goes to draw?
+    private void drawLOS(final RenderSnapshot s, final int i, final Canvas canvas, final Paint paint) {
+        final int curLos = s.curLos[i];
+        if (curLos <= 0) return;
+
+        getScreenPos(s.pathCells, s.pathStart[i], s.pathLength[i], s.getDrawPathPos(i), screenPos);
+
+        if (s.celebrating[i]) {
+            paint.setARGB(160, 50, 255, 50);
+        } else {
+            paint.setARGB(160, 255, 50, 50);
+        }
+        paint.setStyle(Paint.Style.FILL);
+
+        if (s.cone[i]) {
+            // the first is the guard's own cell, which it's drawn over
+            final int end = s.losStart[i] + s.losLength[i];
+            for (int j = s.losStart[i] + 1; j < end; j++) {
+                cs.fillCell(s.losCells[j], canvas, paint);
+            }
+            return;
+        }
+
+        final int pPos = cs.screenToPos(screenPos.x, screenPos.y);
+        final int neighbor = topology.getNeighborInDirection(pPos, s.dir[i]);
+        if (neighbor == Topology.NO_CELL) return;
+
+        final int stepX = cs.posToScreenX(neighbor) - cs.posToScreenX(pPos);
+        final int stepY = cs.posToScreenY(neighbor) - cs.posToScreenY(pPos);
+
+        final int endX = screenPos.x + curLos * stepX;
+        final int endY = screenPos.y + curLos * stepY;
+
+        // across the step, whichever way it goes
+        final int endDx = -stepY / 4;
+        final int endDy = stepX / 4;
+
+        losPath.rewind();
+        losPath.setFillType(Path.FillType.EVEN_ODD);
+        losPath.moveTo(endX - endDx, endY - endDy);
+        losPath.lineTo(endX + endDx, endY + endDy);
+        losPath.lineTo(screenPos.x, screenPos.y);
+        losPath.close();
+        canvas.drawPath(losPath, paint);
+    }
+}
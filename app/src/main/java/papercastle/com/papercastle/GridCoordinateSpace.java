@@ -3,9 +3,10 @@ package papercastle.com.papercastle;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.Rect;
 
-import java.util.ArrayList;
-import java.util.List;
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.Topology;
 
 /**
  * A grid coordinate space
@@ -16,29 +17,54 @@ public class GridCoordinateSpace implements CoordinateSpace {
 
     private final Point screenOrigin;
     private int gridSize;
+    private final Topology topology;
     private final int gridWidth;
     private final int gridHeight;
 
-    public GridCoordinateSpace(Point screenOrigin, int gridSize, int gridWidth, int gridHeight) {
+    public GridCoordinateSpace(Point screenOrigin, int gridSize, Topology topology) {
         this.screenOrigin = screenOrigin;
         this.gridSize = gridSize;
-        this.gridWidth = gridWidth;
-        this.gridHeight = gridHeight;
+        this.topology = topology;
+        this.gridWidth = topology.getWidth();
+        this.gridHeight = topology.getHeight();
     }
 
     @Override
-    public Point posToScreen(Point p) {
+    public Point posToScreen(Cell p) {
         return new Point(pTS(p.x, screenOrigin.x), pTS(p.y, screenOrigin.y));
     }
 
+    @Override
+    public void posToScreen(int cell, Point out) {
+        out.set(posToScreenX(cell), posToScreenY(cell));
+    }
+
+    @Override
+    public int posToScreenX(int cell) {
+        return pTS(topology.getX(cell), screenOrigin.x);
+    }
+
+    @Override
+    public int posToScreenY(int cell) {
+        return pTS(topology.getY(cell), screenOrigin.y);
+    }
+
     // helper for posToScreen that does 1 dimension
     private int pTS(int pos, int origin) {
         return origin + (pos * gridSize) + (gridSize / 2);
     }
 
     @Override
-    public Point screenToPos(Point p) {
-        return new Point(sTP(p.x, screenOrigin.x), sTP(p.y, screenOrigin.y));
+    public Cell screenToPos(Point p) {
+        return new Cell(sTP(p.x, screenOrigin.x), sTP(p.y, screenOrigin.y));
+    }
+
+    @Override
+    public int screenToPos(int screenX, int screenY) {
+        if (screenX < screenOrigin.x || screenY < screenOrigin.y) {
+            return Topology.NO_CELL;
+        }
+        return topology.indexOf(sTP(screenX, screenOrigin.x), sTP(screenY, screenOrigin.y));
     }
 
     // helper for screenToPos that does 1 dimension
@@ -47,83 +73,83 @@ public class GridCoordinateSpace implements CoordinateSpace {
     }
 
     @Override
-    public int distance(Point a, Point b) {
-        return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
-    }
-
-    @Override
-    public void draw(Canvas canvas, Paint paint) {
+    public void draw(Rect cells, Canvas canvas, Paint paint) {
+        if (cells.isEmpty()) {
+            return;
+        }
         paint.setARGB(255, 0, 0, 0);
         paint.setStrokeWidth(3);
-        for (int x = 0; x <= gridWidth; x++) {
-            canvas.drawLine(x * gridSize, screenOrigin.y, x * gridSize, screenOrigin.y + gridHeight * gridSize, paint);
+        final int left = screenOrigin.x + cells.left * gridSize;
+        final int top = screenOrigin.y + cells.top * gridSize;
+        final int right = screenOrigin.x + cells.right * gridSize;
+        final int bottom = screenOrigin.y + cells.bottom * gridSize;
+        for (int x = left; x <= right; x += gridSize) {
+            canvas.drawLine(x, top, x, bottom, paint);
         }
-        for (int y = 0; y <= gridHeight; y++) {
-            canvas.drawLine(screenOrigin.x, y * gridSize, screenOrigin.x + gridWidth * gridSize, y * gridSize, paint);
+        for (int y = top; y <= bottom; y += gridSize) {
+            canvas.drawLine(left, y, right, y, paint);
         }
     }
 
     @Override
-    public void highlightCell(Point p, Canvas canvas, Paint paint) {
-        paint.setStrokeWidth(10);
-        final int x = screenOrigin.x + p.x * gridSize;
-        final int y = screenOrigin.y + p.y * gridSize;
-        canvas.drawRect(x, y, x + gridSize, y + gridSize, paint);
+    public void getCellBounds(int left, int top, int right, int bottom, Rect out) {
+        out.set(Math.max(0, floorDiv(left - screenOrigin.x)), Math.max(0, floorDiv(top - screenOrigin.y)),
+                Math.min(gridWidth, floorDiv(right - 1 - screenOrigin.x) + 1),
+                Math.min(gridHeight, floorDiv(bottom - 1 - screenOrigin.y) + 1));
     }
 
-    @Override
-    public void updateGridSize(final int gridSize) {
-        this.gridSize = gridSize;
+    // cells from the origin to pixel pos, rounding down on both sides of it
+    private int floorDiv(int pos) {
+        return pos >= 0 ? pos / gridSize : -((-pos + gridSize - 1) / gridSize);
     }
 
     @Override
-    public int getGridSize() {
-        return gridSize;
+    public void highlightCell(Cell p, Canvas canvas, Paint paint) {
+        highlight(p.x, p.y, canvas, paint);
     }
 
     @Override
-    public List<Point> neighbors(Point p) {
-        final List<Point> l = new ArrayList<>(4);
-        addIfInBounds(l, p.x - 1, p.y);
-        addIfInBounds(l, p.x + 1, p.y);
-        addIfInBounds(l, p.x, p.y - 1);
-        addIfInBounds(l, p.x, p.y + 1);
-        return l;
+    public void highlightCell(int cell, Canvas canvas, Paint paint) {
+        highlight(topology.getX(cell), topology.getY(cell), canvas, paint);
     }
 
     @Override
-    public int numDirections() {
-        return 4;
+    public void fillCell(int cell, Canvas canvas, Paint paint) {
+        paint.setStyle(Paint.Style.FILL);
+        final int x = screenOrigin.x + topology.getX(cell) * gridSize;
+        final int y = screenOrigin.y + topology.getY(cell) * gridSize;
+        canvas.drawRect(x, y, x + gridSize, y + gridSize, paint);
+    }
+
+    private void highlight(int cellX, int cellY, Canvas canvas, Paint paint) {
+        paint.setStrokeWidth(10);
+        final int x = screenOrigin.x + cellX * gridSize;
+        final int y = screenOrigin.y + cellY * gridSize;
+        canvas.drawRect(x, y, x + gridSize, y + gridSize, paint);
     }
 
-    private int[][] deltas = new int[][] {{1, 0}, {0, -1}, {-1, 0}, {0, 1}};
+    @Override
+    public void updateGridSize(final int gridSize) {
+        this.gridSize = gridSize;
+    }
 
     @Override
-    public Point getNeighborInDirection(Point p, int direction) {
-        return new Point(p.x + deltas[direction][0], p.y + deltas[direction][1]);
+    public int getGridSize() {
+        return gridSize;
     }
 
     @Override
-    public int getDirectionVector(Point a, Point b) {
-        final int dx = b.x - a.x;
-        final int dy = b.y - a.y;
+    public void setScreenOrigin(int x, int y) {
+        screenOrigin.set(x, y);
+    }
 
-        int index = -1;
-        for (int i = 0; i < 4; i++) {
-            if (deltas[i][0] == dx && deltas[i][1] == dy) {
-                index = i;
-                break;
-            }
-        }
-        if (index == -1) {
-            throw new IllegalArgumentException();
-        }
-        return index;
+    @Override
+    public int getLevelWidth() {
+        return gridWidth * gridSize;
     }
 
-    private void addIfInBounds(List<Point> l, int x, int y) {
-        if (x >= 0 && y >= 0 && x < gridWidth && y < gridHeight) {
-            l.add(new Point(x, y));
-        }
+    @Override
+    public int getLevelHeight() {
+        return gridHeight * gridSize;
     }
 }
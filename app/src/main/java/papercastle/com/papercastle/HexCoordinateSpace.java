@@ -0,0 +1,201 @@
+package papercastle.com.papercastle;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * Pointy topped hexes for a HexTopology. gridSize is a hex's width from flat side to flat side, so rows are
+ * gridSize * sqrt(3) / 2 apart and each is shifted half a hex right of the one above.
+ * Drawing reuses one Path, so a HexCoordinateSpace is only safe to draw with from one thread at a time.
+ */
+
+public class HexCoordinateSpace implements CoordinateSpace {
+
+    private static final double SQRT_3 = Math.sqrt(3);
+
+    private final Point screenOrigin;
+    private int gridSize;
+    private final Topology topology;
+
+    // corner offsets from a hex's center, clockwise from the top. Recomputed with gridSize
+    private final float[] cornerX = new float[6];
+    private final float[] cornerY = new float[6];
+    private final Path hexPath = new Path();
+
+    public HexCoordinateSpace(Point screenOrigin, int gridSize, Topology topology) {
+        this.screenOrigin = screenOrigin;
+        this.topology = topology;
+        updateGridSize(gridSize);
+    }
+
+    // center to corner
+    private double radius() {
+        return gridSize / SQRT_3;
+    }
+
+    @Override
+    public Point posToScreen(Cell p) {
+        return new Point(centerX(p.x, p.y), centerY(p.y));
+    }
+
+    @Override
+    public void posToScreen(int cell, Point out) {
+        out.set(posToScreenX(cell), posToScreenY(cell));
+    }
+
+    @Override
+    public int posToScreenX(int cell) {
+        return centerX(topology.getX(cell), topology.getY(cell));
+    }
+
+    @Override
+    public int posToScreenY(int cell) {
+        return centerY(topology.getY(cell));
+    }
+
+    private int centerX(int q, int r) {
+        return screenOrigin.x + (int)Math.round(gridSize * (q + r / 2.0)) + gridSize / 2;
+    }
+
+    private int centerY(int r) {
+        return screenOrigin.y + (int)Math.round(radius() * (1 + 1.5 * r));
+    }
+
+    @Override
+    public Cell screenToPos(Point p) {
+        final long qr = round(p.x, p.y);
+        return new Cell((int)(qr >> 32), (int)qr);
+    }
+
+    @Override
+    public int screenToPos(int screenX, int screenY) {
+        final long qr = round(screenX, screenY);
+        return topology.indexOf((int)(qr >> 32), (int)qr);
+    }
+
+    // axial coordinates of the hex the screen point is in, as q in the high int and r in the low int.
+    // Rounds the fractional position through cube coordinates, which always lands on the nearest hex
+    private long round(int screenX, int screenY) {
+        final double q = fractionalQ(screenX, screenY);
+        final double r = fractionalR(screenY);
+        final double s = -q - r;
+
+        long rq = Math.round(q);
+        long rr = Math.round(r);
+        final long rs = Math.round(s);
+        final double dq = Math.abs(rq - q);
+        final double dr = Math.abs(rr - r);
+        final double ds = Math.abs(rs - s);
+        // the one that rounded furthest is the one to fix so they still add up to 0
+        if (dq > dr && dq > ds) {
+            rq = -rr - rs;
+        } else if (dr > ds) {
+            rr = -rq - rs;
+        }
+        return (rq << 32) | (rr & 0xffffffffL);
+    }
+
+    // axial position of a screen point, before rounding to a hex
+    private double fractionalQ(int screenX, int screenY) {
+        final double x = screenX - screenOrigin.x - gridSize / 2.0;
+        final double y = screenY - screenOrigin.y - radius();
+        return (SQRT_3 / 3 * x - y / 3) / radius();
+    }
+
+    private double fractionalR(int screenY) {
+        final double y = screenY - screenOrigin.y - radius();
+        return (2.0 / 3 * y) / radius();
+    }
+
+    @Override
+    public void draw(Rect cells, Canvas canvas, Paint paint) {
+        paint.setARGB(255, 0, 0, 0);
+        paint.setStrokeWidth(3);
+        paint.setStyle(Paint.Style.STROKE);
+        for (int r = cells.top; r < cells.bottom; r++) {
+            for (int q = cells.left; q < cells.right; q++) {
+                canvas.drawPath(hexAround(topology.indexOf(q, r)), paint);
+            }
+        }
+        paint.setStyle(Paint.Style.FILL);
+    }
+
+    @Override
+    public void getCellBounds(int left, int top, int right, int bottom, Rect out) {
+        // the rectangle is a parallelogram in axial coordinates, so q is furthest apart at opposite corners.
+        // A hex reaches a cell past its center, so one more on every side
+        final double minQ = fractionalQ(left, bottom);
+        final double maxQ = fractionalQ(right, top);
+        out.set(Math.max(0, (int)Math.floor(minQ) - 1), Math.max(0, (int)Math.floor(fractionalR(top)) - 1),
+                Math.min(topology.getWidth(), (int)Math.ceil(maxQ) + 2),
+                Math.min(topology.getHeight(), (int)Math.ceil(fractionalR(bottom)) + 2));
+    }
+
+    @Override
+    public void highlightCell(Cell p, Canvas canvas, Paint paint) {
+        highlightCell(topology.indexOf(p), canvas, paint);
+    }
+
+    @Override
+    public void highlightCell(int cell, Canvas canvas, Paint paint) {
+        paint.setStrokeWidth(10);
+        canvas.drawPath(hexAround(cell), paint);
+    }
+
+    @Override
+    public void fillCell(int cell, Canvas canvas, Paint paint) {
+        paint.setStyle(Paint.Style.FILL);
+        canvas.drawPath(hexAround(cell), paint);
+    }
+
+    // the outline of cell in hexPath
+    private Path hexAround(int cell) {
+        final int x = posToScreenX(cell);
+        final int y = posToScreenY(cell);
+        hexPath.rewind();
+        hexPath.moveTo(x + cornerX[0], y + cornerY[0]);
+        for (int i = 1; i < 6; i++) {
+            hexPath.lineTo(x + cornerX[i], y + cornerY[i]);
+        }
+        hexPath.close();
+        return hexPath;
+    }
+
+    @Override
+    public void updateGridSize(final int gridSize) {
+        this.gridSize = gridSize;
+        final double radius = radius();
+        for (int i = 0; i < 6; i++) {
+            final double angle = Math.toRadians(60 * i - 90);
+            cornerX[i] = (float)(radius * Math.cos(angle));
+            cornerY[i] = (float)(radius * Math.sin(angle));
+        }
+    }
+
+    @Override
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    @Override
+    public void setScreenOrigin(int x, int y) {
+        screenOrigin.set(x, y);
+    }
+
+    @Override
+    public int getLevelWidth() {
+        // the bottom row is shifted right the most
+        return (int)Math.round(gridSize * (topology.getWidth() + (topology.getHeight() - 1) / 2.0));
+    }
+
+    @Override
+    public int getLevelHeight() {
+        return (int)Math.round(radius() * (2 + 1.5 * (topology.getHeight() - 1)));
+    }
+}
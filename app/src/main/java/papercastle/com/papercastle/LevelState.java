@@ -5,219 +5,316 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
-
-import static papercastle.com.papercastle.Level.Terrain.NONE;
+import papercastle.com.papercastle.sim.Command;
+import papercastle.com.papercastle.sim.CoverageSchedule;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.OccupancyGrid;
+import papercastle.com.papercastle.sim.Recording;
+import papercastle.com.papercastle.sim.Router;
+import papercastle.com.papercastle.sim.SafeRouter;
+import papercastle.com.papercastle.sim.SelectableGameObject;
+import papercastle.com.papercastle.sim.Simulation;
+import papercastle.com.papercastle.sim.Timeline;
+import papercastle.com.papercastle.sim.Topology;
 
 /**
- * Class that encapsulates one instance of a level
+ * Class that encapsulates one instance of a level on screen: draws the Simulation and feeds it input
+ *
+ * Three threads use it, and only the sim thread touches the simulation. It runs update, which applies queued
+ * clicks between ticks, ticks, and publishes a RenderSnapshot. The render thread draws the newest snapshot
+ * while the sim thread works on the next one. The ui thread only queues clicks, and pans and zooms, which move
+ * the sim thread's Viewport so clicks always land where the snapshot they were aimed at drew things.
  * Created by Josh on 5/28/2017.
  */
 
 public class LevelState {
 
-    enum GameState {
-        PLAN, EXECUTE, SUCCESS, FAILURE
-    }
-
-    private final Level.Terrain[][] terrain; // array is [y][x]
-    private final CoordinateSpace cs;
-    private GameState gameState;
+    private final Simulation sim;
+    private final Topology topology;
+    private final CoordinateSpace cs; // sim thread, moved by the viewport
+    private final Viewport viewport;
+    private final CoordinateSpace renderCs; // render thread, moved to each snapshot's view
+    private final GameObjectPainter painter;
+
+    // scratch space so drawing and clicking don't allocate. The draw ones belong to the render thread, the click ones to the sim thread
+    private final int[] neighborCells;
+    private final Path playPath = new Path();
+    private final char[] countChars = new char[11];
+    private final Point clickScreenPos = new Point();
+    private final int[] clickNeighborCells;
+    private final Rect viewCells = new Rect();
+
+    // clicks from the ui thread, as screen x in the high int and y in the low int. No click is as far left as
+    // Integer.MIN_VALUE, so that in the high int means RETRY, or a scrub to the screen x in the low int.
+    // Pans and zooms have a tag in the top 16 bits that's further left still, and 3 shorts after it
+    private final LongQueue clicks = new LongQueue(MAX_QUEUED_CLICKS);
+    private static final long NOT_A_CLICK = (long)Integer.MIN_VALUE << 32;
+    private static final long RETRY = NOT_A_CLICK | 0xffffffffL;
+    private static final long TAG_MASK = 0xffffL << 48;
+    private static final long PAN = 0x8001L << 48; // dx, dy
+    private static final long ZOOM = 0x8002L << 48; // scale in ZOOM_UNITS, focus x, focus y
+    private static final double ZOOM_UNITS = 4096;
+    // every command and tick of this level since it last went back to tick 0, sim thread only
+    private final Recording recording = new Recording();
+
+    // the level as it started, and as it was when the player last pressed play from tick 0, to go back to
+    // without building a new LevelState. Sim thread only
+    private final Simulation.Snapshot startSnapshot = new Simulation.Snapshot();
+    private final Simulation.Snapshot planSnapshot = new Simulation.Snapshot();
+    private int planCommands; // how many of the recording's commands made the plan
+
+    // the plan run ahead, a little every frame while planning, so it can be scrubbed through. While previewing
+    // the simulation is somewhere in it, and is put back before anything else happens to it
+    private final Timeline timeline;
+    private volatile boolean previewing;
+    private static final long MAX_PREVIEW_TICKS = 60 * 1000 / Simulation.TICK_MS;
+    private static final long PRESIMULATE_NANOS = 2 * 1000000L; // of each frame, at most
+
+    private static final long TICK_NANOS = Simulation.TICK_MS * 1000000L;
+    private static final int MAX_QUEUED_CLICKS = 64;
+    private static final String RESET_TEXT = "\u21ba";
+    // the ui is in eighths of the height: two for play, one for reset at the bottom, and a row per clone type
+    // with any left in between. Types past what fits aren't shown, so a tap can't reach them through reset
+    private static final int MAX_CLONE_ROWS = 5;
+    private long pendingNanos; // frame time not yet consumed by fixed simulation ticks
+    private final long[] phaseNanos = new long[Simulation.NUM_PHASES]; // sim thread's running totals, for snapshots
+    private final long[] recordedPhaseNanos = new long[Simulation.NUM_PHASES]; // render thread's, already in frameStats
+    private long previewNanos; // sim thread's running total of running the timeline, for snapshots
+    private long recordedPreviewNanos; // render thread's, already in frameStats
+
+    private final TripleBuffer<RenderSnapshot> snapshots =
+            new TripleBuffer<>(new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot());
+
+    // the background, grid, walls and end never move, so they're drawn once into tiles and copied every frame
+    private final TerrainTiles terrainTiles;
+    private final int endCell;
+    // shortest routes over the terrain, so tapping a cell further than a step away draws a path there. Sim thread only
+    private final Router router;
+    // routes the guards won't see, tried first. Working out the guards' schedule can take a while on big levels, so
+    // it's made on a thread of its own when the level is, and taps get the shortest route until it's set.
+    // Only used by the sim thread
+    private volatile SafeRouter safeRouter;
+
+    private FrameStats frameStats; // null if not recording
+    private boolean showFrameStats;
+    private final char[] statsChars = new char[64];
 
     private int canvasWidth = -1;
     private int uiWidth = -1;
     private int height = -1;
+    private volatile boolean layoutChanged; // set by updateUI for the sim thread to fit the viewport to
+
+    public LevelState(Level l) {
+        sim = new Simulation(l);
+        topology = sim.getTopology();
+
+        cs = createCoordinateSpace(l.getCsType(), topology);
+        viewport = new Viewport(cs);
+        renderCs = createCoordinateSpace(l.getCsType(), topology);
+        painter = new GameObjectPainter(topology, renderCs);
+        neighborCells = new int[topology.numDirections()];
+        clickNeighborCells = new int[topology.numDirections()];
+        endCell = topology.indexOf(sim.getEndPos());
+        terrainTiles = new TerrainTiles(topology, createCoordinateSpace(l.getCsType(), topology), sim.getStaticObjects());
+        router = new Router(topology, sim.getTerrain());
+        sim.save(startSnapshot);
+        timeline = new Timeline(sim, MAX_PREVIEW_TICKS);
+        startSafeRouter(l.getGuards());
+    }
 
-    // non-static objects (objects that need to move each frame)
-
-    private final Object objectsLock = new Object();// used to synchronize access to objects sets between game and ui threads
-    private final Set<GameObject> objects;
-    // selectable objects
-    private final Set<SelectableGameObject> selectableObjects;
-    // selected object
-    private volatile SelectableGameObject selectedObject;
-    // player object
-    private SelectableGameObject playerObject;
-
-    // clone stuff
-    private final int[] availableClones;
-    private int activeClonePlacement;
-
-    // traps
-    private final Point endPos;
-
-    // available clones
-    // activeClonePlacement?
+    // the terrain never changes and the schedule makes its own guards, so nothing it reads is written while it works
+    private void startSafeRouter(final GuardObject.GuardFactory[] guards) {
+        final Level.Terrain[][] terrain = sim.getTerrain();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                safeRouter = new SafeRouter(topology, router, new CoverageSchedule(topology, terrain, guards, Simulation.TICK_MS));
+            }
+        }, "coverage");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
 
-    public LevelState(Level l, int gridSize) {
-        objects = new LinkedHashSet<>(); // linked for draw order in insertion order instead of random
-        selectableObjects = new LinkedHashSet<>();
+    // each thread that draws or takes clicks moves its own, so they get a grid size once there's a Viewport
+    private static CoordinateSpace createCoordinateSpace(final Level.CSType type, final Topology topology) {
+        if (type == Level.CSType.GRID) {
+            return new GridCoordinateSpace(new Point(0, 0), 1, topology);
+        } else if (type == Level.CSType.HEX) {
+            return new HexCoordinateSpace(new Point(0, 0), 1, topology);
+        }
+        throw new IllegalArgumentException("Invalid grid type " + type);
+    }
 
-        if (l.getCsType() == Level.CSType.GRID) {
-            cs = new GridCoordinateSpace(new Point(0, 0), gridSize, l.getLayout()[0].length, l.getLayout().length);
+    // sim thread. runs as many whole ticks as fit in the time so far, keeping the remainder to draw between
+    // ticks with, then publishes a snapshot of the result. Clicks go in before each tick
+    public void update(final long nanos) {
+        if (layoutChanged) {
+            layoutChanged = false;
+            viewport.reset(canvasWidth, height, sim.getPlayerObject().getCurCellIndex(topology));
+        }
+        applyClicks();
+        if (getGameState() == Simulation.GameState.EXECUTE) {
+            pendingNanos += nanos;
         } else {
-            throw new IllegalArgumentException("Invalid grid type " + l.getCsType());
-        }
-
-        Point startPos = null;
-        Point endPos = null;
-
-        // deep copy terrain
-        final Level.Terrain[][] layout = l.getLayout();
-        terrain = new Level.Terrain[layout.length][];
-        for (int y = 0; y < layout.length; y++) {
-            terrain[y] = Arrays.copyOf(layout[y], layout[y].length);
-            for (int x = 0; x < terrain[y].length; x++) {
-                if (terrain[y][x] == NONE) {
-                    continue;
-                } else if (terrain[y][x] == Level.Terrain.WALL) {
-                    objects.add(new WallObject(new Point(x, y)));
-                } else if (terrain[y][x] == Level.Terrain.START) {
-                    if (startPos != null) throw new IllegalArgumentException("Multiple start positions defined in level!");
-                    startPos = new Point(x, y);
-                    terrain[y][x] = NONE;
-                } else if (terrain[y][x] == Level.Terrain.END) {
-                    if (endPos != null) throw new IllegalArgumentException("Multiple end positions defined in level!");
-                    endPos = new Point(x, y);
-                    terrain[y][x] = NONE;
-                    objects.add(new EndObject(new Point(x, y)));
-                }
+            pendingNanos = 0;
+        }
+        while (pendingNanos >= TICK_NANOS && getGameState() == Simulation.GameState.EXECUTE) {
+            timeline.reset();
+            sim.tick();
+            pendingNanos -= TICK_NANOS;
+            recording.recordTick(sim.getTickCount(), sim.stateHash());
+            if (sim.isDone()) {
+                recording.setResult(sim.getGameState());
             }
+            applyClicks();
         }
-
-        if (startPos == null) throw new IllegalArgumentException("No start position defined in level");
-        if (endPos == null) throw new IllegalArgumentException("No end position defined in level");
-        this.endPos = endPos;
-
-        playerObject = new SelectableGameObject(startPos, 1.0, Color.argb(255, 0, 255, 0));
-        objects.add(playerObject);
-        selectableObjects.add(playerObject);
-        selectObject(playerObject);
-
-        availableClones = Arrays.copyOf(l.getCloneTypes(), l.getCloneTypes().length);
-        if (availableClones.length > SelectableGameObject.CLONE_TYPE_DEFS.length) {
-            throw new IllegalArgumentException("want " + availableClones.length + " types of clones but only " + SelectableGameObject.CLONE_TYPE_DEFS.length);
+        if (getGameState() == Simulation.GameState.PLAN && !timeline.isComplete()) {
+            presimulate();
+        }
+        for (int phase = 0; phase < Simulation.NUM_PHASES; phase++) {
+            phaseNanos[phase] += sim.takePhaseNanos(phase);
         }
-        activeClonePlacement = -1;
 
-        for (GuardObject.GuardFactory factory : l.getGuards()) {
-            final GuardObject guard = factory.create(cs);
-            guard.computeLOS(cs, terrain);
-            objects.add(guard);
+        final RenderSnapshot snapshot = snapshots.getBack();
+        // between the last tick and the next one, so movement is smooth whatever the frame rate
+        final boolean executing = getGameState() == Simulation.GameState.EXECUTE;
+        Rect view = null;
+        if (viewport.isReady()) {
+            cs.getCellBounds(0, 0, canvasWidth, height, viewCells);
+            view = viewCells;
+        }
+        snapshot.capture(sim, topology, executing ? pendingNanos / (double)TICK_NANOS : 1, view);
+        snapshot.viewX = viewport.getOriginX();
+        snapshot.viewY = viewport.getOriginY();
+        snapshot.gridSize = viewport.isReady() ? viewport.getGridSize() : -1;
+        System.arraycopy(phaseNanos, 0, snapshot.phaseNanos, 0, phaseNanos.length);
+        snapshot.previewNanos = previewNanos;
+        snapshot.timelineLength = timeline.getLength();
+        if (previewing) {
+            snapshot.previewTick = timeline.getSeekTick();
+            snapshot.previewState = snapshot.gameState;
+            snapshot.gameState = Simulation.GameState.PLAN;
+        } else {
+            snapshot.previewTick = -1;
         }
+        snapshots.publish();
+    }
 
-        switchToPlan();
+    // sim thread. runs the timeline ahead a keyframe at a time for as long as a frame can spare
+    private void presimulate() {
+        final long start = startPreviewTiming();
+        do {
+            timeline.simulate(1);
+        } while (!timeline.isComplete() && System.nanoTime() - start < PRESIMULATE_NANOS);
+        endPreviewTiming(start);
     }
 
-    private void selectObject(final SelectableGameObject newSelection) {
-        if (selectedObject != null) {
-            selectedObject.unselect();
-        }
-        if (newSelection != null) {
-            newSelection.select();
-        }
-        selectedObject = newSelection;
+    // sim thread. the timeline ticks the level itself, so while it runs the simulation's phase timers are off
+    // and the time goes in previewNanos instead, leaving the phases to real ticks. Returns the start time
+    private long startPreviewTiming() {
+        sim.setPhaseTiming(false);
+        return System.nanoTime();
     }
 
-    public void update(final long ms) {
-        if (gameState == GameState.EXECUTE) {
-            // move all movable objects
-            synchronized (objectsLock) {
-                for (GameObject object : objects) {
-                    object.update(ms);
-                }
-            }
+    private void endPreviewTiming(final long start) {
+        previewNanos += System.nanoTime() - start;
+        sim.setPhaseTiming(frameStats != null);
+    }
 
-            // compute LOS for all guards
-            synchronized (objectsLock) {
-                for (GameObject object : objects) {
-                    if (object instanceof GuardObject) {
-                        ((GuardObject)object).computeLOS(cs, terrain);
-                    }
-                }
-            }
+    // render thread. gets the newest snapshot for draw, and returns false if there hasn't been one since the last
+    public boolean takeSnapshot() {
+        return snapshots.take();
+    }
 
-            // object interactions
-            final Point playerScreenPos = playerObject.getCurScreenPos(cs);
-            final Point playerPos = cs.screenToPos(playerScreenPos);
-            if (playerPos.equals(endPos)) {
-                // won the game
-                levelOver(true);
-                return;
-            }
+    // stats to record the simulation's phases into each update, and optionally draw over the level
+    public void setFrameStats(final FrameStats frameStats, final boolean show) {
+        this.frameStats = frameStats;
+        this.showFrameStats = show && frameStats != null;
+        sim.setPhaseTiming(frameStats != null);
+    }
 
-            // check to see if any guards intersect with any selectable objects
-            synchronized (objectsLock) {
-                Set<SelectableGameObject> caught = new HashSet<>();
-                for (GameObject object : objects) {
-                    if (object instanceof GuardObject) {
-                        final GuardObject guard = (GuardObject)object;
-                        if (guard.isCelebrating()) continue;
-                        final List<Point> los = guard.getPointsInLOS(cs);
-
-                        for (SelectableGameObject sgo : selectableObjects) {
-                            final Point pos = cs.screenToPos(sgo.getCurScreenPos(cs));
-                            if (los.contains(pos)) {
-                                guard.startCelebrating();
-                                if (playerObject == sgo) {
-                                    // lost game
-                                    levelOver(false);
-                                    return;
-                                } else {
-                                    caught.add(sgo);
-                                }
-                            }
-                        }
-                    }
-                }
-                objects.removeAll(caught);
-                selectableObjects.removeAll(caught);
-            }
+    private void drawFrameStats(Canvas canvas, Paint paint) {
+        final int textSize = Math.max(12, height / 30);
+        paint.setTextSize(textSize);
+        paint.setTextAlign(Paint.Align.LEFT);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setARGB(160, 0, 0, 0);
+        final int lines = FrameStats.NUM_PHASES + 1;
+        canvas.drawRect(0, height - lines * textSize - textSize / 2, textSize * 16, height, paint);
+        paint.setColor(Color.WHITE);
+        final String header = "ms   p50 p95 p99 max";
+        canvas.drawText(header, textSize / 2, height - (lines - 1) * textSize - textSize / 4, paint);
+        for (int phase = 0; phase < FrameStats.NUM_PHASES; phase++) {
+            final int numChars = frameStats.formatLine(phase, statsChars);
+            canvas.drawText(statsChars, statsChars.length - numChars, numChars,
+                    textSize / 2, height - (FrameStats.NUM_PHASES - 1 - phase) * textSize - textSize / 4, paint);
         }
     }
 
-    private void levelOver(boolean success) {
-        if (success) {
-            gameState = GameState.SUCCESS;
-        } else {
-            gameState = GameState.FAILURE;
-        }
+    // call if anything in the static layer changes, like the terrain
+    public void invalidateStaticLayer() {
+        terrainTiles.invalidate();
+    }
+
+    // moves the simulation's time since the last drawn snapshot into frameStats
+    private void recordSimPhases(final RenderSnapshot s) {
+        frameStats.record(FrameStats.UPDATE, s.phaseNanos[Simulation.PHASE_MOVE] - recordedPhaseNanos[Simulation.PHASE_MOVE]);
+        frameStats.record(FrameStats.LOS, s.phaseNanos[Simulation.PHASE_LOS] - recordedPhaseNanos[Simulation.PHASE_LOS]);
+        frameStats.record(FrameStats.CATCH, s.phaseNanos[Simulation.PHASE_CATCH] - recordedPhaseNanos[Simulation.PHASE_CATCH]);
+        frameStats.record(FrameStats.PREVIEW, s.previewNanos - recordedPreviewNanos);
+        System.arraycopy(s.phaseNanos, 0, recordedPhaseNanos, 0, recordedPhaseNanos.length);
+        recordedPreviewNanos = s.previewNanos;
     }
 
+    // render thread. draws the snapshot from the last takeSnapshot
     public void draw(Canvas canvas, Paint paint) {
+        final RenderSnapshot s = snapshots.getFront();
+        if (frameStats != null) {
+            recordSimPhases(s);
+        }
+        if (canvasWidth <= 0 || height <= 0 || s.gridSize <= 0) {
+            return;
+        }
+        renderCs.setScreenOrigin(s.viewX, s.viewY);
+        if (renderCs.getGridSize() != s.gridSize) {
+            renderCs.updateGridSize(s.gridSize);
+        }
+        // around a level smaller than the canvas
         paint.setStyle(Paint.Style.FILL);
         paint.setARGB(255, 255, 255, 255);
         canvas.drawRect(0, 0, canvasWidth, height, paint);
+        terrainTiles.draw(canvas, paint, s.viewX, s.viewY, s.gridSize, canvasWidth, height);
 
-        // do drawing on canvas
-        cs.draw(canvas, paint);
-
+        final int activeClonePlacement = s.activeClonePlacement;
         if (activeClonePlacement != -1) {
             paint.setColor(SelectableGameObject.CLONE_TYPE_DEFS[activeClonePlacement].color());
-            final Point playerScreenPos = playerObject.getCurScreenPos(cs);
-            final Point playerPos = cs.screenToPos(playerScreenPos);
-            final List<Point> playerNeighbors = cs.neighbors(playerPos);
-            for (final Point neighbor : playerNeighbors) {
-                cs.highlightCell(neighbor, canvas, paint);
+            final int playerPos = s.playerCell;
+            final int numNeighbors = topology.neighbors(playerPos, neighborCells);
+            for (int i = 0; i < numNeighbors; i++) {
+                // walls and the end used to cover the highlight, and are underneath it now
+                final int cell = neighborCells[i];
+                if (cell != endCell && Level.isPassable(sim.getTerrain(), topology.getX(cell), topology.getY(cell))) {
+                    renderCs.highlightCell(cell, canvas, paint);
+                }
             }
         }
 
-        synchronized (objectsLock) {
-            for (GameObject object : objects) {
-                object.draw(cs, canvas, paint);
-            }
+        for (int i = 0; i < s.numObjects; i++) {
+            painter.draw(s, i, canvas, paint);
+        }
+
+        if (s.gameState == Simulation.GameState.PLAN) {
+            drawTimeline(s, canvas, paint);
         }
 
-        if (isDone()) {
+        if (s.isDone()) {
             final String text;
-            if (gameState == GameState.SUCCESS) {
+            if (s.gameState == Simulation.GameState.SUCCESS) {
                 paint.setColor(Color.GREEN);
                 text = "Level Complete!";
             } else {
@@ -231,6 +328,10 @@ public class LevelState {
         }
 
 
+        if (showFrameStats) {
+            drawFrameStats(canvas, paint);
+        }
+
         paint.setARGB(255, 0, 0, 0);
         canvas.drawRect(canvasWidth, 0, canvasWidth + uiWidth, height, paint);
 
@@ -242,20 +343,17 @@ public class LevelState {
         int centerX = canvasWidth + uiWidth / 2;
         int centerY = height / 8;
 
-        if (gameState == GameState.PLAN) {
+        final Simulation.GameState gameState = s.gameState;
+        if (gameState == Simulation.GameState.PLAN) {
             // play button
-            final Point topLeft = new Point(centerX - drawWidth / 2, centerY - drawWidth / 2);
-            final Point bottomLeft = new Point(centerX - drawWidth / 2, centerY + drawWidth / 2);
-            final Point right = new Point(centerX + drawWidth / 2, centerY);
-
-            final Path path = new Path();
-            path.setFillType(Path.FillType.EVEN_ODD);
-            path.moveTo(bottomLeft.x, bottomLeft.y);
-            path.lineTo(right.x, right.y);
-            path.lineTo(topLeft.x, topLeft.y);
-            path.close();
-            canvas.drawPath(path, paint);
-        } else if (gameState == GameState.EXECUTE) {
+            playPath.rewind();
+            playPath.setFillType(Path.FillType.EVEN_ODD);
+            playPath.moveTo(centerX - drawWidth / 2, centerY + drawWidth / 2);
+            playPath.lineTo(centerX + drawWidth / 2, centerY);
+            playPath.lineTo(centerX - drawWidth / 2, centerY - drawWidth / 2);
+            playPath.close();
+            canvas.drawPath(playPath, paint);
+        } else if (gameState == Simulation.GameState.EXECUTE) {
             // pause button
             canvas.drawRect(centerX - drawWidth / 2, centerY - drawWidth / 2, centerX - drawWidth / 4, centerY + drawWidth / 2, paint);
             canvas.drawRect(centerX + drawWidth / 4, centerY - drawWidth / 2, centerX + drawWidth / 2, centerY + drawWidth / 2, paint);
@@ -263,8 +361,8 @@ public class LevelState {
 
         // draw any active clone placements
         int pos = 0;
-        for (int i = 0; i < availableClones.length; i++) {
-            if (availableClones[i] > 0) {
+        for (int i = 0; i < s.availableClones.length && pos < MAX_CLONE_ROWS; i++) {
+            if (s.availableClones[i] > 0) {
 
                 // draw a line at the top
                 drawUILine((2 + pos) * height / 8, canvas, paint);
@@ -279,7 +377,8 @@ public class LevelState {
                 paint.setColor(Color.WHITE);
                 final int textSize = drawWidth * 2 / 3;
                 paint.setTextSize(textSize);
-                canvas.drawText("" + availableClones[i], canvasWidth + drawWidth * 4 / 3, centerY + textSize / 2, paint);
+                final int numChars = formatCount(s.availableClones[i]);
+                canvas.drawText(countChars, countChars.length - numChars, numChars, canvasWidth + drawWidth * 4 / 3, centerY + textSize / 2, paint);
 
                 pos++;
             }
@@ -287,6 +386,46 @@ public class LevelState {
 
         // draw a line at the bottom
         drawUILine((2 + pos) * height / 8, canvas, paint);
+
+        // reset button
+        drawUILine(height - height / 8, canvas, paint);
+        paint.setColor(Color.WHITE);
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setTextSize(drawWidth);
+        canvas.drawText(RESET_TEXT, canvasWidth + uiWidth / 2, height - height / 16 + drawWidth / 3, paint);
+    }
+
+    private int timelineHeight() {
+        return height / 16;
+    }
+
+    // a bar along the bottom of the canvas for the plan's future, with where the preview is in it
+    private void drawTimeline(RenderSnapshot s, Canvas canvas, Paint paint) {
+        final int top = height - timelineHeight();
+        paint.setStyle(Paint.Style.FILL);
+        if (s.previewState == Simulation.GameState.FAILURE && s.previewTick != -1) {
+            paint.setARGB(120, 255, 0, 0);
+        } else if (s.previewState == Simulation.GameState.SUCCESS && s.previewTick != -1) {
+            paint.setARGB(120, 0, 255, 0);
+        } else {
+            paint.setARGB(120, 0, 0, 0);
+        }
+        canvas.drawRect(0, top, canvasWidth, height, paint);
+        if (s.previewTick != -1 && s.timelineLength > 0) {
+            final float x = canvasWidth * (float)s.previewTick / s.timelineLength;
+            paint.setColor(Color.WHITE);
+            canvas.drawRect(x - 2, top, x + 2, height, paint);
+        }
+    }
+
+    // writes the digits of count to the end of countChars, and returns how many there are
+    private int formatCount(int count) {
+        int i = countChars.length;
+        do {
+            countChars[--i] = (char)('0' + count % 10);
+            count /= 10;
+        } while (count > 0);
+        return countChars.length - i;
     }
 
     private void drawUILine(int uiY, Canvas canvas, Paint paint) {
@@ -295,24 +434,131 @@ public class LevelState {
         canvas.drawLine(canvasWidth, uiY, canvasWidth + uiWidth, uiY, paint);
     }
 
-    public void updateUI(int canvasWidth, int uiWidth, int height, int gridSize) {
-        if (cs != null) {
-            cs.updateGridSize(gridSize);
-        }
+    public void updateUI(int canvasWidth, int uiWidth, int height) {
         this.canvasWidth = canvasWidth;
         this.uiWidth = uiWidth;
         this.height = height;
+        layoutChanged = true;
     }
 
     public boolean isDone() {
-        return gameState == GameState.SUCCESS || gameState == GameState.FAILURE;
+        return getGameState() == Simulation.GameState.SUCCESS || getGameState() == Simulation.GameState.FAILURE;
+    }
+
+    // while previewing the simulation is running somewhere in the timeline, but the level is still being planned
+    public Simulation.GameState getGameState() {
+        return previewing ? Simulation.GameState.PLAN : sim.getGameState();
+    }
+
+    // only safe to use from another thread once the sim thread has stopped
+    public Recording getRecording() {
+        return recording;
+    }
+
+    // ui thread. returns false if too many clicks are already waiting
+    public boolean queueClick(int screenX, int screenY) {
+        return clicks.offer(((long)screenX << 32) | (screenY & 0xffffffffL));
+    }
+
+    // ui thread. queues going back to the plan the player last pressed play on, with the paths they drew.
+    // returns false if too many clicks are already waiting
+    public boolean queueRetry() {
+        return clicks.offer(RETRY);
+    }
+
+    // ui thread. whether a touch at screen x, y is on the timeline, which is only there while planning
+    public boolean isInTimeline(int screenX, int screenY) {
+        return getGameState() == Simulation.GameState.PLAN && screenX < canvasWidth && screenY >= height - timelineHeight();
+    }
+
+    // ui thread. queues moving the level dx, dy pixels. returns false if too many clicks are already waiting
+    public boolean queuePan(int dx, int dy) {
+        return clicks.offer(PAN | (toShort(dx) << 16) | toShort(dy));
+    }
+
+    // ui thread. queues zooming by scale around screen x, y. returns false if too many clicks are already waiting
+    public boolean queueZoom(int focusX, int focusY, float scale) {
+        final long units = Math.max(1, Math.min(0xffff, Math.round(scale * ZOOM_UNITS)));
+        return clicks.offer(ZOOM | (units << 32) | (toShort(focusX) << 16) | toShort(focusY));
+    }
+
+    // the low 16 bits of n, clamped to a short first
+    private static long toShort(int n) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, n)) & 0xffffL;
+    }
+
+    // ui thread. queues showing the plan's future at the part of the timeline under screen x.
+    // returns false if too many clicks are already waiting
+    public boolean queueScrub(int screenX) {
+        return clicks.offer(NOT_A_CLICK | Math.max(0, screenX));
+    }
+
+    // sim thread
+    private void applyClicks() {
+        while (!clicks.isEmpty()) {
+            final long click = clicks.poll();
+            if ((click & TAG_MASK) == PAN) {
+                viewport.pan((short)(click >> 16), (short)click);
+            } else if ((click & TAG_MASK) == ZOOM) {
+                viewport.zoom((short)(click >> 16), (short)click, ((click >> 32) & 0xffff) / ZOOM_UNITS);
+            } else if (click == RETRY) {
+                retryFromPlan();
+            } else if ((click & NOT_A_CLICK) == NOT_A_CLICK) {
+                scrub((int)click);
+            } else if (previewing) {
+                // a tap puts the plan back, and does nothing else
+                stopPreview();
+            } else if (!sim.isDone()) {
+                // the ui thread may not have seen the level end yet
+                handleClick((int)(click >> 32), (int)click);
+            }
+        }
+    }
+
+    // sim thread. the part of the timeline run so far stretches across the canvas
+    private void scrub(int screenX) {
+        if (getGameState() != Simulation.GameState.PLAN || canvasWidth <= 0) {
+            return;
+        }
+        final long start = startPreviewTiming();
+        if (!timeline.isStarted()) {
+            timeline.simulate(1);
+        }
+        timeline.seek(timeline.getLength() * Math.min(screenX, canvasWidth) / canvasWidth);
+        endPreviewTiming(start);
+        previewing = true;
     }
 
-    public GameState getGameState() {
-        return gameState;
+    private void stopPreview() {
+        timeline.stopSeeking();
+        previewing = false;
     }
 
-    public void handleClick(int screenX, int screenY) {
+    // sim thread. back to tick 0 with the plan, or the start if there isn't one
+    private void retryFromPlan() {
+        if (!planSnapshot.isSaved()) {
+            resetToStart();
+            return;
+        }
+        sim.restore(planSnapshot);
+        recording.rewind(planCommands);
+        pendingNanos = 0;
+        timeline.reset();
+        previewing = false;
+    }
+
+    // sim thread. back to how the level started, throwing away the plan
+    private void resetToStart() {
+        sim.restore(startSnapshot);
+        // its paths are longer than the start's, and would be wrong once new ones are drawn
+        planSnapshot.clear();
+        recording.rewind(0);
+        pendingNanos = 0;
+        timeline.reset();
+        previewing = false;
+    }
+
+    private void handleClick(int screenX, int screenY) {
         if (screenX < canvasWidth) {
             handleCanvasClick(screenX, screenY);
         } else {
@@ -321,114 +567,145 @@ public class LevelState {
     }
 
     private void handleUIClick(int uiX, int uiY) {
-        if (uiY < height / 4) {
+        final Simulation.GameState gameState = sim.getGameState();
+        if (uiY >= height - height / 8) {
+            resetToStart();
+        } else if (uiY < height / 4) {
             // play button
-            if (gameState == GameState.EXECUTE) {
-                switchToPlan();
-            } else if (gameState == GameState.PLAN) {
-                switchToExecute();
+            if (gameState == Simulation.GameState.EXECUTE) {
+                apply(Command.plan());
+            } else if (gameState == Simulation.GameState.PLAN) {
+                apply(Command.execute());
             }
         } else {
-            if (gameState == GameState.EXECUTE) {
-                switchToPlan();
+            if (gameState == Simulation.GameState.EXECUTE) {
+                apply(Command.plan());
             }
             final int index = uiY / (height / 8) - 2;
             int pos = 0;
             int i;
             // find the index'th non-zero int in available clones
-            for (i = 0; i < availableClones.length; i++) {
-                if (availableClones[i] > 0) {
+            for (i = 0; i < sim.getNumCloneTypes(); i++) {
+                if (sim.getAvailableClones(i) > 0) {
                     if (pos == index) {
                         break;
                     }
                     pos++;
                 }
             }
-            if (i < availableClones.length) {
+            // rounding can leave a sliver below the last row that fits, above the reset button
+            if (index < MAX_CLONE_ROWS && i < sim.getNumCloneTypes()) {
                 Log.e("LevelState", "clicked clone pos " + pos + " which is clone index " + i);
-                startClonePlacement(i);
+                apply(Command.startClonePlacement(i));
             }
         }
     }
 
-    private void stopClonePlacement() {
-        activeClonePlacement = -1;
-    }
-
-    private void startClonePlacement(final int cloneTypeNum) {
-        stopClonePlacement();
-        activeClonePlacement = cloneTypeNum;
-        selectObject(null);
-    }
-
-    private void successfulClonePlacement(final Point p, final int cloneTypeNum) {
-        stopClonePlacement();
-        final SelectableGameObject newClone = SelectableGameObject.CLONE_TYPE_DEFS[cloneTypeNum].create(p);
-        synchronized (objectsLock) {
-            objects.add(newClone);
-            selectableObjects.add(newClone);
-        }
-        availableClones[cloneTypeNum]--;
-    }
-
     private void handleCanvasClick(int screenX, int screenY) {
-        if (gameState == GameState.EXECUTE) {
-            switchToPlan();
+        if (sim.getGameState() == Simulation.GameState.EXECUTE) {
+            apply(Command.plan());
             return;
         }
 
-        final Point clickPos = cs.screenToPos(new Point(screenX, screenY));
+        final int clickCell = cs.screenToPos(screenX, screenY);
 
-        if (activeClonePlacement != -1) {
-            final Point playerScreenPos = playerObject.getCurScreenPos(cs);
-            final Point playerPos = cs.screenToPos(playerScreenPos);
-            final int clickDist = cs.distance(clickPos, playerPos);
-            if (clickDist == 1 && Level.isPassable(terrain, clickPos.x, clickPos.y)) {
-                successfulClonePlacement(clickPos, activeClonePlacement);
-                return;
+        if (sim.getActiveClonePlacement() != -1) {
+            if (clickCell == Topology.NO_CELL) {
+                apply(Command.stopClonePlacement());
+            } else {
+                apply(Command.placeClone(clickCell));
             }
-            stopClonePlacement();
             return;
         }
 
+        final SelectableGameObject selectedObject = sim.getSelectedObject();
         if (selectedObject != null) {
-            final Point lastPathPoint = selectedObject.getLastPathPoint();
-            final int manDist = cs.distance(clickPos, lastPathPoint);
-            if (manDist == 1 && Level.isPassable(terrain, clickPos.x, clickPos.y)) {
-                selectedObject.addPointToPath(clickPos);
+            final int lastPathPoint = topology.indexOf(selectedObject.getLastPathPoint());
+            final int manDist = clickCell == Topology.NO_CELL ? Integer.MAX_VALUE : topology.distance(clickCell, lastPathPoint);
+            if (manDist == 1) {
+                apply(Command.extendPath(selectedObject.getId(), clickCell));
             } else if (manDist >= 2) {
-                selectObject(getClickedSelectableObject(screenX, screenY));
+                // tapping an object selects it, and anywhere else it can get to draws the path there
+                final SelectableGameObject clicked = getClickedSelectableObject(screenX, screenY);
+                if (clicked != null || !extendPathTo(selectedObject, lastPathPoint, clickCell)) {
+                    select(clicked);
+                }
             }
         } else {
-            final SelectableGameObject clicked = getClickedSelectableObject(screenX, screenY);
-            selectObject(clicked);
+            select(getClickedSelectableObject(screenX, screenY));
         }
     }
 
-    private void switchToPlan() {
-        gameState = GameState.PLAN;
+    // extends the path of object from its last point to cell, a step at a time so the recording has each one.
+    // It goes the way no guard sees it if there is one, and the shortest way if not or if the guards' schedule isn't
+    // ready yet. Returns false, without doing anything, if it can't get there at all
+    private boolean extendPathTo(final SelectableGameObject object, final int lastPathPoint, final int cell) {
+        final SafeRouter safeRouter = this.safeRouter;
+        if (safeRouter != null) {
+            final int steps = safeRouter.findRouteOrShortest(object, sim.getTickCount(), cell);
+            for (int i = 0; i < steps; i++) {
+                apply(Command.extendPath(object.getId(), safeRouter.getRouteCell(i)));
+            }
+            return steps != SafeRouter.NO_ROUTE;
+        }
+        final int steps = router.findRoute(lastPathPoint, cell);
+        if (steps == Router.NO_ROUTE) {
+            return false;
+        }
+        for (int i = 0; i < steps; i++) {
+            apply(Command.extendPath(object.getId(), router.getRouteCell(i)));
+        }
+        return true;
     }
 
-    private void switchToExecute() {
-        gameState = GameState.EXECUTE;
-        selectObject(null);
+    private void select(final SelectableGameObject object) {
+        apply(Command.select(object == null ? Command.NONE : object.getId()));
     }
 
+    // everything the player does goes through here, so the recording has all of it
+    private void apply(final long command) {
+        if (Command.type(command) == Command.EXECUTE && sim.getGameState() == Simulation.GameState.PLAN && sim.getTickCount() == 0) {
+            // the recording so far is exactly how to get here, so it can be rewound to this too
+            sim.save(planSnapshot);
+            planCommands = recording.getNumCommands();
+        }
+        recording.recordCommand(sim.getTickCount(), command);
+        sim.apply(command);
+        timeline.reset();
+    }
 
     private SelectableGameObject getClickedSelectableObject(int screenX, int screenY) {
-        SelectableGameObject closest = null;
-        int smallestDist = Integer.MAX_VALUE;
+        final int clickCell = cs.screenToPos(screenX, screenY);
+        if (clickCell == Topology.NO_CELL) {
+            return null;
+        }
 
-        synchronized (objectsLock) {
-            for (final SelectableGameObject object : selectableObjects) {
-                final Point pos = object.getCurScreenPos(cs);
-                final int distX = pos.x - screenX;
-                final int distY = pos.y - screenY;
-                final int screenDist2 = distX * distX + distY * distY;
-                if (screenDist2 < smallestDist && (Math.abs(distX) <= cs.getGridSize() / 2) && (Math.abs(distY) <= cs.getGridSize() / 2)) {
-                    closest = object;
-                    smallestDist = screenDist2;
-                }
+        // anything within half a cell of the click is centered in the clicked cell or moving out of it into a neighbor
+        SelectableGameObject closest = closestInCell(clickCell, screenX, screenY, null);
+        final int numNeighbors = topology.neighbors(clickCell, clickNeighborCells);
+        for (int i = 0; i < numNeighbors; i++) {
+            closest = closestInCell(clickNeighborCells[i], screenX, screenY, closest);
+        }
+        return closest;
+    }
+
+    // closer of closest and the objects in cell that are within half a cell of the click
+    private SelectableGameObject closestInCell(int cell, int screenX, int screenY, SelectableGameObject closest) {
+        final OccupancyGrid occupancy = sim.getOccupancy();
+        final Point pos = clickScreenPos;
+        int smallestDist = Integer.MAX_VALUE;
+        if (closest != null) {
+            GameObjectPainter.getCurScreenPos(closest, topology, cs, pos);
+            smallestDist = (pos.x - screenX) * (pos.x - screenX) + (pos.y - screenY) * (pos.y - screenY);
+        }
+        for (SelectableGameObject object = occupancy.getFirst(cell); object != null; object = object.getNextInCell()) {
+            GameObjectPainter.getCurScreenPos(object, topology, cs, pos);
+            final int distX = pos.x - screenX;
+            final int distY = pos.y - screenY;
+            final int screenDist2 = distX * distX + distY * distY;
+            if (screenDist2 < smallestDist && (Math.abs(distX) <= cs.getGridSize() / 2) && (Math.abs(distY) <= cs.getGridSize() / 2)) {
+                closest = object;
+                smallestDist = screenDist2;
             }
         }
         return closest;
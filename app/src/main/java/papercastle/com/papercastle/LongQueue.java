@@ -0,0 +1,50 @@
+package papercastle.com.papercastle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded FIFO of longs from one producing thread to one consuming thread, without locking or allocating.
+ * Each side only writes its own counter, and publishes it with lazySet after touching the slot.
+ */
+
+final class LongQueue {
+
+    private final long[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next to poll, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next to offer, written by the producer
+
+    // capacity is rounded up to a power of 2
+    LongQueue(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        buffer = new long[size];
+        mask = size - 1;
+    }
+
+    // producer. returns false if the queue is full
+    public boolean offer(final long value) {
+        final long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int)t & mask] = value;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // consumer
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    // consumer. the oldest value, which must be there (see isEmpty)
+    public long poll() {
+        final long h = head.get();
+        if (h == tail.get()) {
+            throw new IllegalStateException("poll on an empty queue");
+        }
+        final long value = buffer[(int)h & mask];
+        head.lazySet(h + 1);
+        return value;
+    }
+}
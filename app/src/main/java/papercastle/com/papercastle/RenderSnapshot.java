@@ -0,0 +1,208 @@
+package papercastle.com.papercastle;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.GameObject;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.SelectableGameObject;
+import papercastle.com.papercastle.sim.Simulation;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * Everything needed to draw one tick of a Simulation, copied out of it so drawing never touches the simulation.
+ * Objects are stored as parallel arrays that only grow, so capturing into a reused snapshot doesn't allocate.
+ * Static objects (see Simulation.getStaticObjects) aren't included since they never change, and neither is
+ * anything that can't reach the view. Guards come first, so selectables are drawn over their LOS.
+ */
+
+final class RenderSnapshot {
+
+    public static final int KIND_BASIC = 0;
+    public static final int KIND_SELECTABLE = 1;
+    public static final int KIND_GUARD = 2;
+
+    private static final int INITIAL_OBJECTS = 16;
+
+    public Simulation.GameState gameState;
+    public long tickCount;
+    public double alpha; // how far between the last tick and the next one to draw moving objects
+    public int activeClonePlacement;
+    public int playerCell;
+    public int[] availableClones = new int[0];
+    public final long[] phaseNanos = new long[Simulation.NUM_PHASES]; // total time the simulation has spent in each phase
+    public long previewNanos; // total time spent running the timeline, which isn't in phaseNanos
+
+    // the Viewport, so the render thread draws where the sim thread took clicks. Filled in by LevelState after capture
+    public int viewX;
+    public int viewY;
+    public int gridSize;
+
+    // the plan's future, see Timeline. Filled in by LevelState after capture
+    public long timelineLength; // ticks run ahead so far
+    public long previewTick = -1; // ticks ahead the objects are from the plan, or -1 if they're the plan
+    public Simulation.GameState previewState; // how the previewed tick stands, if previewing
+
+    public int numObjects;
+    public int[] kind = new int[INITIAL_OBJECTS];
+    public int[] color = new int[INITIAL_OBJECTS];
+    public boolean[] selected = new boolean[INITIAL_OBJECTS];
+    // guards only
+    public int[] dir = new int[INITIAL_OBJECTS];
+    public int[] curLos = new int[INITIAL_OBJECTS];
+    public boolean[] celebrating = new boolean[INITIAL_OBJECTS];
+    // guards with vision cones, whose seen cells are in losCells instead of being a line curLos long
+    public boolean[] cone = new boolean[INITIAL_OBJECTS];
+    public int[] losStart = new int[INITIAL_OBJECTS];
+    public int[] losLength = new int[INITIAL_OBJECTS];
+    public int[] losCells = new int[INITIAL_OBJECTS * 4];
+    private int numLosCells;
+
+    // the rest of each object's path from where it was at the last tick, as topology cell ids in pathCells,
+    // with positions in GameObject.PATH_UNITS relative to the first of them
+    public int[] pathStart = new int[INITIAL_OBJECTS];
+    public int[] pathLength = new int[INITIAL_OBJECTS];
+    public long[] prevPathPos = new long[INITIAL_OBJECTS];
+    public long[] pathPos = new long[INITIAL_OBJECTS];
+    public int[] pathCells = new int[INITIAL_OBJECTS * 4];
+    private int numPathCells;
+
+    // copies sim, whose objects mustn't change while this runs. Only objects that could be drawn in view, a range
+    // of topology x and y (see CoordinateSpace.getCellBounds), are copied, or all of them if view is null
+    public void capture(final Simulation sim, final Topology topology, final double alpha, final Rect view) {
+        gameState = sim.getGameState();
+        tickCount = sim.getTickCount();
+        this.alpha = alpha;
+        activeClonePlacement = sim.getActiveClonePlacement();
+        playerCell = sim.getPlayerObject().getCurCellIndex(topology);
+        if (availableClones.length != sim.getNumCloneTypes()) {
+            availableClones = new int[sim.getNumCloneTypes()];
+        }
+        for (int i = 0; i < availableClones.length; i++) {
+            availableClones[i] = sim.getAvailableClones(i);
+        }
+
+        numObjects = 0;
+        numPathCells = 0;
+        numLosCells = 0;
+        // walls and the end are most of the objects on a big level, and never drawn from here
+        // where things are and which way guards face come from the sim's arrays by index
+        for (int g = 0; g < sim.getNumGuards(); g++) {
+            final GuardObject guard = sim.getGuard(g);
+            if (view == null || canReach(guard, view)) {
+                final int i = add(guard, topology, sim.getGuardPrevPathPos(g), sim.getGuardPathPos(g));
+                dir[i] = sim.getGuardDir(g);
+                celebrating[i] = sim.isGuardCelebrating(g);
+            }
+        }
+        for (int l = 0; l < sim.getNumLive(); l++) {
+            final SelectableGameObject object = sim.getLive(l);
+            if (view == null || canReach(object, view)) {
+                add(object, topology, sim.getLivePrevPathPos(l), sim.getLivePathPos(l));
+            }
+        }
+    }
+
+    // whether object could draw anything in view: itself, a guard's LOS, or a path it has left to walk.
+    // A step in any direction moves x and y by at most 1, so a guard sees at most its LOS away in both
+    private static boolean canReach(final GameObject object, final Rect view) {
+        final int cur = object.getCurPoint();
+        if (object instanceof GuardObject) {
+            return isNear(cur, ((GuardObject)object).getLos() + 1, view);
+        }
+        if (isNear(cur, 1, view)) {
+            return true;
+        }
+        for (int j = object.getPathIndex() + 1; j < object.getPathLength(); j++) {
+            if (isNear(object.getPathPoint(j), 0, view)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the point p, packed with Cell.pack, is within distance of view
+    private static boolean isNear(final int p, final int distance, final Rect view) {
+        final int x = Cell.unpackX(p);
+        final int y = Cell.unpackY(p);
+        return x >= view.left - distance && x < view.right + distance && y >= view.top - distance && y < view.bottom + distance;
+    }
+
+    // returns the object's index
+    private int add(final GameObject object, final Topology topology, final long objectPrevPathPos, final long objectPathPos) {
+        if (numObjects == kind.length) {
+            grow(numObjects * 2);
+        }
+        final int i = numObjects++;
+        if (object instanceof GuardObject) {
+            final GuardObject guard = (GuardObject)object;
+            kind[i] = KIND_GUARD;
+            curLos[i] = guard.getCurLos();
+            cone[i] = guard.getCone() > 0;
+            losLength[i] = 0;
+            if (cone[i]) {
+                addLos(i, guard);
+            }
+        } else if (object instanceof SelectableGameObject) {
+            kind[i] = KIND_SELECTABLE;
+        } else {
+            kind[i] = KIND_BASIC;
+        }
+        color[i] = object.getColor();
+        selected[i] = object instanceof SelectableGameObject && ((SelectableGameObject)object).isSelected();
+
+        final int first = (int)(objectPrevPathPos / GameObject.PATH_UNITS);
+        final int length = object.getPathLength() - first;
+        if (numPathCells + length > pathCells.length) {
+            pathCells = Arrays.copyOf(pathCells, Math.max(pathCells.length * 2, numPathCells + length));
+        }
+        pathStart[i] = numPathCells;
+        pathLength[i] = length;
+        for (int j = first; j < object.getPathLength(); j++) {
+            final int p = object.getPathPoint(j);
+            pathCells[numPathCells++] = topology.indexOf(Cell.unpackX(p), Cell.unpackY(p));
+        }
+        prevPathPos[i] = objectPrevPathPos - first * GameObject.PATH_UNITS;
+        pathPos[i] = objectPathPos - first * GameObject.PATH_UNITS;
+        return i;
+    }
+
+    private void addLos(final int i, final GuardObject guard) {
+        final int length = guard.getNumLOSCells();
+        if (numLosCells + length > losCells.length) {
+            losCells = Arrays.copyOf(losCells, Math.max(losCells.length * 2, numLosCells + length));
+        }
+        losStart[i] = numLosCells;
+        losLength[i] = length;
+        for (int j = 0; j < length; j++) {
+            losCells[numLosCells++] = guard.getLOSCell(j);
+        }
+    }
+
+    private void grow(final int capacity) {
+        kind = Arrays.copyOf(kind, capacity);
+        color = Arrays.copyOf(color, capacity);
+        selected = Arrays.copyOf(selected, capacity);
+        dir = Arrays.copyOf(dir, capacity);
+        curLos = Arrays.copyOf(curLos, capacity);
+        celebrating = Arrays.copyOf(celebrating, capacity);
+        cone = Arrays.copyOf(cone, capacity);
+        losStart = Arrays.copyOf(losStart, capacity);
+        losLength = Arrays.copyOf(losLength, capacity);
+        pathStart = Arrays.copyOf(pathStart, capacity);
+        pathLength = Arrays.copyOf(pathLength, capacity);
+        prevPathPos = Arrays.copyOf(prevPathPos, capacity);
+        pathPos = Arrays.copyOf(pathPos, capacity);
+    }
+
+    // where to draw object i along its path, in PATH_UNITS from pathCells[pathStart[i]]
+    public long getDrawPathPos(final int i) {
+        return prevPathPos[i] + Math.round((pathPos[i] - prevPathPos[i]) * alpha);
+    }
+
+    public boolean isDone() {
+        return gameState == Simulation.GameState.SUCCESS || gameState == Simulation.GameState.FAILURE;
+    }
+}
@@ -0,0 +1,141 @@
+package papercastle.com.papercastle;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+import java.util.List;
+
+import papercastle.com.papercastle.sim.GameObject;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * The parts of a level that never change (the background, the cell outlines, walls and the end), cut into
+ * TILE_SIZE pixel squares of the level as it's laid out at the current grid size, each drawn once into a bitmap.
+ * A frame only copies the tiles it can see, so it costs the same however big the level is, and panning only
+ * draws the tiles that come into view. Tiles that go out of view have their bitmaps reused, so once the canvas
+ * is covered it doesn't allocate until it's zoomed. Render thread only, apart from invalidate.
+ */
+
+final class TerrainTiles {
+
+    static final int TILE_SIZE = 256;
+    private static final long NO_TILE = Long.MIN_VALUE;
+
+    private final Topology topology;
+    private final CoordinateSpace cs; // laid out with the tile being drawn at 0, 0
+    private final GameObjectPainter painter;
+    private final GameObject[] staticAt; // by topology cell, null where there isn't one
+    private final Canvas tileCanvas = new Canvas();
+    private final Rect cells = new Rect();
+
+    // the cache, by slot. Keys are tile x in the high int and y in the low int
+    private long[] keys = new long[0];
+    private Bitmap[] bitmaps = new Bitmap[0];
+    private long[] lastUsed = new long[0]; // frame the tile was last drawn in, or -1 if it's empty
+    private long frame;
+    private int gridSize = -1;
+    private volatile boolean dirty = true;
+
+    TerrainTiles(final Topology topology, final CoordinateSpace cs, final List<GameObject> staticObjects) {
+        this.topology = topology;
+        this.cs = cs;
+        painter = new GameObjectPainter(topology, cs);
+        staticAt = new GameObject[topology.getNumCells()];
+        for (int i = 0; i < staticObjects.size(); i++) {
+            final GameObject object = staticObjects.get(i);
+            staticAt[object.getCurCellIndex(topology)] = object;
+        }
+    }
+
+    // any thread. every tile is drawn again when it's next needed
+    public void invalidate() {
+        dirty = true;
+    }
+
+    // draws the tiles of the level in the canvas rectangle 0, 0, width, height with the level's top left at originX, originY
+    public void draw(final Canvas canvas, final Paint paint, final int originX, final int originY, final int gridSize,
+                     final int width, final int height) {
+        if (dirty || gridSize != this.gridSize) {
+            // cleared first so an invalidate while drawing isn't lost
+            dirty = false;
+            this.gridSize = gridSize;
+            cs.updateGridSize(gridSize);
+            Arrays.fill(keys, NO_TILE);
+            Arrays.fill(lastUsed, -1);
+        }
+        frame++;
+        // the tiles covering the part of the level on the canvas
+        final int left = Math.max(0, -originX);
+        final int top = Math.max(0, -originY);
+        final int right = Math.min(cs.getLevelWidth(), width - originX);
+        final int bottom = Math.min(cs.getLevelHeight(), height - originY);
+        for (int ty = top / TILE_SIZE; ty * TILE_SIZE < bottom; ty++) {
+            for (int tx = left / TILE_SIZE; tx * TILE_SIZE < right; tx++) {
+                canvas.drawBitmap(getTile(tx, ty, paint), originX + tx * TILE_SIZE, originY + ty * TILE_SIZE, null);
+            }
+        }
+    }
+
+    private Bitmap getTile(final int tx, final int ty, final Paint paint) {
+        final long key = ((long)tx << 32) | ty;
+        // the slot it's in, or else the one that's gone longest without being drawn. Empty ones were never drawn
+        int slot = -1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                lastUsed[i] = frame;
+                return bitmaps[i];
+            }
+            if (lastUsed[i] < frame && (slot == -1 || lastUsed[i] < lastUsed[slot])) {
+                slot = i;
+            }
+        }
+        if (slot == -1) {
+            slot = grow();
+        }
+        if (bitmaps[slot] == null) {
+            bitmaps[slot] = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        }
+        keys[slot] = key;
+        lastUsed[slot] = frame;
+        drawTile(tx, ty, bitmaps[slot], paint);
+        return bitmaps[slot];
+    }
+
+    private int grow() {
+        final int slot = keys.length;
+        final int capacity = Math.max(8, slot * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        lastUsed = Arrays.copyOf(lastUsed, capacity);
+        bitmaps = Arrays.copyOf(bitmaps, capacity);
+        for (int i = slot; i < capacity; i++) {
+            keys[i] = NO_TILE;
+            lastUsed[i] = -1;
+        }
+        return slot;
+    }
+
+    private void drawTile(final int tx, final int ty, final Bitmap bitmap, final Paint paint) {
+        tileCanvas.setBitmap(bitmap);
+        cs.setScreenOrigin(-tx * TILE_SIZE, -ty * TILE_SIZE);
+
+        paint.setStyle(Paint.Style.FILL);
+        paint.setARGB(255, 255, 255, 255);
+        tileCanvas.drawRect(0, 0, TILE_SIZE, TILE_SIZE, paint);
+
+        cs.getCellBounds(0, 0, TILE_SIZE, TILE_SIZE, cells);
+        cs.draw(cells, tileCanvas, paint);
+
+        for (int y = cells.top; y < cells.bottom; y++) {
+            for (int x = cells.left; x < cells.right; x++) {
+                final GameObject object = staticAt[topology.indexOf(x, y)];
+                if (object != null) {
+                    painter.drawStatic(object, tileCanvas, paint);
+                }
+            }
+        }
+        tileCanvas.setBitmap(null);
+    }
+}
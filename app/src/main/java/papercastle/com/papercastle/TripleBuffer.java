@@ -0,0 +1,51 @@
+package papercastle.com.papercastle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest of a stream of values from one writing thread to one reading thread without locking.
+ * The writer fills the back slot, the reader reads the front slot, and publishing or taking swaps with the
+ * middle slot, which holds the newest finished value. Neither thread ever waits for the other, and a reader
+ * that falls behind just skips to the newest value.
+ */
+
+final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // set while the middle slot holds a value the reader hasn't taken
+
+    private final Object[] slots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0; // only touched by the writer
+    private int front = 2; // only touched by the reader
+
+    TripleBuffer(final T a, final T b, final T c) {
+        slots = new Object[] {a, b, c};
+    }
+
+    // the value the writer is filling in
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T)slots[back];
+    }
+
+    // makes the back value the newest, and gives the writer the slot it replaced to fill next
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // moves the newest value to the front if there is one the reader hasn't had, and returns whether there was
+    public boolean take() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    // the value the reader has, stays the same until the next take
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T)slots[front];
+    }
+}
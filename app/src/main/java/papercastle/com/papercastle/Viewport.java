@@ -0,0 +1,112 @@
+package papercastle.com.papercastle;
+
+/**
+ * Which part of a level is on the canvas, as the screen position of the level's top left and the grid size,
+ * which it keeps in a CoordinateSpace. Panning and zooming keep the canvas covered by as much of the level as
+ * will fit, and a level smaller than the canvas is centered.
+ * Belongs to the sim thread, like the CoordinateSpace clicks go through. The render thread gets it in each
+ * RenderSnapshot.
+ */
+
+final class Viewport {
+
+    private static final int MIN_VISIBLE_ROWS = 3; // zoomed in all the way
+    private static final int MAX_VISIBLE_ROWS = 32; // zoomed out all the way, unless the whole level fits first
+    private static final int START_VISIBLE_ROWS = 12; // unless the whole level fits
+    private static final int PROBE_GRID_SIZE = 1000; // big enough that rounding doesn't matter when measuring the level
+
+    private final CoordinateSpace cs;
+    private int canvasWidth = -1;
+    private int height = -1;
+    private double gridSize; // unrounded, so many small zooms add up
+    private double originX;
+    private double originY;
+    private int minGridSize;
+    private int maxGridSize;
+
+    Viewport(final CoordinateSpace cs) {
+        this.cs = cs;
+    }
+
+    // fits the view to a canvas size, showing the whole level if it isn't too big and centered on cell if it is
+    public void reset(final int canvasWidth, final int height, final int cell) {
+        this.canvasWidth = canvasWidth;
+        this.height = height;
+        if (!isReady()) {
+            return;
+        }
+        final int fit = fitGridSize();
+        minGridSize = Math.max(1, Math.max(fit, height / MAX_VISIBLE_ROWS));
+        maxGridSize = Math.max(minGridSize, height / MIN_VISIBLE_ROWS);
+        gridSize = Math.max(minGridSize, Math.min(fit, height / START_VISIBLE_ROWS));
+        cs.updateGridSize((int)gridSize);
+        cs.setScreenOrigin(0, 0);
+        originX = canvasWidth / 2.0 - cs.posToScreenX(cell);
+        originY = height / 2.0 - cs.posToScreenY(cell);
+        clamp();
+    }
+
+    // the biggest grid size the whole level fits on the canvas at
+    private int fitGridSize() {
+        cs.updateGridSize(PROBE_GRID_SIZE);
+        return (int)Math.min((long)canvasWidth * PROBE_GRID_SIZE / cs.getLevelWidth(),
+                (long)height * PROBE_GRID_SIZE / cs.getLevelHeight());
+    }
+
+    public boolean isReady() {
+        return canvasWidth > 0 && height > 0;
+    }
+
+    // moves the level dx, dy pixels
+    public void pan(final int dx, final int dy) {
+        if (!isReady()) {
+            return;
+        }
+        originX += dx;
+        originY += dy;
+        clamp();
+    }
+
+    // zooms by scale, keeping the point of the level at focusX, focusY where it is
+    public void zoom(final int focusX, final int focusY, final double scale) {
+        if (!isReady()) {
+            return;
+        }
+        final int oldSize = cs.getGridSize();
+        gridSize = Math.max(minGridSize, Math.min(maxGridSize, gridSize * scale));
+        final int newSize = (int)gridSize;
+        if (newSize == oldSize) {
+            return;
+        }
+        cs.updateGridSize(newSize);
+        originX = focusX - (focusX - originX) * newSize / oldSize;
+        originY = focusY - (focusY - originY) * newSize / oldSize;
+        clamp();
+    }
+
+    private void clamp() {
+        originX = clamp(originX, cs.getLevelWidth(), canvasWidth);
+        originY = clamp(originY, cs.getLevelHeight(), height);
+        cs.setScreenOrigin(getOriginX(), getOriginY());
+    }
+
+    private static double clamp(final double origin, final int levelSize, final int canvasSize) {
+        if (levelSize <= canvasSize) {
+            return (canvasSize - levelSize) / 2;
+        }
+        return Math.min(0, Math.max(canvasSize - levelSize, origin));
+    }
+
+    // screen position of the level's top left
+    public int getOriginX() {
+        return (int)Math.round(originX);
+    }
+
+    public int getOriginY() {
+        return (int)Math.round(originY);
+    }
+
+    public int getGridSize() {
+        return cs.getGridSize();
+    }
+}
@@ -0,0 +1,50 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Integer cell position in a level, used by the simulation instead of android.graphics.Point
+ */
+
+public final class Cell {
+
+    public final int x;
+    public final int y;
+
+    public Cell(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    // x and y in one int, for storing lots of cells without an object each. Both have to fit in 16 bits
+    public static int pack(final int x, final int y) {
+        if ((x & ~0xffff) != 0 || (y & ~0xffff) != 0) {
+            throw new IllegalArgumentException("can't pack " + x + ", " + y);
+        }
+        return x << 16 | y;
+    }
+
+    public static int unpackX(final int packed) {
+        return packed >>> 16;
+    }
+
+    public static int unpackY(final int packed) {
+        return packed & 0xffff;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cell)) return false;
+        final Cell other = (Cell) o;
+        return x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ")";
+    }
+}
@@ -0,0 +1,119 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Player input to a Simulation, each packed into a long so it can be queued and recorded without allocating.
+ * The top byte is the type, then two 28 bit arguments: a selectable object id (see SelectableGameObject.getId)
+ * or clone type, and a topology cell id. Applied with Simulation.apply.
+ */
+
+public final class Command {
+
+    public static final int PLAN = 1;
+    public static final int EXECUTE = 2;
+    public static final int SELECT = 3; // object, or NONE
+    public static final int EXTEND_PATH = 4; // object, cell
+    public static final int START_CLONE_PLACEMENT = 5; // clone type
+    public static final int STOP_CLONE_PLACEMENT = 6;
+    public static final int PLACE_CLONE = 7; // cell
+
+    private static final String[] NAMES = {
+            null, "plan", "execute", "select", "extend_path", "start_clone_placement", "stop_clone_placement", "place_clone"
+    };
+    private static final int[] NUM_ARGS = {0, 0, 0, 1, 2, 1, 0, 1};
+
+    private static final int ARG_BITS = 28;
+    private static final long ARG_MASK = (1L << ARG_BITS) - 1;
+    public static final int NONE = (int)ARG_MASK; // no object
+
+    private Command() {
+    }
+
+    public static long plan() {
+        return make(PLAN, 0, 0);
+    }
+
+    public static long execute() {
+        return make(EXECUTE, 0, 0);
+    }
+
+    public static long select(final int objectId) {
+        return make(SELECT, objectId, 0);
+    }
+
+    public static long extendPath(final int objectId, final int cell) {
+        return make(EXTEND_PATH, objectId, cell);
+    }
+
+    public static long startClonePlacement(final int cloneType) {
+        return make(START_CLONE_PLACEMENT, cloneType, 0);
+    }
+
+    public static long stopClonePlacement() {
+        return make(STOP_CLONE_PLACEMENT, 0, 0);
+    }
+
+    public static long placeClone(final int cell) {
+        return make(PLACE_CLONE, 0, cell);
+    }
+
+    private static long make(final int type, final int a, final int b) {
+        if (a < 0 || a > ARG_MASK || b < 0 || b > ARG_MASK) {
+            throw new IllegalArgumentException("command argument out of range: " + a + ", " + b);
+        }
+        return ((long)type << (2 * ARG_BITS)) | ((long)a << ARG_BITS) | b;
+    }
+
+    public static int type(final long command) {
+        return (int)(command >>> (2 * ARG_BITS));
+    }
+
+    // the object or clone type
+    public static int object(final long command) {
+        return (int)((command >>> ARG_BITS) & ARG_MASK);
+    }
+
+    public static int cell(final long command) {
+        return (int)(command & ARG_MASK);
+    }
+
+    // like "extend_path 0 17", which parse reads back
+    public static String toString(final long command) {
+        final int type = type(command);
+        if (type <= 0 || type >= NAMES.length) {
+            return "unknown " + Long.toHexString(command);
+        }
+        switch (type) {
+            case SELECT:
+            case START_CLONE_PLACEMENT:
+                return NAMES[type] + " " + object(command);
+            case EXTEND_PATH:
+                return NAMES[type] + " " + object(command) + " " + cell(command);
+            case PLACE_CLONE:
+                return NAMES[type] + " " + cell(command);
+            default:
+                return NAMES[type];
+        }
+    }
+
+    public static long parse(final String s) {
+        final String[] words = s.trim().split("\\s+");
+        for (int type = 1; type < NAMES.length; type++) {
+            if (!NAMES[type].equals(words[0])) continue;
+            if (words.length != 1 + NUM_ARGS[type]) {
+                throw new IllegalArgumentException("expected " + NUM_ARGS[type] + " arguments: " + s);
+            }
+            switch (type) {
+                case SELECT:
+                case START_CLONE_PLACEMENT:
+                    return make(type, Integer.parseInt(words[1]), 0);
+                case EXTEND_PATH:
+                    return make(type, Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                case PLACE_CLONE:
+                    return make(type, 0, Integer.parseInt(words[1]));
+                default:
+                    return make(type, 0, 0);
+            }
+        }
+        throw new IllegalArgumentException("unknown command: " + s);
+    }
+}
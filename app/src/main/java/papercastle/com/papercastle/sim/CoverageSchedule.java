@@ -0,0 +1,332 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which cells a level's guards watch at every tick, without stepping a Simulation.
+ *
+ * Every guard repeats itself (see GuardObject.getPeriodTicks), so each one is run once over its period and its
+ * line of sight at each tick is kept as an index into its distinct sightlines. The combined watched cells of all
+ * guards are tabled over the level's hyperperiod, the lcm of the guard periods, when that fits, making
+ * isWatched a couple of array reads; otherwise it checks the few guards that can ever see that cell.
+ *
+ * Ticks count from the start of executing, like Simulation.getTickCount(), and tick 0 is the plan phase.
+ * This is the schedule of guards that aren't celebrating. A guard that catches a clone stops looking for
+ * CELEBRATE_MS but keeps turning and walking, so callers that care lay that over the top.
+ */
+
+public final class CoverageSchedule {
+
+    public static final int MAX_TABLE_TICKS = 1 << 20;
+    private static final long MAX_TABLE_WORK = 1L << 26; // ticks * guards to build the table
+    private static final long MAX_TABLE_WORDS = 1L << 22; // distinct combined masks * words per mask
+
+    private final int numCells;
+    private final long[] periods; // per guard, in ticks
+    private final int[][] guardTickMask; // [guard][tick % period] -> index into guardMasks[guard]
+    private final int[][][] guardMasks; // [guard][mask] -> cells in LOS, the guard's own first
+    private final int[][] cellGuards; // [cell] -> guards that ever see it, for when there is no table
+
+    private final long hyperperiod; // -1 if it overflows
+    private final int[] tickMask; // [tick % hyperperiod] -> index into masks. null if there is no table
+    private final long[][] masks; // bitsets of cells watched by any guard
+
+    public CoverageSchedule(final Level level) {
+        this(Simulation.createTopology(level), new Simulation(level).getTerrain(), level.getGuards(), Simulation.TICK_MS);
+    }
+
+    // terrain as Simulation.getTerrain() has it, with start and end passable
+    public CoverageSchedule(final Topology topology, final Level.Terrain[][] terrain, final GuardObject.GuardFactory[] guards, final long tickMs) {
+        numCells = topology.getNumCells();
+        periods = new long[guards.length];
+        guardTickMask = new int[guards.length][];
+        guardMasks = new int[guards.length][][];
+
+        final VisibilityCache visibility = new VisibilityCache();
+        long lcm = 1;
+        for (int g = 0; g < guards.length; g++) {
+            final GuardObject guard = guards[g].create(topology);
+            periods[g] = guard.getPeriodTicks(tickMs);
+            if (periods[g] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("guard " + g + " period of " + periods[g] + " ticks is too long");
+            }
+            recordGuard(g, guard, topology, terrain, tickMs, visibility);
+            lcm = lcm < 0 ? -1 : lcm(lcm, periods[g]);
+        }
+        hyperperiod = lcm;
+        cellGuards = indexCells();
+
+        final int words = (numCells + 63) >> 6;
+        final List<long[]> combined = new ArrayList<>();
+        int[] table = null;
+        if (hyperperiod > 0 && hyperperiod <= MAX_TABLE_TICKS && hyperperiod * guards.length <= MAX_TABLE_WORK) {
+            table = buildTable(words, combined);
+        }
+        tickMask = table;
+        masks = table == null ? null : combined.toArray(new long[combined.size()][]);
+    }
+
+    private void recordGuard(final int g, final GuardObject guard, final Topology topology, final Level.Terrain[][] terrain,
+                             final long tickMs, final VisibilityCache visibility) {
+        final int period = (int)periods[g];
+        final Map<IntArrayKey, Integer> ids = new HashMap<>();
+        final List<int[]> distinct = new ArrayList<>();
+        guardTickMask[g] = new int[period];
+        for (int t = 0; t < period; t++) {
+            if (t > 0) {
+                guard.update(tickMs);
+            }
+            guard.computeLOS(topology, terrain, visibility);
+            final int[] cells = new int[guard.getNumLOSCells()];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = guard.getLOSCell(i);
+            }
+            final IntArrayKey key = new IntArrayKey(cells);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = distinct.size();
+                ids.put(key, id);
+                distinct.add(cells);
+            }
+            guardTickMask[g][t] = id;
+        }
+        guardMasks[g] = distinct.toArray(new int[distinct.size()][]);
+    }
+
+    private int[][] indexCells() {
+        final int[] counts = new int[numCells];
+        final int[] lastGuard = new int[numCells];
+        Arrays.fill(lastGuard, -1);
+        for (int g = 0; g < guardMasks.length; g++) {
+            for (int[] mask : guardMasks[g]) {
+                for (int cell : mask) {
+                    if (lastGuard[cell] != g) {
+                        lastGuard[cell] = g;
+                        counts[cell]++;
+                    }
+                }
+            }
+        }
+
+        final int[][] index = new int[numCells][];
+        for (int c = 0; c < numCells; c++) {
+            index[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        Arrays.fill(lastGuard, -1);
+        for (int g = 0; g < guardMasks.length; g++) {
+            for (int[] mask : guardMasks[g]) {
+                for (int cell : mask) {
+                    if (lastGuard[cell] != g) {
+                        lastGuard[cell] = g;
+                        index[cell][counts[cell]++] = g;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    // returns null if there turn out to be too many distinct masks
+    private int[] buildTable(final int words, final List<long[]> combined) {
+        final int numGuards = periods.length;
+        final int[] table = new int[(int)hyperperiod];
+        final Map<IntArrayKey, Integer> ids = new HashMap<>();
+        final int[] phase = new int[numGuards];
+        final int[] cur = new int[numGuards];
+        Arrays.fill(cur, -1);
+        int curId = -1;
+        for (int t = 0; t < table.length; t++) {
+            boolean changed = false;
+            for (int g = 0; g < numGuards; g++) {
+                final int id = guardTickMask[g][phase[g]];
+                if (id != cur[g]) {
+                    cur[g] = id;
+                    changed = true;
+                }
+                if (++phase[g] == periods[g]) phase[g] = 0;
+            }
+            if (changed || t == 0) {
+                final IntArrayKey key = new IntArrayKey(Arrays.copyOf(cur, numGuards));
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if ((long)(combined.size() + 1) * words > MAX_TABLE_WORDS) {
+                        return null;
+                    }
+                    final long[] mask = new long[words];
+                    for (int g = 0; g < numGuards; g++) {
+                        for (int cell : guardMasks[g][cur[g]]) {
+                            mask[cell >> 6] |= 1L << cell;
+                        }
+                    }
+                    id = combined.size();
+                    ids.put(key, id);
+                    combined.add(mask);
+                }
+                curId = id;
+            }
+            table[t] = curId;
+        }
+        return table;
+    }
+
+    // whether any guard would see cell after tick ticks of executing
+    public boolean isWatched(final int cell, final long tick) {
+        if (tickMask != null) {
+            return (masks[tickMask[(int)(tick % hyperperiod)]][cell >> 6] & (1L << cell)) != 0;
+        }
+        for (int g : cellGuards[cell]) {
+            if (isWatchedBy(g, cell, tick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether any guard would see cell at any tick from first to last, inclusive. Only looks at a tick's
+    // cells when they're different from the tick before
+    public boolean isWatchedDuring(final int cell, final long first, final long last) {
+        if (tickMask != null) {
+            int i = (int)(first % hyperperiod);
+            int prevId = -1;
+            for (long tick = first; tick <= last; tick++) {
+                final int id = tickMask[i];
+                if (id != prevId && (masks[id][cell >> 6] & (1L << cell)) != 0) {
+                    return true;
+                }
+                prevId = id;
+                if (++i == hyperperiod) i = 0;
+            }
+            return false;
+        }
+        for (int g : cellGuards[cell]) {
+            final int[] tickMasks = guardTickMask[g];
+            int i = (int)(first % periods[g]);
+            int prevId = -1;
+            for (long tick = first; tick <= last; tick++) {
+                final int id = tickMasks[i];
+                if (id != prevId && contains(guardMasks[g][id], cell)) {
+                    return true;
+                }
+                prevId = id;
+                if (++i == tickMasks.length) i = 0;
+            }
+        }
+        return false;
+    }
+
+    // the first tick from first to last, inclusive, at which guard sees cell, or -1 if there isn't one
+    public long firstWatchedBy(final int guard, final int cell, final long first, final long last) {
+        final int[] tickMasks = guardTickMask[guard];
+        final long end = Math.min(last, first + tickMasks.length - 1); // it only repeats after that
+        int i = (int)(first % periods[guard]);
+        int prevId = -1;
+        for (long tick = first; tick <= end; tick++) {
+            final int id = tickMasks[i];
+            if (id != prevId && contains(guardMasks[guard][id], cell)) {
+                return tick;
+            }
+            prevId = id;
+            if (++i == tickMasks.length) i = 0;
+        }
+        return -1;
+    }
+
+    // the guards that see cell at some tick. shared, so don't modify
+    public int[] getWatchers(final int cell) {
+        return cellGuards[cell];
+    }
+
+    private static boolean contains(final int[] cells, final int cell) {
+        for (int c : cells) {
+            if (c == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isWatched(final Topology t, final Cell p, final long tick) {
+        return isWatched(t.indexOf(p), tick);
+    }
+
+    public boolean isWatchedBy(final int guard, final int cell, final long tick) {
+        return contains(getLOSCells(guard, tick), cell);
+    }
+
+    // the cells guard sees after tick ticks, its own first. shared, so don't modify
+    public int[] getLOSCells(final int guard, final long tick) {
+        return guardMasks[guard][guardTickMask[guard][(int)(tick % periods[guard])]];
+    }
+
+    // id of the combined mask at tick, equal ids meaning equal masks, or -1 if there is no table
+    public int getWatchedMaskId(final long tick) {
+        return tickMask == null ? -1 : tickMask[(int)(tick % hyperperiod)];
+    }
+
+    // bitset of cells watched by any guard, by topology index. shared, so don't modify
+    public long[] getWatchedMask(final int id) {
+        return masks[id];
+    }
+
+    public boolean hasTable() {
+        return tickMask != null;
+    }
+
+    public int getNumGuards() {
+        return periods.length;
+    }
+
+    public long getGuardPeriod(final int guard) {
+        return periods[guard];
+    }
+
+    // ticks until every guard is back where it started, or -1 if that doesn't fit in a long
+    public long getHyperperiod() {
+        return hyperperiod;
+    }
+
+    public int getNumMasks() {
+        return masks == null ? 0 : masks.length;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    private static long lcm(final long a, final long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            final long t = x % y;
+            x = y;
+            y = t;
+        }
+        final long q = a / x;
+        return q > Long.MAX_VALUE / b ? -1 : q * b;
+    }
+
+    private static final class IntArrayKey {
+        private final int[] values;
+        private final int hash;
+
+        IntArrayKey(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IntArrayKey && Arrays.equals(values, ((IntArrayKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Created by Josh on 5/28/2017.
+ */
+
+public class EndObject extends GameObject {
+
+    public EndObject(Cell point) {
+        super(point, 0.0, 0xffffff00);
+    }
+
+    // sharing motion with the level's other walls and end, which never move
+    EndObject(Cell point, MotionTable motion) {
+        super(point, 0.0, 0xffffff00, motion);
+    }
+
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+}
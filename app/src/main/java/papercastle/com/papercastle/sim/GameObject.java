@@ -0,0 +1,163 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Object that has a position and/or a path
+ * Created by Josh on 5/26/2017.
+ */
+
+public class GameObject {
+
+    public static final long PATH_UNITS = 1000000; // fixed point resolution of pathPos, per cell
+
+    // where it is and where it's going, in its slot of a MotionTable. Its own table until a Simulation takes it
+    MotionTable motion;
+    int slot;
+
+    protected final int color; // argb
+
+    public GameObject(Cell start, double speed, int color) {
+        this(start, speed, color, new MotionTable(1));
+    }
+
+    // one of many kept in the same table, like walls
+    GameObject(Cell start, double speed, int color, MotionTable motion) {
+        this.motion = motion;
+        slot = motion.add(start, speed);
+        this.color = color;
+    }
+
+    // moves this into a slot of table, which it reads and writes from then on
+    void moveTo(final MotionTable table) {
+        slot = table.add(motion, slot);
+        motion = table;
+    }
+
+    public void addPointToPath(final Cell p) {
+        if (motion.reversed[slot]) {
+            throw new IllegalStateException("can't extend a path that's walked backwards");
+        }
+        motion.addPoint(slot, Cell.pack(p.x, p.y));
+    }
+
+    // how far along its path, in PATH_UNITS, an object of the given speed moves in ms
+    public static long pathStep(final double speed, final long ms) {
+        return Math.round(speed * ms * PATH_UNITS / 1000.0);
+    }
+
+    public void update(final long ms) {
+        motion.update(slot, ms);
+    }
+
+    // the cell whose center is closest to the current position, packed with Cell.pack
+    public int getCurPoint() {
+        return motion.getCurPoint(slot);
+    }
+
+    // the index of the path point whose center is closest to pos, which is in PATH_UNITS along the path
+    public int getPointIndex(final long pos) {
+        return motion.getPointIndex(slot, pos);
+    }
+
+    // topology index of getCurPoint
+    public int getCurCellIndex(final Topology t) {
+        final int p = getCurPoint();
+        return t.indexOf(Cell.unpackX(p), Cell.unpackY(p));
+    }
+
+    // getCurPoint as a new Cell
+    public Cell getCurCell() {
+        final int p = getCurPoint();
+        return new Cell(Cell.unpackX(p), Cell.unpackY(p));
+    }
+
+    // cells per second
+    public double getSpeed() {
+        return motion.speed[slot];
+    }
+
+    void setSpeed(final double speed) {
+        motion.speed[slot] = speed;
+    }
+
+    // position along the path, in PATH_UNITS
+    public long getPathPos() {
+        return motion.pathPos[slot];
+    }
+
+    // getPathPos() before the last update, so drawing can go between the last two
+    public long getPrevPathPos() {
+        return motion.prevPathPos[slot];
+    }
+
+    // mixes v into the running hash h
+    static long hash(final long h, final long v) {
+        final long x = (h ^ v) * 0x9e3779b97f4a7c15L;
+        return x ^ (x >>> 31);
+    }
+
+    // mixes everything about this object that can change as the level runs into h
+    public long hashState(long h) {
+        final int pathLength = motion.pathLength[slot];
+        h = hash(h, motion.pathPos[slot]);
+        h = hash(h, pathLength);
+        final int last = getPathPoint(pathLength - 1);
+        return hash(hash(h, Cell.unpackX(last)), Cell.unpackY(last));
+    }
+
+    // whether nothing about it can change as the level runs, so it's never updated and can be drawn once
+    public boolean isStatic() {
+        return false;
+    }
+
+    // writes everything restoreState needs into out from i, and returns where it stopped
+    int saveState(final long[] out, int i) {
+        out[i++] = motion.pathPos[slot];
+        out[i++] = motion.prevPathPos[slot];
+        out[i++] = motion.pathLength[slot];
+        out[i++] = motion.reversed[slot] ? 1 : 0;
+        return i;
+    }
+
+    // how many longs saveState writes
+    int stateSize() {
+        return 4;
+    }
+
+    // undoes everything since the saveState that wrote in from i. Paths only get longer, so they're cut back
+    int restoreState(final long[] in, int i) {
+        motion.pathPos[slot] = in[i++];
+        motion.prevPathPos[slot] = in[i++];
+        motion.pathLength[slot] = (int)in[i++];
+        motion.reversed[slot] = in[i++] != 0;
+        return i;
+    }
+
+    public int getPathIndex() {
+        return (int)(motion.pathPos[slot] / PATH_UNITS);
+    }
+
+    // how far between path[getPathIndex()] and the next point we are, in [0, 1)
+    public double getPathFraction() {
+        return (motion.pathPos[slot] - getPathIndex() * PATH_UNITS) / (double)PATH_UNITS;
+    }
+
+    public int getPathLength() {
+        return motion.pathLength[slot];
+    }
+
+    // the i'th point of the path in the direction it's being walked, packed with Cell.pack
+    public int getPathPoint(final int i) {
+        return motion.getPathPoint(slot, i);
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public Cell getLastPathPoint() {
+        final int p = getPathPoint(getPathLength() - 1);
+        return new Cell(Cell.unpackX(p), Cell.unpackY(p));
+    }
+
+
+}
@@ -0,0 +1,175 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Square grid with 4 directions. Packed cell ids are y * width + x.
+ */
+
+public class GridTopology implements Topology {
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final Cell[] cells;
+    private final int[] neighborTable; // [cell * 4 + direction], NO_CELL where it would leave the grid
+
+    public GridTopology(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        cells = new Cell[gridWidth * gridHeight];
+        neighborTable = new int[cells.length * 4];
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+                final int cell = y * gridWidth + x;
+                cells[cell] = new Cell(x, y);
+                for (int d = 0; d < 4; d++) {
+                    neighborTable[cell * 4 + d] = indexOf(x + deltas[d][0], y + deltas[d][1]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return gridWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return gridHeight;
+    }
+
+    @Override
+    public int getNumCells() {
+        return gridWidth * gridHeight;
+    }
+
+    @Override
+    public int indexOf(Cell p) {
+        return indexOf(p.x, p.y);
+    }
+
+    @Override
+    public int indexOf(int x, int y) {
+        if (x < 0 || y < 0 || x >= gridWidth || y >= gridHeight) {
+            return NO_CELL;
+        }
+        return y * gridWidth + x;
+    }
+
+    @Override
+    public int getX(int cell) {
+        return cell % gridWidth;
+    }
+
+    @Override
+    public int getY(int cell) {
+        return cell / gridWidth;
+    }
+
+    @Override
+    public Cell getCell(int cell) {
+        return cells[cell];
+    }
+
+    @Override
+    public int distance(Cell a, Cell b) {
+        return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
+    }
+
+    @Override
+    public int distance(int a, int b) {
+        return Math.abs(getX(a) - getX(b)) + Math.abs(getY(a) - getY(b));
+    }
+
+    @Override
+    public List<Cell> neighbors(Cell p) {
+        final List<Cell> l = new ArrayList<>(4);
+        addIfInBounds(l, p.x - 1, p.y);
+        addIfInBounds(l, p.x + 1, p.y);
+        addIfInBounds(l, p.x, p.y - 1);
+        addIfInBounds(l, p.x, p.y + 1);
+        return l;
+    }
+
+    @Override
+    public int neighbors(int cell, int[] out) {
+        final int x = getX(cell);
+        final int y = getY(cell);
+        int n = 0;
+        n = addIfInBounds(out, n, x - 1, y);
+        n = addIfInBounds(out, n, x + 1, y);
+        n = addIfInBounds(out, n, x, y - 1);
+        n = addIfInBounds(out, n, x, y + 1);
+        return n;
+    }
+
+    @Override
+    public int numDirections() {
+        return 4;
+    }
+
+    private static final int[][] deltas = new int[][] {{1, 0}, {0, -1}, {-1, 0}, {0, 1}};
+
+    // one step in direction, for code that walks off the table like ShadowCaster
+    static int deltaX(final int direction) {
+        return deltas[direction][0];
+    }
+
+    static int deltaY(final int direction) {
+        return deltas[direction][1];
+    }
+
+    @Override
+    public Cell getNeighborInDirection(Cell p, int direction) {
+        final int x = p.x + deltas[direction][0];
+        final int y = p.y + deltas[direction][1];
+        final int cell = indexOf(x, y);
+        return cell == NO_CELL ? new Cell(x, y) : cells[cell];
+    }
+
+    @Override
+    public int getNeighborInDirection(int cell, int direction) {
+        return neighborTable[cell * 4 + direction];
+    }
+
+    @Override
+    public int getDirectionVector(Cell a, Cell b) {
+        return direction(b.x - a.x, b.y - a.y);
+    }
+
+    @Override
+    public int getDirectionVector(int a, int b) {
+        return direction(getX(b) - getX(a), getY(b) - getY(a));
+    }
+
+    private int direction(final int dx, final int dy) {
+        int index = -1;
+        for (int i = 0; i < 4; i++) {
+            if (deltas[i][0] == dx && deltas[i][1] == dy) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) {
+            throw new IllegalArgumentException();
+        }
+        return index;
+    }
+
+    private void addIfInBounds(List<Cell> l, int x, int y) {
+        final int cell = indexOf(x, y);
+        if (cell != NO_CELL) {
+            l.add(cells[cell]);
+        }
+    }
+
+    private int addIfInBounds(int[] out, int n, int x, int y) {
+        final int cell = indexOf(x, y);
+        if (cell != NO_CELL) {
+            out[n++] = cell;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,250 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stationary Guard
+ * Created by Josh on 5/30/2017.
+ */
+
+public class GuardObject extends GameObject {
+
+    // TODO just implement as subclasses
+    /*enum GuardType {
+        STATIONARY, ROTATING, PATROLLING
+    }*/
+
+    public static final int COLOR = 0xff646464;
+
+    public static final int CELEBRATE_MS = 2500; // the amount of time they celebrate after catching you before returning to work
+
+    private final int LOS; // line of sight
+    private int curLos; // how far ahead it can see, in cells, up to LOS
+    // degrees wide it sees, up to ShadowCaster.MAX_CONE on grids, or 0 to only look straight ahead
+    private final int cone;
+    private ShadowCaster caster; // for cones when there's no cache, made the first time
+
+    // bitset of the cells currently in LOS, by topology index. Only changes in computeLOS
+    private long[] losCells;
+    private final int[] losIndices; // the set bits of losCells, so they can be cleared without scanning
+    private int numLosIndices;
+
+    public GuardObject(Cell start, int los, int startDir) {
+        this(start, los, startDir, 0);
+    }
+
+    public GuardObject(Cell start, int los, int startDir, int cone) {
+        super(start, 0.0, COLOR);
+        if (cone < 0 || cone > ShadowCaster.MAX_CONE) {
+            throw new IllegalArgumentException("cone of " + cone + " degrees");
+        }
+        this.LOS = los;
+        this.curLos = los;
+        this.cone = cone;
+        motion.kind[slot] = MotionTable.GUARD;
+        motion.dir[slot] = startDir;
+        motion.celebrateMs[slot] = CELEBRATE_MS;
+        losIndices = new int[cone == 0 ? los + 1 : ShadowCaster.maxCells(los)];
+        numLosIndices = 0;
+    }
+
+    public boolean isCelebrating() {
+        return motion.isCelebrating(slot);
+    }
+
+    public void startCelebrating() {
+        motion.celebrateMs[slot] = 0;
+    }
+
+    // how many ticks of tickMs until this guard is back where it started, facing the same way.
+    // celebrating doesn't change where a guard goes, only whether it's looking
+    public long getPeriodTicks(final long tickMs) {
+        return 1;
+    }
+
+    @Override
+    public long hashState(long h) {
+        h = super.hashState(h);
+        h = hash(h, motion.dir[slot]);
+        // the cells it sees besides its own, which is what curLos was for cones too when recordings began
+        h = hash(h, numLosIndices - 1);
+        return hash(h, motion.celebrateMs[slot]);
+    }
+
+    // LOS isn't saved, computeLOS gets it back from where the guard is and which way it faces
+    @Override
+    int saveState(final long[] out, int i) {
+        i = super.saveState(out, i);
+        out[i++] = motion.dir[slot];
+        out[i++] = motion.celebrateMs[slot];
+        return i;
+    }
+
+    @Override
+    int stateSize() {
+        return super.stateSize() + 2;
+    }
+
+    @Override
+    int restoreState(final long[] in, int i) {
+        i = super.restoreState(in, i);
+        motion.dir[slot] = (int)in[i++];
+        motion.celebrateMs[slot] = (int)in[i++];
+        return i;
+    }
+
+    public int getDir() {
+        return motion.dir[slot];
+    }
+
+    // how far ahead it can see as of the last computeLOS, in cells. For a cone that's its furthest row
+    public int getCurLos() {
+        return curLos;
+    }
+
+    // the furthest it can see, in cells
+    public int getLos() {
+        return LOS;
+    }
+
+    public int getCone() {
+        return cone;
+    }
+
+    // the cells in LOS as of the last computeLOS, its own first
+    public List<Cell> getPointsInLOS(final Topology t) {
+        final List<Cell> points = new ArrayList<>(numLosIndices);
+        for (int i = 0; i < numLosIndices; i++) {
+            points.add(t.getCell(losIndices[i]));
+        }
+        return points;
+    }
+
+    // whether the cell with topology index cellIndex is in LOS as of the last computeLOS
+    public boolean isInLOS(final int cellIndex) {
+        return cellIndex >= 0 && losCells != null && (losCells[cellIndex >> 6] & (1L << cellIndex)) != 0;
+    }
+
+    public int getNumLOSCells() {
+        return numLosIndices;
+    }
+
+    // topology index of the i'th cell in LOS, starting with the guard's own cell
+    public int getLOSCell(final int i) {
+        return losIndices[i];
+    }
+
+    public void computeLOS(final Topology t, final Level.Terrain[][] level) {
+        computeLOS(t, level, null);
+    }
+
+    // a cone is looked up in cache if it has it, and cast and added otherwise. cache may be null
+    public void computeLOS(final Topology t, final Level.Terrain[][] level, final VisibilityCache cache) {
+        if (losCells == null) {
+            losCells = new long[(t.getNumCells() + 63) >> 6];
+        }
+        for (int i = 0; i < numLosIndices; i++) {
+            losCells[losIndices[i] >> 6] = 0;
+        }
+        numLosIndices = 0;
+
+        int cur = getCurCellIndex(t);
+        if (cone > 0) {
+            computeCone(t, level, cur, cache);
+            return;
+        }
+        final int dir = getDir();
+        curLos = 0;
+        addToLOS(cur);
+        while (curLos < LOS) {
+            final int neighbor = t.getNeighborInDirection(cur, dir);
+            if (neighbor == Topology.NO_CELL || !Level.isPassable(level, t.getX(neighbor), t.getY(neighbor))) {
+                break;
+            } else {
+                curLos++;
+                addToLOS(neighbor);
+            }
+            cur = neighbor;
+        }
+    }
+
+    private void computeCone(final Topology t, final Level.Terrain[][] level, final int cur, final VisibilityCache cache) {
+        final int dir = getDir();
+        final long key = VisibilityCache.key(cur, dir, LOS, cone);
+        final int slot = cache == null ? -1 : cache.find(key);
+        if (slot >= 0) {
+            numLosIndices = cache.getLength(slot);
+            System.arraycopy(cache.getCells(), cache.getStart(slot), losIndices, 0, numLosIndices);
+        } else {
+            if (caster == null) {
+                caster = new ShadowCaster();
+            }
+            numLosIndices = caster.cast(t, level, cur, dir, LOS, cone, losIndices);
+            if (cache != null) {
+                cache.put(key, losIndices, numLosIndices);
+            }
+        }
+        // cones are only cast on grids, so how far ahead a cell is is how far it is along dir
+        final int x = t.getX(cur);
+        final int y = t.getY(cur);
+        curLos = 0;
+        for (int i = 0; i < numLosIndices; i++) {
+            final int cell = losIndices[i];
+            losCells[cell >> 6] |= 1L << cell;
+            curLos = Math.max(curLos, (t.getX(cell) - x) * GridTopology.deltaX(dir) + (t.getY(cell) - y) * GridTopology.deltaY(dir));
+        }
+    }
+
+    private void addToLOS(final int cellIndex) {
+        losCells[cellIndex >> 6] |= 1L << cellIndex;
+        losIndices[numLosIndices++] = cellIndex;
+    }
+
+    public interface GuardFactory {
+        GuardObject create(Topology t);
+    }
+
+    // directions index tables, so one from the wrong kind of map would quietly look the wrong way
+    static void checkDirection(final int dir, final Topology t) {
+        if (dir < 0 || dir >= t.numDirections()) {
+            throw new IllegalArgumentException("direction " + dir + " on a map with " + t.numDirections());
+        }
+    }
+
+    // shadowcasting works in the quadrants of a grid
+    static void checkCone(final int cone, final Topology t) {
+        if (cone != 0 && !(t instanceof GridTopology)) {
+            throw new IllegalArgumentException("vision cones only work on grid maps");
+        }
+    }
+
+    public static class StationaryGuardFactory implements GuardFactory {
+
+        // not private so LevelPackCompiler can write them out
+        final Cell p;
+        final int los;
+        final int dir;
+        final int cone;
+
+        public StationaryGuardFactory(Cell p, int los, int dir) {
+            this(p, los, dir, 0);
+        }
+
+        public StationaryGuardFactory(Cell p, int los, int dir, int cone) {
+            this.p = p;
+            this.los = los;
+            this.dir = dir;
+            this.cone = cone;
+        }
+
+        @Override
+        public GuardObject create(final Topology t) {
+            checkDirection(dir, t);
+            checkCone(cone, t);
+            return new GuardObject(p, los, dir, cone);
+        }
+    }
+
+
+}
@@ -0,0 +1,169 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hex map with 6 directions, in axial coordinates: x is q and y is r, so the level's [y][x] layout is a rhombus
+ * whose rows each start half a cell further right than the one above. Directions go anticlockwise from east
+ * (east, north east, north west, west, south west, south east), and packed cell ids are y * width + x like
+ * GridTopology.
+ */
+
+public class HexTopology implements Topology {
+
+    private static final int NUM_DIRECTIONS = 6;
+
+    private final int width;
+    private final int height;
+    private final Cell[] cells;
+    private final int[] neighborTable; // [cell * 6 + direction], NO_CELL where it would leave the map
+
+    private static final int[][] deltas = new int[][] {{1, 0}, {1, -1}, {0, -1}, {-1, 0}, {-1, 1}, {0, 1}};
+    // direction of each delta, by [(dy + 1) * 3 + dx + 1], or -1 if it isn't one
+    private static final int[] directionTable = new int[9];
+
+    static {
+        for (int i = 0; i < directionTable.length; i++) {
+            directionTable[i] = -1;
+        }
+        for (int d = 0; d < NUM_DIRECTIONS; d++) {
+            directionTable[(deltas[d][1] + 1) * 3 + deltas[d][0] + 1] = d;
+        }
+    }
+
+    public HexTopology(int width, int height) {
+        this.width = width;
+        this.height = height;
+        cells = new Cell[width * height];
+        neighborTable = new int[cells.length * NUM_DIRECTIONS];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int cell = y * width + x;
+                cells[cell] = new Cell(x, y);
+                for (int d = 0; d < NUM_DIRECTIONS; d++) {
+                    neighborTable[cell * NUM_DIRECTIONS + d] = indexOf(x + deltas[d][0], y + deltas[d][1]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getNumCells() {
+        return width * height;
+    }
+
+    @Override
+    public int indexOf(Cell p) {
+        return indexOf(p.x, p.y);
+    }
+
+    @Override
+    public int indexOf(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return NO_CELL;
+        }
+        return y * width + x;
+    }
+
+    @Override
+    public int getX(int cell) {
+        return cell % width;
+    }
+
+    @Override
+    public int getY(int cell) {
+        return cell / width;
+    }
+
+    @Override
+    public Cell getCell(int cell) {
+        return cells[cell];
+    }
+
+    @Override
+    public int distance(Cell a, Cell b) {
+        return axialDistance(a.x - b.x, a.y - b.y);
+    }
+
+    @Override
+    public int distance(int a, int b) {
+        return axialDistance(getX(a) - getX(b), getY(a) - getY(b));
+    }
+
+    // steps between cells dq, dr apart, which is half the cube distance
+    private static int axialDistance(final int dq, final int dr) {
+        return (Math.abs(dq) + Math.abs(dr) + Math.abs(dq + dr)) / 2;
+    }
+
+    @Override
+    public List<Cell> neighbors(Cell p) {
+        final List<Cell> l = new ArrayList<>(NUM_DIRECTIONS);
+        final int cell = indexOf(p);
+        for (int d = 0; d < NUM_DIRECTIONS; d++) {
+            final int neighbor = cell == NO_CELL ? indexOf(p.x + deltas[d][0], p.y + deltas[d][1]) : neighborTable[cell * NUM_DIRECTIONS + d];
+            if (neighbor != NO_CELL) {
+                l.add(cells[neighbor]);
+            }
+        }
+        return l;
+    }
+
+    @Override
+    public int neighbors(int cell, int[] out) {
+        int n = 0;
+        for (int d = 0; d < NUM_DIRECTIONS; d++) {
+            final int neighbor = neighborTable[cell * NUM_DIRECTIONS + d];
+            if (neighbor != NO_CELL) {
+                out[n++] = neighbor;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public int numDirections() {
+        return NUM_DIRECTIONS;
+    }
+
+    @Override
+    public Cell getNeighborInDirection(Cell p, int direction) {
+        final int x = p.x + deltas[direction][0];
+        final int y = p.y + deltas[direction][1];
+        final int cell = indexOf(x, y);
+        return cell == NO_CELL ? new Cell(x, y) : cells[cell];
+    }
+
+    @Override
+    public int getNeighborInDirection(int cell, int direction) {
+        return neighborTable[cell * NUM_DIRECTIONS + direction];
+    }
+
+    @Override
+    public int getDirectionVector(Cell a, Cell b) {
+        return direction(b.x - a.x, b.y - a.y);
+    }
+
+    @Override
+    public int getDirectionVector(int a, int b) {
+        return direction(getX(b) - getX(a), getY(b) - getY(a));
+    }
+
+    private static int direction(final int dx, final int dy) {
+        final int index = dx < -1 || dx > 1 || dy < -1 || dy > 1 ? -1 : directionTable[(dy + 1) * 3 + dx + 1];
+        if (index == -1) {
+            throw new IllegalArgumentException();
+        }
+        return index;
+    }
+}
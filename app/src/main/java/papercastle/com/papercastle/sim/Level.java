@@ -1,13 +1,10 @@
-package papercastle.com.papercastle;
+package papercastle.com.papercastle.sim;
 
-import android.graphics.Point;
-import android.util.Log;
-
-import static papercastle.com.papercastle.Level.CSType.GRID;
-import static papercastle.com.papercastle.Level.Terrain.END;
-import static papercastle.com.papercastle.Level.Terrain.NONE;
-import static papercastle.com.papercastle.Level.Terrain.START;
-import static papercastle.com.papercastle.Level.Terrain.WALL;
+import static papercastle.com.papercastle.sim.Level.CSType.GRID;
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+import static papercastle.com.papercastle.sim.Level.Terrain.WALL;
 
 /**
  * Created by Josh on 5/26/2017.
@@ -19,7 +16,7 @@ public class Level {
         GRID, HEX
     }
 
-    enum Terrain {
+    public enum Terrain {
         NONE, WALL, START, END
     }
 
@@ -32,7 +29,7 @@ public class Level {
     private final int[] cloneTypes;
     private final GuardObject.GuardFactory[] guards;
 
-    Level(CSType csType, Terrain[][] layout, int[] cloneTypes, GuardObject.GuardFactory[] guards) {
+    public Level(CSType csType, Terrain[][] layout, int[] cloneTypes, GuardObject.GuardFactory[] guards) {
         this.csType = csType;
         this.layout = layout;
         this.cloneTypes = cloneTypes;
@@ -55,9 +52,6 @@ public class Level {
         return guards;
     }
 
-    public static final int WIDTH = 9;
-    public static final int HEIGHT = 6;
-
     public static final Level[] ALL_LEVELS = new Level[] {
             new Level(GRID, new Terrain[][] {
                     {START, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE},
@@ -68,10 +62,10 @@ public class Level {
                     {NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE}
             }, new int[] {1, 0, 2}
             ,new GuardObject.GuardFactory[] {
-                    new RotatingGuardObject.RotatingGuardFactory(new Point(1, 3), 4, new int[] {0, 1, 2, 3}, true),
-                    new RotatingGuardObject.RotatingGuardFactory(new Point(5, 5), 2, new int[] {0, 1, 2}, false),
-                    new PatrollingGuardObject.PatrollingGuardFactory(new Point[] {new Point(4, 4), new Point(4, 3), new Point(3, 3), new Point(3, 4), new Point(4, 4)}, 2, true),
-                    new PatrollingGuardObject.PatrollingGuardFactory(new Point[] {new Point(8, 2), new Point(8, 1), new Point(7, 1)}, 1, false)
+                    new RotatingGuardObject.RotatingGuardFactory(new Cell(1, 3), 4, new int[] {0, 1, 2, 3}, true),
+                    new RotatingGuardObject.RotatingGuardFactory(new Cell(5, 5), 2, new int[] {0, 1, 2}, false),
+                    new PatrollingGuardObject.PatrollingGuardFactory(new Cell[] {new Cell(4, 4), new Cell(4, 3), new Cell(3, 3), new Cell(3, 4), new Cell(4, 4)}, 2, true),
+                    new PatrollingGuardObject.PatrollingGuardFactory(new Cell[] {new Cell(8, 2), new Cell(8, 1), new Cell(7, 1)}, 1, false)
 
             }),
             new Level(GRID, new Terrain[][] {
@@ -83,10 +77,10 @@ public class Level {
                     {NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE}
             }, new int[] {20}
             , new GuardObject.GuardFactory[] {
-                    new GuardObject.StationaryGuardFactory(new Point(0, 5), 4, 0),
-                    new GuardObject.StationaryGuardFactory(new Point(0, 2), 5, 1),
-                    new GuardObject.StationaryGuardFactory(new Point(8, 0), 1, 2),
-                    new GuardObject.StationaryGuardFactory(new Point(6, 0), 4, 3)
+                    new GuardObject.StationaryGuardFactory(new Cell(0, 5), 4, 0),
+                    new GuardObject.StationaryGuardFactory(new Cell(0, 2), 5, 1),
+                    new GuardObject.StationaryGuardFactory(new Cell(8, 0), 1, 2),
+                    new GuardObject.StationaryGuardFactory(new Cell(6, 0), 4, 3)
             } )
     };
 }
@@ -0,0 +1,189 @@
+package papercastle.com.papercastle.sim;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compiled pack of levels (see LevelPackCompiler), read straight out of a memory mapped file.
+ * Opening only checks the header, and each level is decoded when it's asked for, so a pack of thousands of
+ * levels opens instantly and only pages in the levels that are played.
+ *
+ * All numbers are big endian.
+ *   header: int MAGIC, short VERSION, short 0, int numLevels, int offsets[numLevels + 1] from the start of the file
+ *   level:  short nameBytes, utf-8 name, byte csType, short width, short height,
+ *           terrain at 2 bits per cell (Terrain ordinals) in row order, low bits first,
+ *           byte numCloneTypes, short cloneCounts[], short numGuards, guards
+ *   guard:  byte GUARD_STATIONARY, short x, short y, short los, byte cone, byte dir
+ *           byte GUARD_ROTATING, short x, short y, short los, byte cone, byte restart, byte numDirs, byte dirs[]
+ *           byte GUARD_PATROLLING, short los, byte cone, byte restart, short numPoints, (short x, short y)[]
+ * Version 1 packs are still read, and have no cones.
+ *
+ * Reads don't change the shared buffer's position, so one pack can be read from any number of threads.
+ */
+
+public final class LevelPack {
+
+    public static final int MAGIC = 0x50434c50; // "PCLP"
+    public static final short VERSION = 2;
+    private static final short FIRST_CONE_VERSION = 2;
+    static final int HEADER_BYTES = 12;
+
+    static final int GUARD_STATIONARY = 0;
+    static final int GUARD_ROTATING = 1;
+    static final int GUARD_PATROLLING = 2;
+
+    private final ByteBuffer buffer;
+    private final int version;
+    private final int numLevels;
+
+    public LevelPack(final ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        if (this.buffer.remaining() < HEADER_BYTES || this.buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a level pack");
+        }
+        version = this.buffer.getShort(4);
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("level pack version " + version + ", expected up to " + VERSION);
+        }
+        numLevels = this.buffer.getInt(8);
+        if (numLevels < 0 || HEADER_BYTES + 4L * (numLevels + 1) > this.buffer.limit()) {
+            throw new IllegalArgumentException("level pack index doesn't fit in " + this.buffer.limit() + " bytes");
+        }
+    }
+
+    public static LevelPack open(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // the mapping outlives the channel
+            final FileChannel channel = raf.getChannel();
+            return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // whether file starts like a compiled pack, as opposed to the text format
+    public static boolean isPack(final File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            final byte[] magic = new byte[4];
+            return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        }
+    }
+
+    public int size() {
+        return numLevels;
+    }
+
+    public String getName(final int i) {
+        final ByteBuffer b = levelBuffer(i);
+        return readName(b);
+    }
+
+    // index of the first level called name, or -1
+    public int indexOf(final String name) {
+        for (int i = 0; i < numLevels; i++) {
+            if (getName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // decodes level i, throwing IllegalArgumentException if it's malformed
+    public Level getLevel(final int i) {
+        final ByteBuffer b = levelBuffer(i);
+        try {
+            readName(b);
+            final Level.CSType csType = Level.CSType.values()[b.get()];
+            final int width = b.getShort();
+            final int height = b.getShort();
+            final Level.Terrain[] terrains = Level.Terrain.values();
+            final Level.Terrain[][] layout = new Level.Terrain[height][width];
+            int bits = 0;
+            int numBits = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (numBits == 0) {
+                        bits = b.get() & 0xff;
+                        numBits = 8;
+                    }
+                    layout[y][x] = terrains[bits & 3];
+                    bits >>>= 2;
+                    numBits -= 2;
+                }
+            }
+
+            final int[] cloneTypes = new int[b.get()];
+            for (int c = 0; c < cloneTypes.length; c++) {
+                cloneTypes[c] = b.getShort();
+            }
+
+            final GuardObject.GuardFactory[] guards = new GuardObject.GuardFactory[b.getShort()];
+            for (int g = 0; g < guards.length; g++) {
+                guards[g] = readGuard(b, version >= FIRST_CONE_VERSION);
+            }
+            return new Level(csType, layout, cloneTypes, guards);
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("level " + i + " is corrupt: " + e, e);
+        }
+    }
+
+    private static GuardObject.GuardFactory readGuard(final ByteBuffer b, final boolean hasCone) {
+        final int kind = b.get();
+        switch (kind) {
+            case GUARD_STATIONARY: {
+                final Cell p = new Cell(b.getShort(), b.getShort());
+                final int los = b.getShort();
+                final int cone = hasCone ? b.get() : 0;
+                return new GuardObject.StationaryGuardFactory(p, los, b.get(), cone);
+            }
+            case GUARD_ROTATING: {
+                final Cell p = new Cell(b.getShort(), b.getShort());
+                final int los = b.getShort();
+                final int cone = hasCone ? b.get() : 0;
+                final boolean restart = b.get() != 0;
+                final int[] dirs = new int[b.get()];
+                for (int d = 0; d < dirs.length; d++) {
+                    dirs[d] = b.get();
+                }
+                return new RotatingGuardObject.RotatingGuardFactory(p, los, dirs, restart, cone);
+            }
+            case GUARD_PATROLLING: {
+                final int los = b.getShort();
+                final int cone = hasCone ? b.get() : 0;
+                final boolean restart = b.get() != 0;
+                final Cell[] patrol = new Cell[b.getShort()];
+                for (int p = 0; p < patrol.length; p++) {
+                    patrol[p] = new Cell(b.getShort(), b.getShort());
+                }
+                return new PatrollingGuardObject.PatrollingGuardFactory(patrol, los, restart, cone);
+            }
+            default:
+                throw new IllegalArgumentException("unknown guard kind " + kind);
+        }
+    }
+
+    // a view of just level i's bytes, positioned at its start
+    private ByteBuffer levelBuffer(final int i) {
+        if (i < 0 || i >= numLevels) {
+            throw new IndexOutOfBoundsException("level " + i + " of " + numLevels);
+        }
+        final int start = buffer.getInt(HEADER_BYTES + 4 * i);
+        final int end = buffer.getInt(HEADER_BYTES + 4 * (i + 1));
+        if (start < HEADER_BYTES || end < start || end > buffer.limit()) {
+            throw new IllegalArgumentException("level " + i + " has a bad offset");
+        }
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(end).position(start);
+        return b;
+    }
+
+    private static String readName(final ByteBuffer b) {
+        final byte[] name = new byte[b.getShort() & 0xffff];
+        b.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,199 @@
+package papercastle.com.papercastle.sim;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build time tool that compiles text level packs (see LevelReader) into the binary format LevelPack maps.
+ * Every level is checked by building a Simulation from it first, so a broken level fails the build
+ * instead of the game.
+ *
+ *   LevelPackCompiler --out=levels.pack [pack.txt...]
+ *
+ * With no packs it compiles Level.ALL_LEVELS, named by index.
+ */
+
+public final class LevelPackCompiler {
+
+    private static final int MAX_SHORT = Short.MAX_VALUE;
+    private static final int MAX_BYTE = Byte.MAX_VALUE;
+
+    private LevelPackCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String out = null;
+        final List<String> names = new ArrayList<>();
+        final List<Level> levels = new ArrayList<>();
+        int errors = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+                continue;
+            }
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(arg), StandardCharsets.UTF_8))) {
+                for (LevelReader.Entry entry : LevelReader.read(in)) {
+                    String error = entry.error;
+                    if (error == null) {
+                        try {
+                            new Simulation(entry.level);
+                        } catch (IllegalArgumentException e) {
+                            error = e.getMessage();
+                        }
+                    }
+                    if (error != null) {
+                        System.err.println(arg + ":" + entry.line + ": level " + entry.name + ": " + error);
+                        errors++;
+                    } else {
+                        names.add(entry.name);
+                        levels.add(entry.level);
+                    }
+                }
+            }
+        }
+        if (out == null) {
+            System.err.println("usage: LevelPackCompiler --out=levels.pack [pack.txt...]");
+            System.exit(2);
+        }
+        if (errors > 0) {
+            System.exit(1);
+        }
+        if (levels.isEmpty()) {
+            for (int i = 0; i < Level.ALL_LEVELS.length; i++) {
+                names.add(Integer.toString(i));
+                levels.add(Level.ALL_LEVELS[i]);
+            }
+        }
+
+        try (OutputStream o = new FileOutputStream(out)) {
+            write(names, levels, o);
+        }
+        System.err.println(levels.size() + " levels");
+    }
+
+    public static void write(final List<String> names, final List<Level> levels, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream bodyData = new DataOutputStream(body);
+        final int[] offsets = new int[levels.size() + 1];
+        final int indexBytes = LevelPack.HEADER_BYTES + 4 * offsets.length;
+        for (int i = 0; i < levels.size(); i++) {
+            offsets[i] = indexBytes + bodyData.size();
+            try {
+                writeLevel(names.get(i), levels.get(i), bodyData);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("level " + names.get(i) + ": " + e.getMessage(), e);
+            }
+        }
+        offsets[levels.size()] = indexBytes + bodyData.size();
+
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(LevelPack.MAGIC);
+        data.writeShort(LevelPack.VERSION);
+        data.writeShort(0);
+        data.writeInt(levels.size());
+        for (int offset : offsets) {
+            data.writeInt(offset);
+        }
+        body.writeTo(data);
+        data.flush();
+    }
+
+    private static void writeLevel(final String name, final Level level, final DataOutputStream out) throws IOException {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(check(nameBytes.length, 0xffff, "name length"));
+        out.write(nameBytes);
+        out.writeByte(level.getCsType().ordinal());
+
+        final Level.Terrain[][] layout = level.getLayout();
+        final int height = layout.length;
+        final int width = layout[0].length;
+        out.writeShort(check(width, MAX_SHORT, "width"));
+        out.writeShort(check(height, MAX_SHORT, "height"));
+        int bits = 0;
+        int numBits = 0;
+        for (int y = 0; y < height; y++) {
+            if (layout[y].length != width) {
+                throw new IllegalArgumentException("row " + y + " is " + layout[y].length + " wide, not " + width);
+            }
+            for (int x = 0; x < width; x++) {
+                bits |= layout[y][x].ordinal() << numBits;
+                numBits += 2;
+                if (numBits == 8) {
+                    out.writeByte(bits);
+                    bits = 0;
+                    numBits = 0;
+                }
+            }
+        }
+        if (numBits > 0) {
+            out.writeByte(bits);
+        }
+
+        final int[] cloneTypes = level.getCloneTypes();
+        out.writeByte(check(cloneTypes.length, MAX_BYTE, "clone types"));
+        for (int count : cloneTypes) {
+            out.writeShort(check(count, MAX_SHORT, "clone count"));
+        }
+
+        final GuardObject.GuardFactory[] guards = level.getGuards();
+        out.writeShort(check(guards.length, MAX_SHORT, "guards"));
+        for (GuardObject.GuardFactory guard : guards) {
+            writeGuard(guard, out);
+        }
+    }
+
+    private static void writeGuard(final GuardObject.GuardFactory guard, final DataOutputStream out) throws IOException {
+        if (guard instanceof GuardObject.StationaryGuardFactory) {
+            final GuardObject.StationaryGuardFactory g = (GuardObject.StationaryGuardFactory)guard;
+            out.writeByte(LevelPack.GUARD_STATIONARY);
+            writeCell(g.p, out);
+            out.writeShort(check(g.los, MAX_SHORT, "los"));
+            out.writeByte(check(g.cone, MAX_BYTE, "cone"));
+            out.writeByte(check(g.dir, MAX_BYTE, "dir"));
+        } else if (guard instanceof RotatingGuardObject.RotatingGuardFactory) {
+            final RotatingGuardObject.RotatingGuardFactory g = (RotatingGuardObject.RotatingGuardFactory)guard;
+            out.writeByte(LevelPack.GUARD_ROTATING);
+            writeCell(g.p, out);
+            out.writeShort(check(g.los, MAX_SHORT, "los"));
+            out.writeByte(check(g.cone, MAX_BYTE, "cone"));
+            out.writeByte(g.restart ? 1 : 0);
+            out.writeByte(check(g.dirs.length, MAX_BYTE, "directions"));
+            for (int dir : g.dirs) {
+                out.writeByte(check(dir, MAX_BYTE, "dir"));
+            }
+        } else if (guard instanceof PatrollingGuardObject.PatrollingGuardFactory) {
+            final PatrollingGuardObject.PatrollingGuardFactory g = (PatrollingGuardObject.PatrollingGuardFactory)guard;
+            out.writeByte(LevelPack.GUARD_PATROLLING);
+            out.writeShort(check(g.los, MAX_SHORT, "los"));
+            out.writeByte(check(g.cone, MAX_BYTE, "cone"));
+            out.writeByte(g.restart ? 1 : 0);
+            out.writeShort(check(g.patrol.length, MAX_SHORT, "patrol points"));
+            for (Cell p : g.patrol) {
+                writeCell(p, out);
+            }
+        } else {
+            throw new IllegalArgumentException("can't write guard " + guard.getClass().getName());
+        }
+    }
+
+    private static void writeCell(final Cell p, final DataOutputStream out) throws IOException {
+        out.writeShort(check(p.x, MAX_SHORT, "x"));
+        out.writeShort(check(p.y, MAX_SHORT, "y"));
+    }
+
+    private static int check(final int value, final int max, final String what) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException(what + " " + value + " doesn't fit");
+        }
+        return value;
+    }
+}
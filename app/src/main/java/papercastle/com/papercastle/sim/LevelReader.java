@@ -0,0 +1,194 @@
+package papercastle.com.papercastle.sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads levels from the plain text pack format, so levels can live outside ALL_LEVELS.
+ *
+ *   // comment
+ *   level first-steps
+ *   type grid
+ *   clones 1 0 2
+ *   S........
+ *   ..E#.....
+ *   guard stationary X Y LOS DIR
+ *   guard rotating X Y LOS restart|bounce DIR DIR...
+ *   guard patrolling LOS restart|bounce X,Y X,Y...
+ *
+ * Map rows are the lines made only of . # S E (none, wall, start, end), top row first.
+ * type is grid (the default) or hex. DIR is 0 to 3 on a grid and 0 to 5 on hex, anticlockwise from east, and
+ * on hex X and Y are axial (see HexTopology).
+ * Any guard can end in cone=DEGREES (1 to 90, grid only) to see a cone that wide instead of one straight line.
+ * A broken level is reported in its entry and doesn't stop the rest of the pack from being read.
+ */
+
+public final class LevelReader {
+
+    private static final String CONE = "cone=";
+
+    public static final class Entry {
+        public final String name;
+        public final int line; // where the level starts
+        public final Level level; // null if it couldn't be read
+        public final String error;
+
+        Entry(String name, int line, Level level, String error) {
+            this.name = name;
+            this.line = line;
+            this.level = level;
+            this.error = error;
+        }
+    }
+
+    private LevelReader() {
+    }
+
+    public static List<Entry> read(final BufferedReader in) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        Builder builder = null;
+        String line;
+        int lineNum = 0;
+        while ((line = in.readLine()) != null) {
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) continue;
+
+            final String[] words = line.split("\\s+");
+            if (words[0].equals("level")) {
+                if (builder != null) entries.add(builder.finish());
+                builder = new Builder(words.length > 1 ? line.substring(words[0].length()).trim() : "line " + lineNum, lineNum);
+            } else if (builder == null) {
+                // everything before the first level line is one unnamed level
+                builder = new Builder("line " + lineNum, lineNum);
+                builder.add(words, line, lineNum);
+            } else {
+                builder.add(words, line, lineNum);
+            }
+        }
+        if (builder != null) entries.add(builder.finish());
+        return entries;
+    }
+
+    private static final class Builder {
+        final String name;
+        final int line;
+        Level.CSType csType = Level.CSType.GRID;
+        int[] cloneTypes = new int[0];
+        final List<Level.Terrain[]> rows = new ArrayList<>();
+        final List<GuardObject.GuardFactory> guards = new ArrayList<>();
+        String error;
+
+        Builder(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+
+        void add(final String[] words, final String line, final int lineNum) {
+            if (error != null) return;
+            try {
+                if (isRow(line)) {
+                    rows.add(parseRow(line));
+                } else if (words[0].equals("type")) {
+                    csType = Level.CSType.valueOf(words[1].toUpperCase());
+                } else if (words[0].equals("clones")) {
+                    cloneTypes = new int[words.length - 1];
+                    for (int i = 1; i < words.length; i++) {
+                        cloneTypes[i - 1] = Integer.parseInt(words[i]);
+                    }
+                } else if (words[0].equals("guard")) {
+                    guards.add(parseGuard(words));
+                } else {
+                    throw new IllegalArgumentException("unknown line '" + line + "'");
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                error = "line " + lineNum + ": " + e.getMessage();
+            }
+        }
+
+        Entry finish() {
+            if (error == null && rows.isEmpty()) {
+                error = "no map rows";
+            }
+            if (error != null) {
+                return new Entry(name, line, null, error);
+            }
+            final Level level = new Level(csType, rows.toArray(new Level.Terrain[rows.size()][]), cloneTypes,
+                    guards.toArray(new GuardObject.GuardFactory[guards.size()]));
+            return new Entry(name, line, level, null);
+        }
+    }
+
+    private static boolean isRow(final String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (".#SE".indexOf(line.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Level.Terrain[] parseRow(final String line) {
+        final Level.Terrain[] row = new Level.Terrain[line.length()];
+        for (int x = 0; x < row.length; x++) {
+            switch (line.charAt(x)) {
+                case '#': row[x] = Level.Terrain.WALL; break;
+                case 'S': row[x] = Level.Terrain.START; break;
+                case 'E': row[x] = Level.Terrain.END; break;
+                default: row[x] = Level.Terrain.NONE; break;
+            }
+        }
+        return row;
+    }
+
+    private static GuardObject.GuardFactory parseGuard(String[] words) {
+        int cone = 0;
+        final String last = words[words.length - 1];
+        if (last.startsWith(CONE)) {
+            cone = Integer.parseInt(last.substring(CONE.length()));
+            if (cone <= 0 || cone > ShadowCaster.MAX_CONE) {
+                throw new IllegalArgumentException("cone must be 1 to " + ShadowCaster.MAX_CONE + " degrees, got " + cone);
+            }
+            words = Arrays.copyOf(words, words.length - 1);
+        }
+        switch (words[1]) {
+            case "stationary":
+                return new GuardObject.StationaryGuardFactory(parseCell(words[2], words[3]),
+                        Integer.parseInt(words[4]), Integer.parseInt(words[5]), cone);
+            case "rotating": {
+                final int[] dirs = new int[words.length - 6];
+                for (int i = 0; i < dirs.length; i++) {
+                    dirs[i] = Integer.parseInt(words[i + 6]);
+                }
+                if (dirs.length == 0) throw new IllegalArgumentException("rotating guard needs directions");
+                return new RotatingGuardObject.RotatingGuardFactory(parseCell(words[2], words[3]),
+                        Integer.parseInt(words[4]), dirs, parseRestart(words[5]), cone);
+            }
+            case "patrolling": {
+                final Cell[] patrol = new Cell[words.length - 4];
+                for (int i = 0; i < patrol.length; i++) {
+                    final String[] xy = words[i + 4].split(",");
+                    patrol[i] = parseCell(xy[0], xy[1]);
+                }
+                if (patrol.length < 2) throw new IllegalArgumentException("patrolling guard needs at least 2 points");
+                return new PatrollingGuardObject.PatrollingGuardFactory(patrol, Integer.parseInt(words[2]),
+                        parseRestart(words[3]), cone);
+            }
+            default:
+                throw new IllegalArgumentException("unknown guard type " + words[1]);
+        }
+    }
+
+    private static Cell parseCell(final String x, final String y) {
+        return new Cell(Integer.parseInt(x), Integer.parseInt(y));
+    }
+
+    private static boolean parseRestart(final String word) {
+        if (word.equals("restart")) return true;
+        if (word.equals("bounce")) return false;
+        throw new IllegalArgumentException("expected restart or bounce, got " + word);
+    }
+}
@@ -0,0 +1,220 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.Arrays;
+
+/**
+ * Everything about game objects that changes as they move, as parallel arrays by slot, so a Simulation steps
+ * all of its guards or selectable objects in one loop over primitives instead of asking each object to update
+ * itself. What kind of object a slot is says how it moves, switched on rather than overridden.
+ *
+ * A GameObject reads and writes its own slot. One made on its own gets a table of its own, and a Simulation
+ * moves the objects it's given into its tables, where their slots never change while they're in it.
+ * Not thread safe.
+ */
+
+final class MotionTable {
+
+    // kinds
+    static final byte PLAIN = 0; // walks its path once and stops at the end
+    static final byte GUARD = 1; // stands still, and stops looking for a while after catching something
+    static final byte ROTATING = 2; // a guard that turns through its directions
+    static final byte PATROLLING = 3; // a guard that walks its path over and over, facing where it's going
+
+    int size;
+    byte[] kind;
+
+    // the path's points packed with Cell.pack, of which the first pathLength are used. Grows by doubling, so
+    // extending it doesn't copy it every time
+    int[][] path;
+    int[] pathLength;
+    boolean[] reversed; // whether the path is walked from its last point back to its first, see turnAround
+    long[] pathPos; // in GameObject.PATH_UNITS, so stepping is exact and deterministic
+    long[] prevPathPos; // pathPos before the last update, so drawing can go between ticks
+    double[] speed; // cells per second
+
+    // guards only
+    int[] dir;
+    int[] celebrateMs;
+    int[] rotateMs;
+    int[] directionIndex; // into directions, negative on the way back when bouncing
+    int[][] directions;
+    boolean[] restart; // whether a rotating or patrolling guard starts over at the end rather than going back
+    Topology[] topology; // for patrolling guards to work out which way they face
+
+    MotionTable(final int capacity) {
+        kind = new byte[capacity];
+        path = new int[capacity][];
+        pathLength = new int[capacity];
+        reversed = new boolean[capacity];
+        pathPos = new long[capacity];
+        prevPathPos = new long[capacity];
+        speed = new double[capacity];
+        dir = new int[capacity];
+        celebrateMs = new int[capacity];
+        rotateMs = new int[capacity];
+        directionIndex = new int[capacity];
+        directions = new int[capacity][];
+        restart = new boolean[capacity];
+        topology = new Topology[capacity];
+    }
+
+    // a new PLAIN slot standing at start
+    int add(final Cell start, final double speed) {
+        final int slot = newSlot();
+        path[slot] = new int[4];
+        path[slot][0] = Cell.pack(start.x, start.y);
+        pathLength[slot] = 1;
+        this.speed[slot] = speed;
+        return slot;
+    }
+
+    // a new slot with everything from's slot has
+    int add(final MotionTable from, final int fromSlot) {
+        final int slot = newSlot();
+        kind[slot] = from.kind[fromSlot];
+        path[slot] = from.path[fromSlot];
+        pathLength[slot] = from.pathLength[fromSlot];
+        reversed[slot] = from.reversed[fromSlot];
+        pathPos[slot] = from.pathPos[fromSlot];
+        prevPathPos[slot] = from.prevPathPos[fromSlot];
+        speed[slot] = from.speed[fromSlot];
+        dir[slot] = from.dir[fromSlot];
+        celebrateMs[slot] = from.celebrateMs[fromSlot];
+        rotateMs[slot] = from.rotateMs[fromSlot];
+        directionIndex[slot] = from.directionIndex[fromSlot];
+        directions[slot] = from.directions[fromSlot];
+        restart[slot] = from.restart[fromSlot];
+        topology[slot] = from.topology[fromSlot];
+        return slot;
+    }
+
+    private int newSlot() {
+        if (size == kind.length) {
+            grow(Math.max(4, size * 2));
+        }
+        return size++;
+    }
+
+    private void grow(final int capacity) {
+        kind = Arrays.copyOf(kind, capacity);
+        path = Arrays.copyOf(path, capacity);
+        pathLength = Arrays.copyOf(pathLength, capacity);
+        reversed = Arrays.copyOf(reversed, capacity);
+        pathPos = Arrays.copyOf(pathPos, capacity);
+        prevPathPos = Arrays.copyOf(prevPathPos, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        dir = Arrays.copyOf(dir, capacity);
+        celebrateMs = Arrays.copyOf(celebrateMs, capacity);
+        rotateMs = Arrays.copyOf(rotateMs, capacity);
+        directionIndex = Arrays.copyOf(directionIndex, capacity);
+        directions = Arrays.copyOf(directions, capacity);
+        restart = Arrays.copyOf(restart, capacity);
+        topology = Arrays.copyOf(topology, capacity);
+    }
+
+    // forgets the slots from size on. Whatever owned them has to have been given slots elsewhere
+    void truncate(final int size) {
+        Arrays.fill(path, size, this.size, null);
+        Arrays.fill(directions, size, this.size, null);
+        Arrays.fill(topology, size, this.size, null);
+        this.size = size;
+    }
+
+    void addPoint(final int slot, final int point) {
+        if (pathLength[slot] == path[slot].length) {
+            path[slot] = Arrays.copyOf(path[slot], pathLength[slot] * 2);
+        }
+        path[slot][pathLength[slot]++] = point;
+    }
+
+    // the i'th point of slot's path in the direction it's being walked, packed with Cell.pack
+    int getPathPoint(final int slot, final int i) {
+        return path[slot][reversed[slot] ? pathLength[slot] - 1 - i : i];
+    }
+
+    // the index of the point of slot's path whose center is closest to pos, which is in PATH_UNITS along it
+    int getPointIndex(final int slot, final long pos) {
+        return (int)Math.min((pos + GameObject.PATH_UNITS / 2) / GameObject.PATH_UNITS, pathLength[slot] - 1);
+    }
+
+    // the point closest to where slot is now, packed with Cell.pack
+    int getCurPoint(final int slot) {
+        return getPathPoint(slot, getPointIndex(slot, pathPos[slot]));
+    }
+
+    boolean isCelebrating(final int slot) {
+        return celebrateMs[slot] < GuardObject.CELEBRATE_MS;
+    }
+
+    void updateAll(final long ms) {
+        for (int slot = 0; slot < size; slot++) {
+            update(slot, ms);
+        }
+    }
+
+    void update(final int slot, final long ms) {
+        prevPathPos[slot] = pathPos[slot];
+        pathPos[slot] += GameObject.pathStep(speed[slot], ms);
+        final long end = (pathLength[slot] - 1) * GameObject.PATH_UNITS;
+        if (pathPos[slot] >= end) {
+            pathPos[slot] = end;
+            if (kind[slot] == PATROLLING) {
+                if (!restart[slot]) {
+                    reversed[slot] = !reversed[slot];
+                }
+                pathPos[slot] = 0;
+                prevPathPos[slot] = 0;
+            }
+        }
+        if (kind[slot] == PLAIN) {
+            return;
+        }
+
+        if (isCelebrating(slot)) {
+            celebrateMs[slot] += ms;
+        }
+        if (kind[slot] == ROTATING) {
+            rotateMs[slot] += ms;
+            while (rotateMs[slot] >= RotatingGuardObject.ROTATE_MS) {
+                rotate(slot);
+                rotateMs[slot] -= RotatingGuardObject.ROTATE_MS;
+            }
+        } else if (kind[slot] == PATROLLING) {
+            calcDir(slot);
+        }
+    }
+
+    // moves a PLAIN slot to where ticks updates of tickMs would leave it, all at once
+    void updatePlain(final int slot, final long ticks, final long tickMs) {
+        if (ticks <= 0) {
+            return;
+        }
+        final long step = GameObject.pathStep(speed[slot], tickMs);
+        final long end = (pathLength[slot] - 1) * GameObject.PATH_UNITS;
+        prevPathPos[slot] = Math.min(pathPos[slot] + (ticks - 1) * step, end);
+        pathPos[slot] = Math.min(pathPos[slot] + ticks * step, end);
+    }
+
+    private void rotate(final int slot) {
+        final int[] dirs = directions[slot];
+        if (directionIndex[slot] == dirs.length - 1) {
+            if (restart[slot]) {
+                directionIndex[slot] = 0;
+            } else {
+                directionIndex[slot] = -(dirs.length - 2);
+            }
+        } else {
+            directionIndex[slot]++;
+        }
+        dir[slot] = dirs[Math.abs(directionIndex[slot])];
+    }
+
+    // the way from the point a patrolling guard is leaving to the next one, or into the last one once it's there
+    void calcDir(final int slot) {
+        final Topology t = topology[slot];
+        final int pathIndex = (int)Math.min(pathPos[slot] / GameObject.PATH_UNITS, pathLength[slot] - 2);
+        final int from = getPathPoint(slot, pathIndex);
+        final int to = getPathPoint(slot, pathIndex + 1);
+        dir[slot] = t.getDirectionVector(t.indexOf(Cell.unpackX(from), Cell.unpackY(from)), t.indexOf(Cell.unpackX(to), Cell.unpackY(to)));
+    }
+}
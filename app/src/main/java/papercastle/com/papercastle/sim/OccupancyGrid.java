@@ -0,0 +1,52 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Which selectable objects are in each cell, as an intrusive linked list per cell so that
+ * moving an object between cells doesn't allocate.
+ */
+
+public class OccupancyGrid {
+
+    private final SelectableGameObject[] heads;
+
+    public OccupancyGrid(int numCells) {
+        heads = new SelectableGameObject[numCells];
+    }
+
+    // first object in cell, continue with SelectableGameObject.getNextInCell()
+    public SelectableGameObject getFirst(int cell) {
+        return heads[cell];
+    }
+
+    public void add(final SelectableGameObject o, final int cell) {
+        o.occupiedCell = cell;
+        o.prevInCell = null;
+        o.nextInCell = heads[cell];
+        if (heads[cell] != null) {
+            heads[cell].prevInCell = o;
+        }
+        heads[cell] = o;
+    }
+
+    public void remove(final SelectableGameObject o) {
+        if (o.occupiedCell == Topology.NO_CELL) return;
+        if (o.prevInCell != null) {
+            o.prevInCell.nextInCell = o.nextInCell;
+        } else {
+            heads[o.occupiedCell] = o.nextInCell;
+        }
+        if (o.nextInCell != null) {
+            o.nextInCell.prevInCell = o.prevInCell;
+        }
+        o.prevInCell = null;
+        o.nextInCell = null;
+        o.occupiedCell = Topology.NO_CELL;
+    }
+
+    // moves o to cell if it isn't there already
+    public void move(final SelectableGameObject o, final int cell) {
+        if (o.occupiedCell == cell) return;
+        remove(o);
+        add(o, cell);
+    }
+}
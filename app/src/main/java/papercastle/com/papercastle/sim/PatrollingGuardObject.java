@@ -0,0 +1,69 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Created by Josh on 5/30/2017.
+ */
+
+public class PatrollingGuardObject extends GuardObject {
+
+    private final boolean restart;
+
+    public PatrollingGuardObject(Cell[] patrol, int los, boolean restart, Topology topology) {
+        this(patrol, los, restart, topology, 0);
+    }
+
+    public PatrollingGuardObject(Cell[] patrol, int los, boolean restart, Topology topology, int cone) {
+        super(patrol[0], los, 0, cone);
+        setSpeed(0.5);
+        if (restart && !patrol[0].equals(patrol[patrol.length - 1])) {
+            throw new IllegalArgumentException("patrol that restarts must end and start on same point!");
+        }
+        if (patrol.length < 2) {
+            throw new IllegalArgumentException("" + patrol.length);
+        }
+
+        for (int i = 1; i < patrol.length; i++) {
+            addPointToPath(patrol[i]);
+        }
+        this.restart = restart;
+        motion.kind[slot] = MotionTable.PATROLLING;
+        motion.restart[slot] = restart;
+        motion.topology[slot] = topology;
+        motion.calcDir(slot);
+    }
+
+    @Override
+    public long getPeriodTicks(final long tickMs) {
+        // any overshoot is dropped when the path starts over, so each leg is a whole number of ticks
+        final long step = pathStep(getSpeed(), tickMs);
+        final long legUnits = (getPathLength() - 1) * PATH_UNITS;
+        final long legTicks = (legUnits + step - 1) / step;
+        return restart ? legTicks : 2 * legTicks;
+    }
+
+    public static class PatrollingGuardFactory implements GuardFactory {
+
+        // not private so LevelPackCompiler can write them out
+        final Cell[] patrol;
+        final int los;
+        final boolean restart;
+        final int cone;
+
+        public PatrollingGuardFactory(Cell[] patrol, int los, boolean restart) {
+            this(patrol, los, restart, 0);
+        }
+
+        public PatrollingGuardFactory(Cell[] patrol, int los, boolean restart, int cone) {
+            this.patrol = patrol;
+            this.los = los;
+            this.restart = restart;
+            this.cone = cone;
+        }
+
+        @Override
+        public GuardObject create(Topology t) {
+            checkCone(cone, t);
+            return new PatrollingGuardObject(patrol, los, restart, t, cone);
+        }
+    }
+}
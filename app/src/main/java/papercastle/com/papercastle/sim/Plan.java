@@ -0,0 +1,78 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the player decides in the plan phase before a level starts executing:
+ * which clones go where, their paths, and the player's path.
+ * Paths don't include the starting cell.
+ */
+
+public final class Plan {
+
+    public static final class ClonePlacement {
+        public final int cloneType;
+        public final Cell start;
+        public final List<Cell> path;
+
+        public ClonePlacement(int cloneType, Cell start, List<Cell> path) {
+            this.cloneType = cloneType;
+            this.start = start;
+            this.path = Collections.unmodifiableList(new ArrayList<>(path));
+        }
+    }
+
+    private final List<ClonePlacement> clones;
+    private final List<Cell> playerPath;
+
+    public Plan(List<ClonePlacement> clones, List<Cell> playerPath) {
+        this.clones = Collections.unmodifiableList(new ArrayList<>(clones));
+        this.playerPath = Collections.unmodifiableList(new ArrayList<>(playerPath));
+    }
+
+    public List<ClonePlacement> getClones() {
+        return clones;
+    }
+
+    public List<Cell> getPlayerPath() {
+        return playerPath;
+    }
+
+    // enters this plan into a simulation that is still at its start, through the same calls the ui makes.
+    // returns false if the simulation rejected any part of it
+    public boolean apply(final Simulation sim) {
+        for (ClonePlacement placement : clones) {
+            sim.startClonePlacement(placement.cloneType);
+            final SelectableGameObject clone = sim.placeActiveClone(placement.start);
+            if (clone == null) {
+                return false;
+            }
+            for (Cell p : placement.path) {
+                if (!sim.extendPath(clone, p)) {
+                    return false;
+                }
+            }
+        }
+        final SelectableGameObject player = sim.getPlayerObject();
+        for (Cell p : playerPath) {
+            if (!sim.extendPath(player, p)) {
+                return false;
+            }
+        }
+        sim.selectObject(player);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (ClonePlacement placement : clones) {
+            sb.append("clone ").append(placement.cloneType).append(" at ").append(placement.start)
+                    .append(" -> ").append(placement.path).append('\n');
+        }
+        sb.append("player -> ").append(playerPath);
+        return sb.toString();
+    }
+}
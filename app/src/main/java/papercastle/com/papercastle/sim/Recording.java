@@ -0,0 +1,154 @@
+package papercastle.com.papercastle.sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * One play of a level: every Command with the tick count it was applied at, the Simulation.stateHash() after
+ * every tick, and how it ended. That's enough to replay it without the app and check it comes out the same
+ * (see Replayer). Commands applied at the same tick keep their order.
+ *
+ *   // comment
+ *   level 3
+ *   command 0 extend_path 0 10
+ *   command 0 execute
+ *   hash 1 9f3c0a17d2e8b641
+ *   hash 2 ...
+ *   result SUCCESS
+ *
+ * Only the recording thread may touch it until it's done.
+ */
+
+public final class Recording {
+
+    private String levelName;
+    private long[] commandTicks = new long[16];
+    private long[] commands = new long[16];
+    private int numCommands;
+    private long[] hashes = new long[256]; // [tick - 1]
+    private int numTicks;
+    private Simulation.GameState result; // null if it didn't end
+
+    public void setLevelName(final String levelName) {
+        this.levelName = levelName;
+    }
+
+    // the level as GameView numbers ALL_LEVELS, or its name in a pack. null if not known
+    public String getLevelName() {
+        return levelName;
+    }
+
+    public void recordCommand(final long tick, final long command) {
+        if (numCommands > 0 && tick < commandTicks[numCommands - 1]) {
+            throw new IllegalArgumentException("command at tick " + tick + " after one at " + commandTicks[numCommands - 1]);
+        }
+        if (numCommands == commands.length) {
+            commandTicks = Arrays.copyOf(commandTicks, numCommands * 2);
+            commands = Arrays.copyOf(commands, numCommands * 2);
+        }
+        commandTicks[numCommands] = tick;
+        commands[numCommands] = command;
+        numCommands++;
+    }
+
+    // the hash after tick, which must be the one after the last recorded
+    public void recordTick(final long tick, final long hash) {
+        if (tick != numTicks + 1) {
+            throw new IllegalArgumentException("tick " + tick + " after " + numTicks);
+        }
+        if (numTicks == hashes.length) {
+            hashes = Arrays.copyOf(hashes, numTicks * 2);
+        }
+        hashes[numTicks++] = hash;
+    }
+
+    // for when the level goes back to tick 0: keeps the first numCommands commands, which must all be at tick 0,
+    // and drops the rest along with every tick and the result
+    public void rewind(final int numCommands) {
+        if (numCommands < 0 || numCommands > this.numCommands || (numCommands > 0 && commandTicks[numCommands - 1] != 0)) {
+            throw new IllegalArgumentException("can't rewind to " + numCommands + " commands");
+        }
+        this.numCommands = numCommands;
+        numTicks = 0;
+        result = null;
+    }
+
+    public void setResult(final Simulation.GameState result) {
+        this.result = result;
+    }
+
+    public int getNumCommands() {
+        return numCommands;
+    }
+
+    public long getCommandTick(final int i) {
+        return commandTicks[i];
+    }
+
+    public long getCommand(final int i) {
+        return commands[i];
+    }
+
+    public int getNumTicks() {
+        return numTicks;
+    }
+
+    public long getHash(final long tick) {
+        return hashes[(int)(tick - 1)];
+    }
+
+    public Simulation.GameState getResult() {
+        return result;
+    }
+
+    public void write(final Writer out) throws IOException {
+        if (levelName != null) {
+            out.write("level " + levelName + "\n");
+        }
+        for (int i = 0; i < numCommands; i++) {
+            out.write("command " + commandTicks[i] + " " + Command.toString(commands[i]) + "\n");
+        }
+        for (int t = 0; t < numTicks; t++) {
+            out.write("hash " + (t + 1) + " " + Long.toHexString(hashes[t]) + "\n");
+        }
+        if (result != null) {
+            out.write("result " + result + "\n");
+        }
+    }
+
+    public static Recording read(final BufferedReader in) throws IOException {
+        final Recording recording = new Recording();
+        String line;
+        int lineNum = 0;
+        while ((line = in.readLine()) != null) {
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) continue;
+            final String[] words = line.split("\\s+", 3);
+            try {
+                switch (words[0]) {
+                    case "level":
+                        recording.setLevelName(line.substring("level".length()).trim());
+                        break;
+                    case "command":
+                        recording.recordCommand(Long.parseLong(words[1]), Command.parse(words[2]));
+                        break;
+                    case "hash":
+                        recording.recordTick(Long.parseLong(words[1]), new BigInteger(words[2], 16).longValue());
+                        break;
+                    case "result":
+                        recording.setResult(Simulation.GameState.valueOf(words[1]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown line");
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("line " + lineNum + ": " + line + ": " + e.getMessage(), e);
+            }
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,149 @@
+package papercastle.com.papercastle.sim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Plays a Recording back into a fresh Simulation as fast as it will go, checking the state hash after every
+ * tick and the result against what was recorded. Commands go in before the tick after the tick count they
+ * were recorded at, just like LevelState applies them.
+ *
+ *   Replayer [--pack=pack.txt|pack.pack] recording.txt...
+ *
+ * Recordings name their level by index in Level.ALL_LEVELS, or by name in the pack if there is one.
+ * Exits with 1 if any recording doesn't replay the same.
+ */
+
+public final class Replayer {
+
+    public static final class Result {
+        public final boolean matched;
+        public final long mismatchTick; // the first tick whose hash differs, or -1
+        public final String message; // why it didn't match, or null
+        public final Simulation.GameState gameState;
+        public final long ticks;
+
+        Result(boolean matched, long mismatchTick, String message, Simulation.GameState gameState, long ticks) {
+            this.matched = matched;
+            this.mismatchTick = mismatchTick;
+            this.message = message;
+            this.gameState = gameState;
+            this.ticks = ticks;
+        }
+    }
+
+    private Replayer() {
+    }
+
+    // stops at the first difference
+    public static Result replay(final Level level, final Recording recording) {
+        final Simulation sim = new Simulation(level);
+        final int numCommands = recording.getNumCommands();
+        int next = 0;
+        while (true) {
+            while (next < numCommands && recording.getCommandTick(next) == sim.getTickCount()) {
+                sim.apply(recording.getCommand(next++));
+            }
+            if (sim.getTickCount() >= recording.getNumTicks()) {
+                break;
+            }
+            if (sim.getGameState() != Simulation.GameState.EXECUTE) {
+                // the recording kept going after this stopped
+                return mismatch(sim, sim.getTickCount() + 1, "stopped in " + sim.getGameState());
+            }
+            sim.tick();
+            if (sim.stateHash() != recording.getHash(sim.getTickCount())) {
+                return mismatch(sim, sim.getTickCount(), "state hash differs");
+            }
+        }
+        if (next < numCommands) {
+            return mismatch(sim, -1, (numCommands - next) + " commands after the last recorded tick");
+        }
+        if (recording.getResult() != null && recording.getResult() != sim.getGameState()) {
+            return mismatch(sim, -1, "ended in " + sim.getGameState() + " instead of " + recording.getResult());
+        }
+        return new Result(true, -1, null, sim.getGameState(), sim.getTickCount());
+    }
+
+    private static Result mismatch(final Simulation sim, final long tick, final String message) {
+        return new Result(false, tick, message, sim.getGameState(), sim.getTickCount());
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<LevelReader.Entry> pack = null;
+        LevelPack binaryPack = null;
+        int failed = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--pack=")) {
+                final File file = new File(arg.substring("--pack=".length()));
+                if (LevelPack.isPack(file)) {
+                    binaryPack = LevelPack.open(file);
+                } else {
+                    try (BufferedReader in = open(file.getPath())) {
+                        pack = LevelReader.read(in);
+                    }
+                }
+                continue;
+            }
+
+            final Recording recording;
+            try (BufferedReader in = open(arg)) {
+                recording = Recording.read(in);
+            }
+            final Level level = findLevel(recording.getLevelName(), pack, binaryPack);
+            if (level == null) {
+                System.out.println(arg + ": no level " + recording.getLevelName());
+                failed++;
+                continue;
+            }
+
+            final long startNs = System.nanoTime();
+            final Result result = replay(level, recording);
+            final long nanos = System.nanoTime() - startNs;
+            if (result.matched) {
+                System.out.println(arg + ": ok, " + result.gameState + " after " + result.ticks + " ticks in "
+                        + nanos / 1000000 + "ms (" + (nanos == 0 ? 0 : result.ticks * 1000000000L / nanos) + " ticks/s)");
+            } else {
+                failed++;
+                System.out.println(arg + ": MISMATCH" + (result.mismatchTick >= 0 ? " at tick " + result.mismatchTick : "")
+                        + ", " + result.message);
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static BufferedReader open(final String path) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    private static Level findLevel(final String name, final List<LevelReader.Entry> pack, final LevelPack binaryPack) {
+        if (name == null) {
+            return null;
+        }
+        if (binaryPack != null) {
+            final int index = binaryPack.indexOf(name);
+            return index == -1 ? null : binaryPack.getLevel(index);
+        }
+        if (pack != null) {
+            for (LevelReader.Entry entry : pack) {
+                if (name.equals(entry.name)) {
+                    return entry.level;
+                }
+            }
+            return null;
+        }
+        try {
+            final int index = Integer.parseInt(name);
+            return index >= 0 && index < Level.ALL_LEVELS.length ? Level.ALL_LEVELS[index] : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Created by Josh on 5/30/2017.
+ */
+
+public class RotatingGuardObject extends GuardObject {
+
+    static final int ROTATE_MS = CELEBRATE_MS; // MotionTable turns it this often
+
+    private final int[] directions;
+    private final boolean restart;
+
+    public RotatingGuardObject(Cell start, int los, int[] directions, boolean restart) {
+        this(start, los, directions, restart, 0);
+    }
+
+    public RotatingGuardObject(Cell start, int los, int[] directions, boolean restart, int cone) {
+        super(start, los, directions[0], cone);
+        if (directions.length < 2) throw new IllegalArgumentException("" + directions.length);
+        this.directions = directions;
+        this.restart = restart;
+        motion.kind[slot] = MotionTable.ROTATING;
+        motion.directions[slot] = directions;
+        motion.restart[slot] = restart;
+    }
+
+    @Override
+    public long getPeriodTicks(final long tickMs) {
+        // bouncing goes back through everything but the ends
+        final long cycle = restart ? directions.length : 2 * directions.length - 2;
+        final long periodMs = ROTATE_MS * cycle;
+        return periodMs / gcd(periodMs, tickMs);
+    }
+
+    @Override
+    public long hashState(long h) {
+        h = super.hashState(h);
+        h = hash(h, motion.directionIndex[slot]);
+        return hash(h, motion.rotateMs[slot]);
+    }
+
+    @Override
+    int saveState(final long[] out, int i) {
+        i = super.saveState(out, i);
+        out[i++] = motion.directionIndex[slot];
+        out[i++] = motion.rotateMs[slot];
+        return i;
+    }
+
+    @Override
+    int stateSize() {
+        return super.stateSize() + 2;
+    }
+
+    @Override
+    int restoreState(final long[] in, int i) {
+        i = super.restoreState(in, i);
+        motion.directionIndex[slot] = (int)in[i++];
+        motion.rotateMs[slot] = (int)in[i++];
+        return i;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            final long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public static class RotatingGuardFactory implements GuardFactory {
+
+        // not private so LevelPackCompiler can write them out
+        final Cell p;
+        final int los;
+        final int[] dirs;
+        final boolean restart;
+        final int cone;
+
+        public RotatingGuardFactory(Cell p, int los, int[] dirs, boolean restart) {
+            this(p, los, dirs, restart, 0);
+        }
+
+        public RotatingGuardFactory(Cell p, int los, int[] dirs, boolean restart, int cone) {
+            this.p = p;
+            this.los = los;
+            this.dirs = dirs;
+            this.restart = restart;
+            this.cone = cone;
+        }
+
+        @Override
+        public GuardObject create(Topology t) {
+            for (int dir : dirs) {
+                checkDirection(dir, t);
+            }
+            checkCone(cone, t);
+            return new RotatingGuardObject(p, los, dirs, restart, cone);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.Arrays;
+
+/**
+ * Shortest routes between passable cells of a level, ignoring guards and clones, for drawing a path to a
+ * tapped cell in one go.
+ *
+ * A* with a landmark (ALT) heuristic: breadth first distances from a few landmarks spread over the level are
+ * found once when it's made, and since a step changes each of them by at most 1, |d(L, to) - d(L, n)| never
+ * overestimates the distance from n to the goal. That's much closer than the straight line on levels with walls
+ * in the way, so a query only looks at a narrow band of cells around the route. Cells in a different connected
+ * part of the level are answered without searching at all.
+ * Reuses everything between queries, so routing doesn't allocate. Not thread safe.
+ */
+
+public final class Router {
+
+    public static final int NO_ROUTE = -1;
+
+    static final int NUM_LANDMARKS = 8;
+    private static final char FAR = 0xfffe; // landmark distances are clamped to this, which only loosens the heuristic
+    private static final char UNREACHED = 0xffff;
+
+    // open list keys, so the heap holds longs: f, then deeper first, then cell
+    private static final int CELL_BITS = 21;
+    private static final long FIELD_MASK = (1L << CELL_BITS) - 1;
+
+    private final Topology topology;
+    private final boolean[] passable;
+    private final int[] component; // which connected part of the level each passable cell is in
+    private final char[][] landmarkDist; // [landmark][cell]
+    private final int numLandmarks;
+
+    // per query, valid where stamp is the current query
+    private final int[] stamp;
+    private int query;
+    private final int[] g;
+    private final int[] parent;
+    private long[] heap = new long[64];
+    private int heapSize;
+    private final int[] neighbors;
+    private int[] route = new int[16]; // the last route found, see getRouteCell
+    private int routeLength;
+
+    public Router(final Topology topology, final Level.Terrain[][] terrain) {
+        // f can be up to twice the most steps a route can have, and has to fit in a key field
+        if (topology.getNumCells() > FIELD_MASK / 2) {
+            throw new IllegalArgumentException("too many cells to route: " + topology.getNumCells());
+        }
+        this.topology = topology;
+        final int numCells = topology.getNumCells();
+        passable = new boolean[numCells];
+        for (int cell = 0; cell < numCells; cell++) {
+            passable[cell] = Level.isPassable(terrain, topology.getX(cell), topology.getY(cell));
+        }
+        stamp = new int[numCells];
+        g = new int[numCells];
+        parent = new int[numCells];
+        neighbors = new int[topology.numDirections()];
+
+        // the biggest connected part gets the landmarks, since that's where nearly all the routes are. Smaller
+        // ones only have the straight line distance to go on
+        component = new int[numCells];
+        Arrays.fill(component, -1);
+        int numComponents = 0;
+        int biggest = Topology.NO_CELL;
+        int biggestSize = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            if (passable[cell] && component[cell] == -1) {
+                final int size = label(cell, numComponents++);
+                if (size > biggestSize) {
+                    biggest = cell;
+                    biggestSize = size;
+                }
+            }
+        }
+
+        // each landmark is the cell furthest from the ones before it, so they end up spread around the edges.
+        // The first is the furthest from an arbitrary cell
+        landmarkDist = new char[NUM_LANDMARKS][];
+        int n = 0;
+        if (biggest != Topology.NO_CELL) {
+            final int[] minDist = new int[numCells];
+            Arrays.fill(minDist, Integer.MAX_VALUE);
+            int next = furthest(distances(biggest, new char[numCells]), minDist);
+            Arrays.fill(minDist, Integer.MAX_VALUE);
+            while (n < NUM_LANDMARKS && next != Topology.NO_CELL) {
+                landmarkDist[n] = distances(next, new char[numCells]);
+                next = furthest(landmarkDist[n], minDist);
+                n++;
+            }
+        }
+        numLandmarks = n;
+    }
+
+    // routes from from to to, both topology indices. Returns how many steps it is, with getRouteCell giving
+    // them, or NO_ROUTE if to can't be reached
+    public int findRoute(final int from, final int to) {
+        routeLength = 0;
+        if (from == to) {
+            return 0;
+        }
+        if (!isConnected(from, to)) {
+            return NO_ROUTE;
+        }
+        if (++query == 0) {
+            // wrapped, so old stamps could match
+            Arrays.fill(stamp, 0);
+            query = 1;
+        }
+        heapSize = 0;
+        stamp[from] = query;
+        g[from] = 0;
+        parent[from] = Topology.NO_CELL;
+        push(key(lowerBound(from, to), 0, from));
+        while (heapSize > 0) {
+            final long top = pop();
+            final int cell = (int)(top & FIELD_MASK);
+            final int cost = (int)(FIELD_MASK - ((top >>> CELL_BITS) & FIELD_MASK));
+            if (cost != g[cell]) {
+                continue; // found a shorter way since this was pushed
+            }
+            if (cell == to) {
+                return reconstruct(to);
+            }
+            final int numNeighbors = topology.neighbors(cell, neighbors);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int next = neighbors[i];
+                if (!passable[next] || (stamp[next] == query && g[next] <= cost + 1)) {
+                    continue;
+                }
+                stamp[next] = query;
+                g[next] = cost + 1;
+                parent[next] = cell;
+                push(key(cost + 1 + lowerBound(next, to), cost + 1, next));
+            }
+        }
+        return NO_ROUTE; // can't happen, to is in the same part of the level
+    }
+
+    // the i'th step of the last route found, after its first cell and ending with where it was going
+    public int getRouteCell(final int i) {
+        return route[i];
+    }
+
+    boolean isPassable(final int cell) {
+        return passable[cell];
+    }
+
+    // whether there's any route from from to to
+    boolean isConnected(final int from, final int to) {
+        return passable[to] && component[from] == component[to] && component[from] != -1;
+    }
+
+    // a lower bound on the steps from cell to to, the A* heuristic
+    int lowerBound(final int cell, final int to) {
+        int h = topology.distance(cell, to);
+        for (int l = 0; l < numLandmarks; l++) {
+            final char[] d = landmarkDist[l];
+            if (d[cell] != UNREACHED && d[to] != UNREACHED) {
+                h = Math.max(h, Math.abs(d[to] - d[cell]));
+            }
+        }
+        return h;
+    }
+
+    private int reconstruct(final int to) {
+        routeLength = g[to];
+        if (route.length < routeLength) {
+            route = new int[Math.max(route.length * 2, routeLength)];
+        }
+        int cell = to;
+        for (int i = routeLength - 1; i >= 0; i--) {
+            route[i] = cell;
+            cell = parent[cell];
+        }
+        return routeLength;
+    }
+
+    // flood fills the part of the level with from in it, and returns how many cells it has. parent is free
+    // outside of queries, so it's the queue
+    private int label(final int from, final int id) {
+        final int[] queue = parent;
+        component[from] = id;
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int numNeighbors = topology.neighbors(queue[head++], neighbors);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int next = neighbors[i];
+                if (passable[next] && component[next] == -1) {
+                    component[next] = id;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    // breadth first distances over passable cells from from into dist, UNREACHED where it can't get
+    private char[] distances(final int from, final char[] dist) {
+        final int[] queue = parent;
+        Arrays.fill(dist, UNREACHED);
+        dist[from] = 0;
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int cell = queue[head++];
+            final int numNeighbors = topology.neighbors(cell, neighbors);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int next = neighbors[i];
+                if (passable[next] && dist[next] == UNREACHED) {
+                    dist[next] = (char)Math.min(FAR, dist[cell] + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return dist;
+    }
+
+    // folds dist into minDist, and returns the cell dist reaches that's furthest from every landmark so far,
+    // or NO_CELL if they're all landmarks
+    private int furthest(final char[] dist, final int[] minDist) {
+        int best = Topology.NO_CELL;
+        for (int cell = 0; cell < minDist.length; cell++) {
+            if (dist[cell] == UNREACHED) {
+                continue;
+            }
+            minDist[cell] = Math.min(minDist[cell], dist[cell]);
+            if (minDist[cell] > 0 && (best == Topology.NO_CELL || minDist[cell] > minDist[best])) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    private static long key(final int f, final int g, final int cell) {
+        return ((long)f << (2 * CELL_BITS)) | ((FIELD_MASK - g) << CELL_BITS) | cell;
+    }
+
+    private void push(final long key) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent] <= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private long pop() {
+        final long top = heap[0];
+        final long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,299 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.Arrays;
+
+/**
+ * Routes for an object to carry on along from the end of its path that no guard sees it on, for planning.
+ *
+ * An object never stops until the end of its path and moves at a fixed speed, so from where it is now the tick
+ * it gets to each index of its path is fixed, however the path goes. That makes it A* over (cell, index) where
+ * each index has its own window of ticks, and a cell can only be stepped into at an index if the guards'
+ * CoverageSchedule says nobody watches it at any tick of that window. Walking back and forth is how it waits, so
+ * the same cell can come up again at a later index. Router's landmark distances are the heuristic, since a safe
+ * route is never shorter than the shortest one.
+ * The schedule is of guards that never celebrate, which only ever makes a route more careful than it needs to
+ * be. The goal is checked for as long as it'd take to walk through it; where the object ends up after that is up
+ * to the player.
+ * Searching stops after MAX_EXPANSIONS states so it stays quick enough to call on a tap, and findRouteOrShortest
+ * falls back to Router's route when it does. Reuses everything between queries, so routing doesn't allocate once
+ * it's warmed up. Not thread safe.
+ */
+
+public final class SafeRouter {
+
+    public static final int NO_ROUTE = Router.NO_ROUTE;
+    public static final int DEFAULT_MAX_STEPS = 512;
+    static final int MAX_EXPANSIONS = 1 << 13;
+    private static final long MAX_WINDOW_WORDS = 1L << 19; // see windowMasks
+
+    // open list keys, so the heap holds longs: f, then deeper first, then cell
+    private static final int CELL_BITS = 21;
+    private static final long FIELD_MASK = (1L << CELL_BITS) - 1;
+
+    private final Topology topology;
+    private final Router router;
+    private final CoverageSchedule schedule;
+    private final int maxSteps;
+    private final int maxExpansions;
+
+    // per query. Seen states are (steps << CELL_BITS | cell) in an open addressed table, valid where stamp is the
+    // current query, with the cell each was reached from
+    private long[] keys = new long[1 << 10];
+    private int[] stamps = new int[1 << 10];
+    private int[] parents = new int[1 << 10];
+    private int size;
+    private int query;
+    private long[] heap = new long[64];
+    private int heapSize;
+    private final int[] neighbors;
+    private int[] route = new int[16]; // the last route found, see getRouteCell
+
+    // ticks are worked out from these, see enterTick
+    private long startTick;
+    private long startPos;
+    private int startIndex;
+    private long step;
+
+    // when the schedule has a table and they fit in MAX_WINDOW_WORDS, the cells watched at any tick of the window
+    // after each number of steps, worked out once a query instead of for every cell, as the words from
+    // (steps - 1) * words. Otherwise the schedule is asked about every tick of the window
+    private final int words;
+    private final boolean useWindowMasks;
+    private int numWindows;
+    private long[] windowMasks = new long[0];
+
+    public SafeRouter(final Topology topology, final Router router, final CoverageSchedule schedule) {
+        this(topology, router, schedule, DEFAULT_MAX_STEPS);
+    }
+
+    // routes are at most maxSteps long
+    public SafeRouter(final Topology topology, final Router router, final CoverageSchedule schedule, final int maxSteps) {
+        this(topology, router, schedule, maxSteps, MAX_EXPANSIONS);
+    }
+
+    // gives up after maxExpansions states instead of MAX_EXPANSIONS
+    SafeRouter(final Topology topology, final Router router, final CoverageSchedule schedule, final int maxSteps,
+               final int maxExpansions) {
+        if (maxSteps <= 0 || maxSteps > FIELD_MASK) {
+            throw new IllegalArgumentException("max steps " + maxSteps);
+        }
+        this.topology = topology;
+        this.router = router;
+        this.schedule = schedule;
+        this.maxSteps = maxSteps;
+        this.maxExpansions = maxExpansions;
+        neighbors = new int[topology.numDirections()];
+        words = (topology.getNumCells() + 63) >> 6;
+        useWindowMasks = schedule.hasTable() && (long)words * maxSteps <= MAX_WINDOW_WORDS;
+    }
+
+    // a route from the last point of object's path to the topology index to, for object as it is at tick. Returns
+    // how many steps it is, with getRouteCell giving them, or NO_ROUTE if there isn't a safe one
+    public int findRoute(final GameObject object, final long tick, final int to) {
+        final int lastPoint = object.getPathPoint(object.getPathLength() - 1);
+        final int from = topology.indexOf(Cell.unpackX(lastPoint), Cell.unpackY(lastPoint));
+        startTick = tick;
+        startPos = object.getPathPos();
+        startIndex = object.getPathLength() - 1;
+        step = GameObject.pathStep(object.getSpeed(), Simulation.TICK_MS);
+        if (from == to) {
+            return 0;
+        }
+        if (step <= 0 || !router.isConnected(from, to)) {
+            return NO_ROUTE;
+        }
+
+        if (++query == 0) {
+            // wrapped, so old stamps could match
+            Arrays.fill(stamps, 0);
+            query = 1;
+        }
+        size = 0;
+        heapSize = 0;
+        numWindows = 0;
+        push(key(router.lowerBound(from, to), 0, from));
+        int expansions = 0;
+        while (heapSize > 0 && expansions++ < maxExpansions) {
+            final long top = pop();
+            final int cell = (int)(top & FIELD_MASK);
+            final int steps = (int)(FIELD_MASK - ((top >>> CELL_BITS) & FIELD_MASK));
+            if (cell == to) {
+                return reconstruct(to, steps);
+            }
+            if (steps == maxSteps) {
+                continue;
+            }
+            final int numNeighbors = topology.neighbors(cell, neighbors);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int next = neighbors[i];
+                if (!router.isPassable(next) || !add(steps + 1, next, cell)) {
+                    continue;
+                }
+                if (isWatched(next, steps + 1)) {
+                    continue;
+                }
+                final int h = router.lowerBound(next, to);
+                if (steps + 1 + h <= maxSteps) {
+                    push(key(steps + 1 + h, steps + 1, next));
+                }
+            }
+        }
+        return NO_ROUTE;
+    }
+
+    // findRoute, or if there isn't a safe route or it gave up looking, Router's shortest one, which guards may see.
+    // Returns how many steps it is, with getRouteCell giving them either way, or NO_ROUTE if to can't be reached
+    public int findRouteOrShortest(final GameObject object, final long tick, final int to) {
+        final int safeSteps = findRoute(object, tick, to);
+        if (safeSteps != NO_ROUTE) {
+            return safeSteps;
+        }
+        final int lastPoint = object.getPathPoint(object.getPathLength() - 1);
+        final int steps = router.findRoute(topology.indexOf(Cell.unpackX(lastPoint), Cell.unpackY(lastPoint)), to);
+        if (steps == Router.NO_ROUTE) {
+            return NO_ROUTE;
+        }
+        if (route.length < steps) {
+            route = new int[Math.max(route.length * 2, steps)];
+        }
+        for (int i = 0; i < steps; i++) {
+            route[i] = router.getRouteCell(i);
+        }
+        return steps;
+    }
+
+    // the i'th step of the last route found, after its first cell and ending with where it was going
+    public int getRouteCell(final int i) {
+        return route[i];
+    }
+
+    // whether a guard sees cell at any tick the object would be there after steps of the route
+    private boolean isWatched(final int cell, final int steps) {
+        if (!useWindowMasks) {
+            final int index = startIndex + steps;
+            return schedule.isWatchedDuring(cell, enterTick(index), enterTick(index + 1) - 1);
+        }
+        while (numWindows < steps) {
+            addWindow();
+        }
+        return (windowMasks[(steps - 1) * words + (cell >> 6)] & (1L << cell)) != 0;
+    }
+
+    private void addWindow() {
+        final int offset = numWindows * words;
+        if (offset + words > windowMasks.length) {
+            windowMasks = Arrays.copyOf(windowMasks, Math.max(windowMasks.length * 2, offset + words));
+        }
+        Arrays.fill(windowMasks, offset, offset + words, 0);
+        final int index = startIndex + numWindows + 1;
+        final long last = enterTick(index + 1) - 1;
+        int prevId = -1;
+        for (long tick = enterTick(index); tick <= last; tick++) {
+            final int id = schedule.getWatchedMaskId(tick);
+            if (id != prevId) {
+                final long[] mask = schedule.getWatchedMask(id);
+                for (int i = 0; i < words; i++) {
+                    windowMasks[offset + i] |= mask[i];
+                }
+                prevId = id;
+            }
+        }
+        numWindows++;
+    }
+
+    // the first tick the object is on index of its path, the same way GameObject.getCurCell rounds
+    private long enterTick(final int index) {
+        final long units = index * GameObject.PATH_UNITS - GameObject.PATH_UNITS / 2 - startPos;
+        return startTick + Math.max(1, (units + step - 1) / step);
+    }
+
+    private int reconstruct(final int to, final int steps) {
+        if (route.length < steps) {
+            route = new int[Math.max(route.length * 2, steps)];
+        }
+        int cell = to;
+        for (int s = steps; s > 0; s--) {
+            route[s - 1] = cell;
+            cell = parents[find(((long)s << CELL_BITS) | cell)];
+        }
+        return steps;
+    }
+
+    // remembers that cell was reached from parent after steps, unless it already had been
+    private boolean add(final int steps, final int cell, final int parent) {
+        if (size * 2 >= keys.length) {
+            grow();
+        }
+        final long key = ((long)steps << CELL_BITS) | cell;
+        final int slot = find(key);
+        if (stamps[slot] == query) {
+            return false;
+        }
+        stamps[slot] = query;
+        keys[slot] = key;
+        parents[slot] = parent;
+        size++;
+        return true;
+    }
+
+    // the slot key is in, or the empty one it would go in
+    private int find(final long key) {
+        final int mask = keys.length - 1;
+        int slot = (int)((key * 0x9e3779b97f4a7c15L) >>> 40) & mask;
+        while (stamps[slot] == query && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldStamps = stamps;
+        final int[] oldParents = parents;
+        keys = new long[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+        parents = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] == query) {
+                final int slot = find(oldKeys[i]);
+                stamps[slot] = query;
+                keys[slot] = oldKeys[i];
+                parents[slot] = oldParents[i];
+            }
+        }
+    }
+
+    private static long key(final int f, final int steps, final int cell) {
+        return ((long)f << (2 * CELL_BITS)) | ((FIELD_MASK - steps) << CELL_BITS) | cell;
+    }
+
+    private void push(final long key) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent] <= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private long pop() {
+        final long top = heap[0];
+        final long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,104 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Created by Josh on 5/28/2017.
+ */
+
+public class SelectableGameObject extends GameObject {
+
+    private volatile boolean selected;
+    int id = -1; // set by the Simulation it's added to, see getId
+
+    // maintained by OccupancyGrid
+    int occupiedCell = Topology.NO_CELL;
+    SelectableGameObject prevInCell;
+    SelectableGameObject nextInCell;
+
+    public SelectableGameObject(Cell start, double speed, int color) {
+        super(start, speed, color);
+        selected = false;
+    }
+
+    // the next object in the same OccupancyGrid cell
+    public SelectableGameObject getNextInCell() {
+        return nextInCell;
+    }
+
+    // the player is 0 and clones count up in the order they're placed, so commands can name objects
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public long hashState(long h) {
+        h = super.hashState(h);
+        h = hash(h, id);
+        return hash(h, selected ? 1 : 0);
+    }
+
+    @Override
+    int saveState(final long[] out, int i) {
+        i = super.saveState(out, i);
+        out[i++] = selected ? 1 : 0;
+        return i;
+    }
+
+    @Override
+    int stateSize() {
+        return super.stateSize() + 1;
+    }
+
+    @Override
+    int restoreState(final long[] in, int i) {
+        i = super.restoreState(in, i);
+        selected = in[i++] != 0;
+        return i;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    public void unselect() {
+        selected = false;
+    }
+
+    public void select() {
+        selected = true;
+    }
+
+    public interface CloneFactory {
+        SelectableGameObject create(Cell p);
+        int color();
+    }
+
+    public static class SimpleCloneFactory implements CloneFactory {
+        final double speed;
+        final int color;
+
+        SimpleCloneFactory(double speed, int color) {
+            this.speed = speed;
+            this.color = color;
+        }
+
+
+        @Override
+        public SelectableGameObject create(Cell p) {
+            return new SelectableGameObject(p, speed, color);
+        }
+
+        @Override
+        public int color() {
+            return color;
+        }
+    }
+
+    // TODO real clone types
+    public static final CloneFactory[] CLONE_TYPE_DEFS = new CloneFactory[] {
+            new SimpleCloneFactory(1.0, 0xffffa000),
+            new SimpleCloneFactory(2.0, 0xffff0000),
+            new SimpleCloneFactory(0.5, 0x6400ff00),
+            new SimpleCloneFactory(4.0, 0xff0000ff),
+            new SimpleCloneFactory(0.25, 0xffff00a0),
+    };
+}
@@ -0,0 +1,100 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Which cells a guard with a vision cone can see, by symmetric recursive shadowcasting over the quadrant it
+ * faces on a grid. Rows are scanned outwards from the guard, and a wall splits the rest of its row's slope
+ * range into the parts on either side of it, so everything behind a wall is skipped instead of ray tested.
+ * Symmetric means a cell is seen exactly when a guard there could see back, so it doesn't matter which of
+ * two cells the guard is in.
+ *
+ * A cone of c degrees keeps slopes within tan(c / 2) of straight ahead, so 90 is the whole quadrant.
+ * Reuses its fields between casts, so it doesn't allocate, and one caster can only be used by one thread.
+ */
+
+final class ShadowCaster {
+
+    public static final int MAX_CONE = 90;
+
+    private Level.Terrain[][] terrain;
+    private Topology topology;
+    private int originX;
+    private int originY;
+    private int forwardX;
+    private int forwardY;
+    private int sideX;
+    private int sideY;
+    private int range;
+    private int[] out;
+    private int numOut;
+
+    // most cells a cast with range can return, including the guard's own
+    static int maxCells(final int range) {
+        return (range + 1) * (range + 1);
+    }
+
+    // writes the passable cells within range rows of cell in direction dir to out, cell first, and returns how many
+    public int cast(final Topology t, final Level.Terrain[][] terrain, final int cell, final int dir, final int range,
+                    final int cone, final int[] out) {
+        this.terrain = terrain;
+        this.topology = t;
+        originX = t.getX(cell);
+        originY = t.getY(cell);
+        forwardX = GridTopology.deltaX(dir);
+        forwardY = GridTopology.deltaY(dir);
+        sideX = -forwardY;
+        sideY = forwardX;
+        this.range = range;
+        this.out = out;
+        numOut = 0;
+
+        out[numOut++] = cell;
+        // tan(45) comes out a hair under 1, which would lose the edges of a full quadrant
+        final double maxSlope = cone == MAX_CONE ? 1 : Math.tan(Math.toRadians(cone) / 2);
+        scan(1, -maxSlope, maxSlope);
+        this.terrain = null;
+        this.out = null;
+        return numOut;
+    }
+
+    private void scan(final int depth, double startSlope, final double endSlope) {
+        if (depth > range || startSlope > endSlope) {
+            return;
+        }
+        final int minCol = roundTiesUp(depth * startSlope);
+        final int maxCol = roundTiesDown(depth * endSlope);
+        boolean prevWall = false;
+        boolean any = false;
+        for (int col = minCol; col <= maxCol; col++) {
+            final int x = originX + depth * forwardX + col * sideX;
+            final int y = originY + depth * forwardY + col * sideY;
+            final boolean wall = !Level.isPassable(terrain, x, y);
+            if (!wall && col >= depth * startSlope && col <= depth * endSlope) {
+                out[numOut++] = topology.indexOf(x, y);
+            }
+            if (any && prevWall && !wall) {
+                startSlope = slope(depth, col);
+            }
+            if (any && !prevWall && wall) {
+                scan(depth + 1, startSlope, slope(depth, col));
+            }
+            prevWall = wall;
+            any = true;
+        }
+        if (any && !prevWall) {
+            scan(depth + 1, startSlope, endSlope);
+        }
+    }
+
+    // slope of the near edge of the cell at col in the row at depth
+    private static double slope(final int depth, final int col) {
+        return (2 * col - 1) / (2.0 * depth);
+    }
+
+    private static int roundTiesUp(final double n) {
+        return (int)Math.floor(n + 0.5);
+    }
+
+    private static int roundTiesDown(final double n) {
+        return (int)Math.ceil(n - 0.5);
+    }
+}
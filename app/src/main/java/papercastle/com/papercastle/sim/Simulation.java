@@ -0,0 +1,908 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+
+/**
+ * The game rules of one instance of a level, with no dependency on android.
+ * Time only moves forward in fixed steps of TICK_MS, one at a time through tick() or many at once through
+ * advance(). Catching and winning look at every cell an object went through, not just the one it ends up in,
+ * so being fast or stepping far never skips past anything.
+ * Not thread safe: everything that changes it has to come from one thread, between ticks.
+ */
+
+public class Simulation {
+
+    public enum GameState {
+        PLAN, EXECUTE, SUCCESS, FAILURE
+    }
+
+    public static final int TICK_MS = 10;
+
+    public static final double PLAYER_SPEED = 1.0;
+    public static final int PLAYER_COLOR = 0xff00ff00;
+
+    private final Level.Terrain[][] terrain; // array is [y][x]
+    private final Topology topology;
+    private volatile GameState gameState; // so other threads can tell when the level is over
+    private long tickCount;
+
+    // objects are kept apart by kind, in arrays, so a tick only goes through the ones that can move and never
+    // has to check what something is. Walls and the end never change, so they're never updated
+    private final List<GameObject> staticObjects = new ArrayList<>();
+    private final MotionTable staticMotion = new MotionTable(16);
+    // guards are never added or removed after the constructor, so their indices never change.
+    // guardMotion holds what changes as they move, guard g in slot g, and is what a tick steps
+    private final GuardObject[] guards;
+    private final MotionTable guardMotion;
+    // every selectable object ever added, caught or not, by id. selectableMotion has each one's movement in slot id
+    private SelectableGameObject[] selectables = new SelectableGameObject[8];
+    private final MotionTable selectableMotion = new MotionTable(8);
+    private int numSelectables;
+    // ids of the selectable objects that haven't been caught, in order. The player is always first
+    private int[] live = new int[8];
+    private int numLive;
+    // where the live selectable objects are
+    private final OccupancyGrid occupancy;
+    // selected object
+    private volatile SelectableGameObject selectedObject;
+    // player object
+    private final SelectableGameObject playerObject;
+
+    // clone stuff
+    private final int[] availableClones;
+    private int activeClonePlacement;
+
+    private final Cell endPos;
+    private final int endPoint; // endPos packed with Cell.pack
+
+    // what guards with vision cones see from where they've been. The terrain never changes, so it's never cleared
+    private final VisibilityCache visibility = new VisibilityCache();
+
+    // reused every tick so catching doesn't allocate. Something seen by more than one guard is in it more than once
+    private final List<SelectableGameObject> caught = new ArrayList<>();
+    // ids of the live selectable objects that went through a cell without stopping there in the last tick,
+    // being quick enough to cross more than one. Usually none
+    private int[] swept = new int[8];
+    private int numSwept;
+
+    // what the guards watch at every tick, for advance. Made the first time it's needed
+    private final GuardObject.GuardFactory[] guardFactories;
+    private CoverageSchedule coverage;
+    private boolean noCoverage; // the guards take too long to repeat, so advance just ticks
+
+    // optional time spent in each part of a tick, summed until taken
+    public static final int PHASE_MOVE = 0;
+    public static final int PHASE_LOS = 1;
+    public static final int PHASE_CATCH = 2;
+    public static final int NUM_PHASES = 3;
+    private boolean timing;
+    private final long[] phaseNanos = new long[NUM_PHASES];
+
+    /**
+     * What a Simulation was like at one point, to go back to with restore. Only what can change is copied:
+     * terrain, walls and the end are left out, and paths are kept as lengths since they only grow. So restoring an
+     * older snapshot and then changing paths makes any snapshot saved in between wrong.
+     * Reusable, and saving into one that's big enough doesn't allocate.
+     */
+    public static final class Snapshot {
+        private boolean saved;
+        private long tickCount;
+        private GameState gameState;
+        private int activeClonePlacement;
+        private int selectedId;
+        private int numSelectables;
+        private int[] availableClones = new int[0];
+        // ids of the selectable objects that weren't caught, then the state of the guards followed by theirs
+        private int[] live = new int[0];
+        private int numLive;
+        private long[] state = new long[0];
+
+        public boolean isSaved() {
+            return saved;
+        }
+
+        // forgets what was saved
+        public void clear() {
+            saved = false;
+        }
+
+        public long getTickCount() {
+            return tickCount;
+        }
+    }
+
+    public Simulation(Level l) {
+        topology = createTopology(l);
+        occupancy = new OccupancyGrid(topology.getNumCells());
+
+        Cell startPos = null;
+        Cell endPos = null;
+
+        // deep copy terrain
+        final Level.Terrain[][] layout = l.getLayout();
+        terrain = new Level.Terrain[layout.length][];
+        for (int y = 0; y < layout.length; y++) {
+            terrain[y] = Arrays.copyOf(layout[y], layout[y].length);
+            for (int x = 0; x < terrain[y].length; x++) {
+                if (terrain[y][x] == NONE) {
+                    continue;
+                } else if (terrain[y][x] == Level.Terrain.WALL) {
+                    staticObjects.add(new WallObject(new Cell(x, y), staticMotion));
+                } else if (terrain[y][x] == Level.Terrain.START) {
+                    if (startPos != null) throw new IllegalArgumentException("Multiple start positions defined in level!");
+                    startPos = new Cell(x, y);
+                    terrain[y][x] = NONE;
+                } else if (terrain[y][x] == Level.Terrain.END) {
+                    if (endPos != null) throw new IllegalArgumentException("Multiple end positions defined in level!");
+                    endPos = new Cell(x, y);
+                    terrain[y][x] = NONE;
+                    staticObjects.add(new EndObject(new Cell(x, y), staticMotion));
+                }
+            }
+        }
+
+        if (startPos == null) throw new IllegalArgumentException("No start position defined in level");
+        if (endPos == null) throw new IllegalArgumentException("No end position defined in level");
+        this.endPos = endPos;
+        endPoint = Cell.pack(endPos.x, endPos.y);
+
+        playerObject = new SelectableGameObject(startPos, PLAYER_SPEED, PLAYER_COLOR);
+        addSelectable(playerObject, startPos);
+        selectObject(playerObject);
+
+        availableClones = Arrays.copyOf(l.getCloneTypes(), l.getCloneTypes().length);
+        if (availableClones.length > SelectableGameObject.CLONE_TYPE_DEFS.length) {
+            throw new IllegalArgumentException("want " + availableClones.length + " types of clones but only " + SelectableGameObject.CLONE_TYPE_DEFS.length);
+        }
+        activeClonePlacement = -1;
+
+        final GuardObject.GuardFactory[] factories = l.getGuards();
+        guardFactories = factories;
+        guards = new GuardObject[factories.length];
+        guardMotion = new MotionTable(factories.length);
+        for (int g = 0; g < factories.length; g++) {
+            guards[g] = factories[g].create(topology);
+            guards[g].moveTo(guardMotion);
+            guards[g].computeLOS(topology, terrain, visibility);
+        }
+
+        switchToPlan();
+    }
+
+    public static Topology createTopology(Level l) {
+        if (l.getCsType() == Level.CSType.GRID) {
+            return new GridTopology(l.getLayout()[0].length, l.getLayout().length);
+        } else if (l.getCsType() == Level.CSType.HEX) {
+            return new HexTopology(l.getLayout()[0].length, l.getLayout().length);
+        } else {
+            throw new IllegalArgumentException("Invalid grid type " + l.getCsType());
+        }
+    }
+
+    // advances the level by exactly TICK_MS if it is executing
+    public void tick() {
+        if (gameState == GameState.EXECUTE) {
+            tickCount++;
+            update(TICK_MS);
+        }
+    }
+
+    // runs up to ticks ticks at once if executing, stopping when the level is over, for fast forwarding and
+    // running levels in bulk. Guards still step tick by tick, but selectable objects go straight to where they'd
+    // end up, and every cell they go through on the way is checked against the CoverageSchedule over the ticks
+    // they're in it, along with which guards are celebrating then. So it ends exactly like calling tick() that
+    // many times, just without casting LOS or moving anything else in between
+    public void advance(final int ticks) {
+        if (gameState != GameState.EXECUTE || ticks <= 0) {
+            return;
+        }
+        if (ticks == 1 || getCoverage() == null) {
+            for (int i = 0; i < ticks && gameState == GameState.EXECUTE; i++) {
+                tick();
+            }
+            return;
+        }
+
+        final long from = tickCount;
+        final long to = from + ticks;
+        final Advance a = new Advance(from);
+        final long win = a.winTick();
+        long first = from + 1; // nothing's been checked from here on
+        long end = to;
+        GameState outcome = GameState.EXECUTE;
+        while (true) {
+            // winning is checked first in a tick, so only catches before it count
+            final long last = Math.min(to, win - 1);
+            long seen = Long.MAX_VALUE;
+            for (int l = 0; l < numLive; l++) {
+                if (a.caughtAt[l] == 0) {
+                    seen = Math.min(seen, a.firstSeen(l, first, last));
+                }
+            }
+            if (seen == Long.MAX_VALUE) {
+                if (win <= to) {
+                    end = win;
+                    outcome = GameState.SUCCESS;
+                }
+                break;
+            }
+            if (a.catchAt(seen)) {
+                end = seen;
+                outcome = GameState.FAILURE;
+                break;
+            }
+            first = seen + 1;
+        }
+        a.finish(end);
+        gameState = outcome;
+    }
+
+    private CoverageSchedule getCoverage() {
+        if (coverage == null && !noCoverage) {
+            try {
+                coverage = new CoverageSchedule(topology, terrain, guardFactories, TICK_MS);
+            } catch (IllegalArgumentException e) {
+                noCoverage = true;
+            }
+        }
+        return coverage;
+    }
+
+    // one call to advance. Live objects are by their index in live, and ticks are absolute like tickCount
+    private final class Advance {
+        private final long from;
+        private final long[] startPos = new long[numLive];
+        private final long[] step = new long[numLive];
+        final long[] caughtAt = new long[numLive]; // 0 if not caught
+        private final long[] looksFrom = new long[guards.length]; // the first tick each guard isn't celebrating
+        // guards that started celebrating, and when, in order
+        private long[] celebrateTicks = new long[4];
+        private int[] celebrateGuards = new int[4];
+        private int numCelebrations;
+
+        Advance(final long from) {
+            this.from = from;
+            final MotionTable m = selectableMotion;
+            for (int l = 0; l < numLive; l++) {
+                startPos[l] = m.pathPos[live[l]];
+                step[l] = GameObject.pathStep(m.speed[live[l]], TICK_MS);
+            }
+            for (int g = 0; g < guards.length; g++) {
+                looksFrom[g] = guardMotion.isCelebrating(g)
+                        ? from + msToTicks(GuardObject.CELEBRATE_MS - guardMotion.celebrateMs[g]) : from + 1;
+            }
+        }
+
+        // the first tick that live object l has reached index i of its path, or Long.MAX_VALUE if it never does
+        private long enterTick(final int l, final int i) {
+            final long units = i * GameObject.PATH_UNITS - GameObject.PATH_UNITS / 2 - startPos[l];
+            if (units <= 0) {
+                return from + 1;
+            }
+            return step[l] == 0 ? Long.MAX_VALUE : from + Math.max(1, (units + step[l] - 1) / step[l]);
+        }
+
+        // the index of its path live object l is on after tick
+        private int indexAt(final int l, final long tick) {
+            final int id = live[l];
+            return selectableMotion.getPointIndex(id, startPos[l] + (tick - from) * step[l]);
+        }
+
+        // when the player gets to the end, or Long.MAX_VALUE if it doesn't
+        long winTick() {
+            final MotionTable m = selectableMotion;
+            final int id = live[0];
+            for (int i = indexAt(0, from) + 1; i < m.pathLength[id]; i++) {
+                if (m.getPathPoint(id, i) == endPoint) {
+                    return enterTick(0, i);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        // the first tick from first to last that a guard that isn't celebrating sees live object l, or
+        // Long.MAX_VALUE. Each cell on its way is in it from the tick it gets there to the tick before it
+        // gets to the next, or just the tick it went through it in
+        long firstSeen(final int l, final long first, final long last) {
+            final MotionTable m = selectableMotion;
+            final int id = live[l];
+            final int start = indexAt(l, from);
+            final int length = m.pathLength[id];
+            long enter = from + 1;
+            for (int i = start; i < length && enter <= last; i++) {
+                final long next = i == length - 1 ? Long.MAX_VALUE : enterTick(l, i + 1);
+                // where it started was already checked unless it stays a tick
+                final long leave = i == start ? next - 1 : Math.max(enter, next - 1);
+                final long lo = Math.max(enter, first);
+                final long hi = Math.min(leave, last);
+                if (lo <= hi) {
+                    final int p = m.getPathPoint(id, i);
+                    final int cell = topology.indexOf(Cell.unpackX(p), Cell.unpackY(p));
+                    long seen = Long.MAX_VALUE;
+                    for (int g : coverage.getWatchers(cell)) {
+                        final long t = coverage.firstWatchedBy(g, cell, Math.max(lo, looksFrom[g]), hi);
+                        if (t != -1) {
+                            seen = Math.min(seen, t);
+                        }
+                    }
+                    if (seen != Long.MAX_VALUE) {
+                        return seen;
+                    }
+                }
+                enter = next;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        // catches everything guards see at tick the way checkInteractions would. Returns whether the player was
+        private boolean catchAt(final long tick) {
+            for (int g = 0; g < guards.length; g++) {
+                if (looksFrom[g] > tick) continue;
+                boolean celebrates = false;
+                boolean player = false;
+                for (int l = 0; l < numLive; l++) {
+                    if ((caughtAt[l] == 0 || caughtAt[l] == tick) && sees(g, l, tick)) {
+                        celebrates = true;
+                        if (l == 0) {
+                            player = true;
+                        } else {
+                            caughtAt[l] = tick;
+                        }
+                    }
+                }
+                if (celebrates) {
+                    celebrate(g, tick);
+                }
+                if (player) {
+                    // the level ends before anything caught in the same tick is taken out
+                    for (int l = 0; l < numLive; l++) {
+                        if (caughtAt[l] == tick) caughtAt[l] = 0;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // whether guard g sees live object l where it is after tick, or anywhere it went through during it
+        private boolean sees(final int g, final int l, final long tick) {
+            final int id = live[l];
+            final int cur = indexAt(l, tick);
+            // just cur if it didn't move on
+            for (int i = Math.min(indexAt(l, tick - 1) + 1, cur); i <= cur; i++) {
+                if (isWatchedBy(g, selectableMotion.getPathPoint(id, i), tick)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isWatchedBy(final int g, final int point, final long tick) {
+            return coverage.isWatchedBy(g, topology.indexOf(Cell.unpackX(point), Cell.unpackY(point)), tick);
+        }
+
+        private void celebrate(final int g, final long tick) {
+            if (numCelebrations == celebrateTicks.length) {
+                celebrateTicks = Arrays.copyOf(celebrateTicks, numCelebrations * 2);
+                celebrateGuards = Arrays.copyOf(celebrateGuards, numCelebrations * 2);
+            }
+            celebrateTicks[numCelebrations] = tick;
+            celebrateGuards[numCelebrations++] = g;
+            looksFrom[g] = tick + msToTicks(GuardObject.CELEBRATE_MS);
+        }
+
+        // moves everything to where it is after tick end, and takes out what was caught
+        void finish(final long end) {
+            int c = 0;
+            for (long tick = from + 1; tick <= end; tick++) {
+                guardMotion.updateAll(TICK_MS);
+                for (; c < numCelebrations && celebrateTicks[c] == tick; c++) {
+                    guardMotion.celebrateMs[celebrateGuards[c]] = 0;
+                }
+            }
+            int n = 0;
+            for (int l = 0; l < numLive; l++) {
+                final int id = live[l];
+                final SelectableGameObject sgo = selectables[id];
+                selectableMotion.updatePlain(id, (caughtAt[l] == 0 ? end : caughtAt[l]) - from, TICK_MS);
+                if (caughtAt[l] == 0) {
+                    occupancy.move(sgo, sgo.getCurCellIndex(topology));
+                    live[n++] = id;
+                } else {
+                    occupancy.remove(sgo);
+                }
+            }
+            numLive = n;
+            numSwept = 0;
+            tickCount = end;
+            computeLOS();
+        }
+    }
+
+    // how many ticks it takes for ms to go by
+    private static long msToTicks(final long ms) {
+        return (ms + TICK_MS - 1) / TICK_MS;
+    }
+
+    private void update(final long ms) {
+        long start = timing ? System.nanoTime() : 0;
+        moveObjects(ms);
+        start = lap(PHASE_MOVE, start);
+        computeLOS();
+        start = lap(PHASE_LOS, start);
+        checkInteractions();
+        lap(PHASE_CATCH, start);
+    }
+
+    // adds the time since start to phase if timing, and returns now
+    private long lap(final int phase, final long start) {
+        if (!timing) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        phaseNanos[phase] += now - start;
+        return now;
+    }
+
+    private void moveObjects(final long ms) {
+        guardMotion.updateAll(ms);
+        final MotionTable m = selectableMotion;
+        numSwept = 0;
+        for (int i = 0; i < numLive; i++) {
+            final int id = live[i];
+            m.update(id, ms);
+            final int p = m.getCurPoint(id);
+            occupancy.move(selectables[id], topology.indexOf(Cell.unpackX(p), Cell.unpackY(p)));
+            if (m.getPointIndex(id, m.prevPathPos[id]) + 1 < m.getPointIndex(id, m.pathPos[id])) {
+                if (numSwept == swept.length) {
+                    swept = Arrays.copyOf(swept, numSwept * 2);
+                }
+                swept[numSwept++] = id;
+            }
+        }
+    }
+
+    // whether selectable id went through point, packed with Cell.pack, without stopping there in the last tick
+    private boolean sweptThrough(final int id, final int point) {
+        final MotionTable m = selectableMotion;
+        final int last = m.getPointIndex(id, m.pathPos[id]);
+        for (int i = m.getPointIndex(id, m.prevPathPos[id]) + 1; i < last; i++) {
+            if (m.getPathPoint(id, i) == point) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether guard sees a cell selectable id went through without stopping there in the last tick. Guards only
+    // move between ticks, so what one sees after a tick is all it saw during it. advance does the same over
+    // many ticks with the CoverageSchedule
+    private boolean sweptPast(final int id, final GuardObject guard) {
+        final MotionTable m = selectableMotion;
+        final int last = m.getPointIndex(id, m.pathPos[id]);
+        for (int i = m.getPointIndex(id, m.prevPathPos[id]) + 1; i < last; i++) {
+            final int p = m.getPathPoint(id, i);
+            if (guard.isInLOS(topology.indexOf(Cell.unpackX(p), Cell.unpackY(p)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void computeLOS() {
+        for (int g = 0; g < guards.length; g++) {
+            guards[g].computeLOS(topology, terrain, visibility);
+        }
+    }
+
+    private void checkInteractions() {
+        // object interactions
+        if (selectableMotion.getCurPoint(0) == endPoint || (numSwept > 0 && sweptThrough(0, endPoint))) {
+            // won the game
+            levelOver(true);
+            return;
+        }
+
+        // check to see if any guards intersect with any selectable objects
+        caught.clear();
+        for (int g = 0; g < guards.length; g++) {
+            final GuardObject guard = guards[g];
+            if (guardMotion.isCelebrating(g)) continue;
+
+            // only the cells the guard can see can hold anything it catches
+            for (int i = 0; i < guard.getNumLOSCells(); i++) {
+                for (SelectableGameObject sgo = occupancy.getFirst(guard.getLOSCell(i)); sgo != null; sgo = sgo.getNextInCell()) {
+                    guard.startCelebrating();
+                    if (playerObject == sgo) {
+                        // lost game
+                        levelOver(false);
+                        return;
+                    } else {
+                        caught.add(sgo);
+                    }
+                }
+            }
+            // a cell it sees could also have been crossed between ticks
+            for (int i = 0; i < numSwept; i++) {
+                final SelectableGameObject sgo = selectables[swept[i]];
+                if (sweptPast(swept[i], guard)) {
+                    guard.startCelebrating();
+                    if (playerObject == sgo) {
+                        // lost game
+                        levelOver(false);
+                        return;
+                    } else {
+                        caught.add(sgo);
+                    }
+                }
+            }
+        }
+        if (!caught.isEmpty()) {
+            for (int i = 0; i < caught.size(); i++) {
+                occupancy.remove(caught.get(i));
+            }
+            // the caught ones are the ones that aren't in a cell any more
+            int n = 0;
+            for (int i = 0; i < numLive; i++) {
+                if (selectables[live[i]].occupiedCell != Topology.NO_CELL) {
+                    live[n++] = live[i];
+                }
+            }
+            numLive = n;
+        }
+    }
+
+    private void levelOver(boolean success) {
+        if (success) {
+            gameState = GameState.SUCCESS;
+        } else {
+            gameState = GameState.FAILURE;
+        }
+    }
+
+    public boolean isDone() {
+        return gameState == GameState.SUCCESS || gameState == GameState.FAILURE;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    public void setPhaseTiming(final boolean timing) {
+        this.timing = timing;
+    }
+
+    // nanoseconds spent in phase since the last call
+    public long takePhaseNanos(final int phase) {
+        final long nanos = phaseNanos[phase];
+        phaseNanos[phase] = 0;
+        return nanos;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public void switchToPlan() {
+        gameState = GameState.PLAN;
+    }
+
+    public void switchToExecute() {
+        gameState = GameState.EXECUTE;
+        selectObject(null);
+    }
+
+    public void selectObject(final SelectableGameObject newSelection) {
+        if (selectedObject != null) {
+            selectedObject.unselect();
+        }
+        if (newSelection != null) {
+            newSelection.select();
+        }
+        selectedObject = newSelection;
+    }
+
+    public SelectableGameObject getSelectedObject() {
+        return selectedObject;
+    }
+
+    // extends the path of o by one step, if p is a passable neighbor of its last path point
+    public boolean extendPath(final SelectableGameObject o, final Cell p) {
+        if (topology.distance(p, o.getLastPathPoint()) == 1 && Level.isPassable(terrain, p.x, p.y)) {
+            o.addPointToPath(p);
+            return true;
+        }
+        return false;
+    }
+
+    public void startClonePlacement(final int cloneTypeNum) {
+        stopClonePlacement();
+        activeClonePlacement = cloneTypeNum;
+        selectObject(null);
+    }
+
+    public void stopClonePlacement() {
+        activeClonePlacement = -1;
+    }
+
+    public int getActiveClonePlacement() {
+        return activeClonePlacement;
+    }
+
+    // places the active clone type at p if it is a passable neighbor of the player, and stops placing either way.
+    // returns the new clone, or null if it couldn't be placed
+    public SelectableGameObject placeActiveClone(final Cell p) {
+        final int cloneTypeNum = activeClonePlacement;
+        stopClonePlacement();
+        if (cloneTypeNum == -1 || availableClones[cloneTypeNum] <= 0) {
+            return null;
+        }
+        if (topology.distance(p, playerObject.getCurCell()) != 1 || !Level.isPassable(terrain, p.x, p.y)) {
+            return null;
+        }
+        final SelectableGameObject newClone = SelectableGameObject.CLONE_TYPE_DEFS[cloneTypeNum].create(p);
+        addSelectable(newClone, p);
+        availableClones[cloneTypeNum]--;
+        return newClone;
+    }
+
+    private void addSelectable(final SelectableGameObject object, final Cell p) {
+        if (numSelectables == selectables.length) {
+            selectables = Arrays.copyOf(selectables, numSelectables * 2);
+        }
+        if (numLive == live.length) {
+            live = Arrays.copyOf(live, numLive * 2);
+        }
+        object.id = numSelectables;
+        object.moveTo(selectableMotion);
+        selectables[numSelectables++] = object;
+        live[numLive++] = object.id;
+        occupancy.add(object, topology.indexOf(p));
+    }
+
+    // the object with SelectableGameObject.getId() id, caught or not, or null if there isn't one
+    public SelectableGameObject getSelectable(final int id) {
+        return id >= 0 && id < numSelectables ? selectables[id] : null;
+    }
+
+    // does what a Command says, like the ui would. Anything the ui couldn't do at this point does nothing,
+    // so a bad recording can't corrupt the level. The ui only pauses while executing, only extends the selected
+    // object's path, and only selects, extends and stops placing when a clone isn't or is being placed
+    public void apply(final long command) {
+        if (isDone()) {
+            return;
+        }
+        final int cell = Command.cell(command);
+        final boolean validCell = cell < topology.getNumCells();
+        final boolean planning = gameState == GameState.PLAN;
+        final boolean placing = activeClonePlacement != -1;
+        final int objectId = Command.object(command);
+        switch (Command.type(command)) {
+            case Command.PLAN:
+                if (gameState == GameState.EXECUTE) switchToPlan();
+                break;
+            case Command.EXECUTE:
+                if (planning) switchToExecute();
+                break;
+            case Command.SELECT:
+                final SelectableGameObject selected = getSelectable(objectId);
+                if (planning && !placing && (objectId == Command.NONE || isLive(selected))) selectObject(selected);
+                break;
+            case Command.EXTEND_PATH:
+                final SelectableGameObject object = getSelectable(objectId);
+                if (planning && !placing && object != null && object == selectedObject && validCell) {
+                    extendPath(object, topology.getCell(cell));
+                }
+                break;
+            case Command.START_CLONE_PLACEMENT:
+                if (planning && objectId < availableClones.length && availableClones[objectId] > 0) {
+                    startClonePlacement(objectId);
+                }
+                break;
+            case Command.STOP_CLONE_PLACEMENT:
+                if (planning && placing) stopClonePlacement();
+                break;
+            case Command.PLACE_CLONE:
+                if (planning && placing && validCell) placeActiveClone(topology.getCell(cell));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + Command.toString(command));
+        }
+    }
+
+    // whether object was added and hasn't been caught
+    private static boolean isLive(final SelectableGameObject object) {
+        return object != null && object.occupiedCell != Topology.NO_CELL;
+    }
+
+    public void save(final Snapshot s) {
+        s.tickCount = tickCount;
+        s.gameState = gameState;
+        s.activeClonePlacement = activeClonePlacement;
+        s.selectedId = selectedObject == null ? -1 : selectedObject.getId();
+        s.numSelectables = numSelectables;
+        if (s.availableClones.length != availableClones.length) {
+            s.availableClones = new int[availableClones.length];
+        }
+        System.arraycopy(availableClones, 0, s.availableClones, 0, availableClones.length);
+
+        if (s.live.length < numLive) {
+            s.live = new int[live.length];
+        }
+        System.arraycopy(live, 0, s.live, 0, numLive);
+        s.numLive = numLive;
+        int stateSize = 0;
+        for (int g = 0; g < guards.length; g++) {
+            stateSize += guards[g].stateSize();
+        }
+        for (int l = 0; l < numLive; l++) {
+            stateSize += selectables[live[l]].stateSize();
+        }
+        if (s.state.length < stateSize) {
+            s.state = new long[stateSize];
+        }
+        int i = 0;
+        for (int g = 0; g < guards.length; g++) {
+            i = guards[g].saveState(s.state, i);
+        }
+        for (int l = 0; l < numLive; l++) {
+            i = selectables[live[l]].saveState(s.state, i);
+        }
+        s.saved = true;
+    }
+
+    // puts everything back how it was when s was saved from this. Clones placed since go away, ones caught since
+    // come back, and paths drawn since are cut off
+    public void restore(final Snapshot s) {
+        if (!s.saved) {
+            throw new IllegalArgumentException("nothing saved");
+        }
+        if (s.numSelectables > numSelectables) {
+            throw new IllegalArgumentException("saved after an older snapshot was restored");
+        }
+        for (int id = 0; id < numSelectables; id++) {
+            occupancy.remove(selectables[id]);
+        }
+        // placed since, which take their movement with them
+        for (int id = s.numSelectables; id < numSelectables; id++) {
+            selectables[id].moveTo(new MotionTable(1));
+        }
+        selectableMotion.truncate(s.numSelectables);
+        Arrays.fill(selectables, s.numSelectables, numSelectables, null);
+        numSelectables = s.numSelectables;
+        // caught since
+        if (live.length < s.numLive) {
+            live = new int[s.live.length];
+        }
+        System.arraycopy(s.live, 0, live, 0, s.numLive);
+        numLive = s.numLive;
+
+        int i = 0;
+        for (int g = 0; g < guards.length; g++) {
+            i = guards[g].restoreState(s.state, i);
+        }
+        for (int l = 0; l < numLive; l++) {
+            final SelectableGameObject sgo = selectables[live[l]];
+            i = sgo.restoreState(s.state, i);
+            occupancy.add(sgo, sgo.getCurCellIndex(topology));
+        }
+        computeLOS();
+
+        tickCount = s.tickCount;
+        gameState = s.gameState;
+        activeClonePlacement = s.activeClonePlacement;
+        selectedObject = getSelectable(s.selectedId);
+        System.arraycopy(s.availableClones, 0, availableClones, 0, availableClones.length);
+        caught.clear();
+    }
+
+    // hash of everything that decides what happens from here on, to check two runs of a level stayed the same.
+    // Objects go in in the order they were added to the level, the player before the guards, so recordings made
+    // when they were all kept in one set still check
+    public long stateHash() {
+        long h = GameObject.hash(tickCount, gameState.ordinal());
+        h = GameObject.hash(h, activeClonePlacement);
+        h = GameObject.hash(h, selectedObject == null ? -1 : selectedObject.getId());
+        for (int i = 0; i < availableClones.length; i++) {
+            h = GameObject.hash(h, availableClones[i]);
+        }
+        for (int i = 0; i < staticObjects.size(); i++) {
+            h = staticObjects.get(i).hashState(h);
+        }
+        h = playerObject.hashState(h);
+        for (int g = 0; g < guards.length; g++) {
+            h = guards[g].hashState(h);
+        }
+        for (int l = 1; l < numLive; l++) {
+            h = selectables[live[l]].hashState(h);
+        }
+        return h;
+    }
+
+    public int getNumCloneTypes() {
+        return availableClones.length;
+    }
+
+    public int getAvailableClones(final int cloneTypeNum) {
+        return availableClones[cloneTypeNum];
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    public Level.Terrain[][] getTerrain() {
+        return terrain;
+    }
+
+    public Cell getEndPos() {
+        return endPos;
+    }
+
+    public SelectableGameObject getPlayerObject() {
+        return playerObject;
+    }
+
+    // the walls and the end
+    public List<GameObject> getStaticObjects() {
+        return Collections.unmodifiableList(staticObjects);
+    }
+
+    public int getNumGuards() {
+        return guards.length;
+    }
+
+    // guards keep their index for as long as the level runs
+    public GuardObject getGuard(final int i) {
+        return guards[i];
+    }
+
+    // guard g's position along its path in GameObject.PATH_UNITS, read straight from what a tick steps
+    public long getGuardPathPos(final int g) {
+        return guardMotion.pathPos[g];
+    }
+
+    public long getGuardPrevPathPos(final int g) {
+        return guardMotion.prevPathPos[g];
+    }
+
+    public int getGuardDir(final int g) {
+        return guardMotion.dir[g];
+    }
+
+    public boolean isGuardCelebrating(final int g) {
+        return guardMotion.isCelebrating(g);
+    }
+
+    // how many selectable objects haven't been caught, the player included
+    public int getNumLive() {
+        return numLive;
+    }
+
+    // the i'th selectable object that hasn't been caught, in the order they were placed. The player is 0
+    public SelectableGameObject getLive(final int i) {
+        return selectables[live[i]];
+    }
+
+    // the i'th live object's position along its path in GameObject.PATH_UNITS, like getGuardPathPos
+    public long getLivePathPos(final int i) {
+        return selectableMotion.pathPos[live[i]];
+    }
+
+    public long getLivePrevPathPos(final int i) {
+        return selectableMotion.prevPathPos[live[i]];
+    }
+
+    public VisibilityCache getVisibilityCache() {
+        return visibility;
+    }
+
+    public OccupancyGrid getOccupancy() {
+        return occupancy;
+    }
+}
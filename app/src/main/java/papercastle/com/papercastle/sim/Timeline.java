@@ -0,0 +1,125 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What will happen if a Simulation's plan is played from where it is now, for scrubbing through before
+ * pressing play. The level is run ahead a few keyframes at a time with simulate, saving a Simulation.Snapshot
+ * every KEYFRAME_TICKS, and seek goes to any tick already run by restoring the keyframe before it and
+ * ticking the rest. So a seek costs one restore and fewer than KEYFRAME_TICKS ticks, however long the level.
+ *
+ * It uses the Simulation itself, so only the thread that owns that can call it, and anything else that changes
+ * the Simulation has to reset it. Between calls the Simulation is where the last seek left it, or where it
+ * started if there wasn't one since stopSeeking.
+ */
+
+public final class Timeline {
+
+    public static final int KEYFRAME_TICKS = 50;
+
+    private final Simulation sim;
+    private final long maxTicks; // how far ahead to look, for levels that never end
+    // [k] is the state KEYFRAME_TICKS * k ticks after the start. Reused between resets
+    private final List<Simulation.Snapshot> keyframes = new ArrayList<>();
+    private int numKeyframes;
+    private long length; // ticks after the start that have been run
+    private boolean complete; // run until the level ended or maxTicks
+    private long seekTick = -1; // ticks after the start that the simulation is at, or -1 if it's at the start
+
+    public Timeline(final Simulation sim, final long maxTicks) {
+        this.sim = sim;
+        this.maxTicks = maxTicks;
+    }
+
+    // forgets everything run so far, to start again from the Simulation as it is now
+    public void reset() {
+        numKeyframes = 0;
+        length = 0;
+        complete = false;
+        seekTick = -1;
+    }
+
+    // runs up to maxKeyframes more keyframes ahead, and leaves the Simulation where it was
+    public void simulate(final int maxKeyframes) {
+        if (numKeyframes == 0) {
+            if (sim.getGameState() != Simulation.GameState.PLAN) {
+                throw new IllegalStateException("timeline starts in " + sim.getGameState());
+            }
+            save();
+        }
+        if (complete) {
+            return;
+        }
+        sim.restore(keyframes.get(numKeyframes - 1));
+        for (int k = 0; k < maxKeyframes && !complete; k++) {
+            if (sim.getGameState() == Simulation.GameState.PLAN) {
+                sim.switchToExecute();
+            }
+            for (int t = 0; t < KEYFRAME_TICKS && !sim.isDone() && length < maxTicks; t++) {
+                sim.tick();
+                length++;
+            }
+            complete = sim.isDone() || length >= maxTicks;
+            if (length == (long)numKeyframes * KEYFRAME_TICKS) {
+                save();
+            }
+        }
+        if (seekTick == -1) {
+            sim.restore(keyframes.get(0));
+        } else {
+            seek(seekTick);
+        }
+    }
+
+    private void save() {
+        if (numKeyframes == keyframes.size()) {
+            keyframes.add(new Simulation.Snapshot());
+        }
+        sim.save(keyframes.get(numKeyframes++));
+    }
+
+    // puts the Simulation at tick ticks after the start, or the furthest run so far if that's sooner
+    public void seek(long tick) {
+        if (numKeyframes == 0) {
+            throw new IllegalStateException("nothing run yet");
+        }
+        tick = Math.max(0, Math.min(tick, length));
+        final int k = (int)Math.min(tick / KEYFRAME_TICKS, numKeyframes - 1);
+        sim.restore(keyframes.get(k));
+        long t = (long)k * KEYFRAME_TICKS;
+        if (t < tick && sim.getGameState() == Simulation.GameState.PLAN) {
+            sim.switchToExecute();
+        }
+        for (; t < tick; t++) {
+            sim.tick();
+        }
+        seekTick = tick;
+    }
+
+    // puts the Simulation back where it started
+    public void stopSeeking() {
+        if (numKeyframes > 0) {
+            sim.restore(keyframes.get(0));
+        }
+        seekTick = -1;
+    }
+
+    public boolean isStarted() {
+        return numKeyframes > 0;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // ticks after the start that can be seeked to
+    public long getLength() {
+        return length;
+    }
+
+    // ticks after the start of the last seek, or -1 if the Simulation is at the start
+    public long getSeekTick() {
+        return seekTick;
+    }
+}
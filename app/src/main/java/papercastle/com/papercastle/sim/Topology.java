@@ -0,0 +1,53 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.List;
+
+/**
+ * Cell adjacency of a level, without any notion of the screen.
+ *
+ * Cells can be named either by Cell or by a packed int id in [0, getNumCells()), which is what the
+ * per-frame code uses so it doesn't allocate. NO_CELL stands for a position outside the level.
+ */
+
+public interface Topology {
+
+    public static final int NO_CELL = -1;
+
+    public int getWidth();
+
+    public int getHeight();
+
+    public int getNumCells();
+
+    // dense index of p in [0, getNumCells()), or NO_CELL if p is outside the level
+    public int indexOf(Cell p);
+
+    public int indexOf(int x, int y);
+
+    public int getX(int cell);
+
+    public int getY(int cell);
+
+    // shared Cell instance for a packed id
+    public Cell getCell(int cell);
+
+    public int distance(Cell a, Cell b);
+
+    public int distance(int a, int b);
+
+    public List<Cell> neighbors(Cell p);
+
+    // writes the in bounds neighbors of cell to out, which must have room for numDirections(), and returns how many
+    public int neighbors(int cell, int[] out);
+
+    public int numDirections();
+
+    public Cell getNeighborInDirection(Cell p, int direction);
+
+    // NO_CELL if the neighbor is outside the level
+    public int getNeighborInDirection(int cell, int direction);
+
+    public int getDirectionVector(Cell a, Cell b);
+
+    public int getDirectionVector(int a, int b);
+}
@@ -0,0 +1,132 @@
+package papercastle.com.papercastle.sim;
+
+import java.util.Arrays;
+
+/**
+ * What guards with vision cones see from each cell, facing, range and cone they've been in, so a guard that
+ * comes back to a spot it's been before (every rotating and patrolling guard, over and over) copies its cells
+ * out instead of shadowcasting again. Only right for the terrain the cells were cast against, so clear it if
+ * that changes.
+ *
+ * An open addressed table from packed keys to runs of one shared array of cells, so lookups don't allocate.
+ * Not thread safe, each Simulation has its own.
+ */
+
+public final class VisibilityCache {
+
+    private static final long EMPTY = -1; // keys are never negative
+    private static final int INITIAL_CAPACITY = 64; // a power of 2
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int size;
+    private int[] cells = new int[256];
+    private int numCells;
+
+    private long hits;
+    private long misses;
+
+    public VisibilityCache() {
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // cell in the low 32 bits can't collide with the rest, which are all small
+    public static long key(final int cell, final int dir, final int range, final int cone) {
+        return ((long)dir << 56) | ((long)cone << 48) | ((long)range << 32) | cell;
+    }
+
+    // slot of key, to read with getStart and getLength, or -1 if it hasn't been put
+    public int find(final long key) {
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                hits++;
+                return slot;
+            }
+            if (keys[slot] == EMPTY) {
+                misses++;
+                return -1;
+            }
+        }
+    }
+
+    // the cells of every slot, read from getStart(slot) for getLength(slot). Only valid until the next put
+    public int[] getCells() {
+        return cells;
+    }
+
+    public int getStart(final int slot) {
+        return starts[slot];
+    }
+
+    public int getLength(final int slot) {
+        return lengths[slot];
+    }
+
+    // remembers the first n of seen for key, which mustn't be there already
+    public void put(final long key, final int[] seen, final int n) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        if (numCells + n > cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, numCells + n));
+        }
+        System.arraycopy(seen, 0, cells, numCells, n);
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        starts[slot] = numCells;
+        lengths[slot] = n;
+        numCells += n;
+        size++;
+    }
+
+    // forgets everything, for when the terrain changes
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        numCells = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldStarts = starts;
+        final int[] oldLengths = lengths;
+        keys = new long[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            starts[slot] = oldStarts[i];
+            lengths[slot] = oldLengths[i];
+        }
+    }
+
+    private static int hash(final long key) {
+        final long x = key * 0x9e3779b97f4a7c15L;
+        return (int)(x ^ (x >>> 32));
+    }
+}
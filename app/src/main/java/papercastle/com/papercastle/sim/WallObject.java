@@ -0,0 +1,22 @@
+package papercastle.com.papercastle.sim;
+
+/**
+ * Created by Josh on 5/28/2017.
+ */
+
+public class WallObject extends GameObject {
+
+    public WallObject(Cell point) {
+        super(point, 0.0, 0xff323232);
+    }
+
+    // sharing motion with the level's other walls and end, which never move
+    WallObject(Cell point, MotionTable motion) {
+        super(point, 0.0, 0xff323232, motion);
+    }
+
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+}
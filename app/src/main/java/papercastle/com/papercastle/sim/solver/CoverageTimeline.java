@@ -0,0 +1,131 @@
+package papercastle.com.papercastle.sim.solver;
+
+import java.util.List;
+
+import papercastle.com.papercastle.sim.CoverageSchedule;
+import papercastle.com.papercastle.sim.GameObject;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.Plan;
+import papercastle.com.papercastle.sim.SelectableGameObject;
+import papercastle.com.papercastle.sim.Simulation;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * The cells the guards can catch the player in, for every step of the player's path.
+ * Guards come from the level's CoverageSchedule, and any decoy clones are run tick by tick alongside to see
+ * which guards they keep busy celebrating. The player never changes what a guard does short of ending the level.
+ */
+
+final class CoverageTimeline {
+
+    // how far the player moves along its path each tick, in PATH_UNITS
+    static final long PLAYER_STEP = GameObject.pathStep(Simulation.PLAYER_SPEED, Simulation.TICK_MS);
+    // a guard that catches something at tick t is celebrating through tick t + CELEBRATE_TICKS - 1
+    static final long CELEBRATE_TICKS = (GuardObject.CELEBRATE_MS + Simulation.TICK_MS - 1) / Simulation.TICK_MS;
+
+    private final int maxSteps;
+    private final long[][] watched; // [player path index][bitset of cells watched at some tick the player is there]
+
+    CoverageTimeline(final CoverageSchedule schedule, final Topology topology, final List<Plan.ClonePlacement> decoys, final int maxSteps) {
+        this.maxSteps = maxSteps;
+        final int words = (topology.getNumCells() + 63) >> 6;
+        watched = new long[maxSteps + 1][words];
+
+        final int numGuards = schedule.getNumGuards();
+        final long[] celebrateUntil = new long[numGuards];
+        long anyCelebrateUntil = 0;
+
+        final SelectableGameObject[] clones = new SelectableGameObject[decoys.size()];
+        final int[] cloneCells = new int[clones.length];
+        for (int i = 0; i < clones.length; i++) {
+            final Plan.ClonePlacement placement = decoys.get(i);
+            clones[i] = SelectableGameObject.CLONE_TYPE_DEFS[placement.cloneType].create(placement.start);
+            for (int j = 0; j < placement.path.size(); j++) {
+                clones[i].addPointToPath(placement.path.get(j));
+            }
+        }
+        final boolean[] caught = new boolean[clones.length];
+        int numClones = clones.length;
+
+        int lastMaskId = -1;
+        int lastMaskStep = -1;
+        final long lastTick = enterTick(maxSteps + 1) - 1;
+        for (long tick = 1; tick <= lastTick; tick++) {
+            final int step = stepAt(tick);
+            final long[] w = watched[step];
+
+            // nothing can change what the schedule says, so only or in each combined mask once per step
+            final int maskId = schedule.getWatchedMaskId(tick);
+            if (numClones == 0 && tick >= anyCelebrateUntil && maskId != -1) {
+                if (maskId != lastMaskId || step != lastMaskStep) {
+                    final long[] mask = schedule.getWatchedMask(maskId);
+                    for (int i = 0; i < words; i++) {
+                        w[i] |= mask[i];
+                    }
+                    lastMaskId = maskId;
+                    lastMaskStep = step;
+                }
+                continue;
+            }
+            lastMaskId = -1;
+
+            for (int i = 0; i < clones.length; i++) {
+                if (clones[i] != null) {
+                    clones[i].update(Simulation.TICK_MS);
+                    cloneCells[i] = clones[i].getCurCellIndex(topology);
+                }
+            }
+
+            // a guard that catches a clone still catches the player in the same tick
+            for (int g = 0; g < numGuards; g++) {
+                if (tick < celebrateUntil[g]) continue;
+                for (int cell : schedule.getLOSCells(g, tick)) {
+                    w[cell >> 6] |= 1L << cell;
+                    for (int c = 0; c < clones.length; c++) {
+                        if (clones[c] != null && cloneCells[c] == cell) {
+                            celebrateUntil[g] = tick + CELEBRATE_TICKS;
+                            anyCelebrateUntil = Math.max(anyCelebrateUntil, celebrateUntil[g]);
+                            caught[c] = true;
+                        }
+                    }
+                }
+            }
+            for (int c = 0; c < clones.length; c++) {
+                if (caught[c]) {
+                    clones[c] = null;
+                    caught[c] = false;
+                    numClones--;
+                }
+            }
+        }
+    }
+
+    // whether the player would be caught at some tick while at index step of its path in cell
+    boolean isWatched(final int step, final int cell) {
+        return (watched[step][cell >> 6] & (1L << cell)) != 0;
+    }
+
+    // whether cell is watched at any point the timeline covers
+    boolean isEverWatched(final int cell) {
+        for (int step = 0; step <= maxSteps; step++) {
+            if (isWatched(step, cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the index of the player's path it is on (see GameObject.getCurCell) after tick ticks of moving
+    static int stepAt(final long tick) {
+        return (int)((tick * PLAYER_STEP + GameObject.PATH_UNITS / 2) / GameObject.PATH_UNITS);
+    }
+
+    // the first tick at which the player is on index step of its path
+    static long enterTick(final int step) {
+        final long units = step * GameObject.PATH_UNITS - GameObject.PATH_UNITS / 2;
+        if (units <= 0) {
+            return 1;
+        }
+        return (units + PLAYER_STEP - 1) / PLAYER_STEP;
+    }
+}
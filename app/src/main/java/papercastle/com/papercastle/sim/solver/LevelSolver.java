@@ -0,0 +1,396 @@
+package papercastle.com.papercastle.sim.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.CoverageSchedule;
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.Plan;
+import papercastle.com.papercastle.sim.Simulation;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * Finds the fastest winning plan for a level.
+ *
+ * The player can't stop moving once executing, so its state is just (cell, index along its path) and every
+ * index has a fixed window of ticks. For each choice of decoy clone the level's CoverageSchedule and the clone
+ * give which cells are watched in each window, then A* searches (cell, index) for the shortest path to the end that never steps
+ * into a watched cell. Decoy choices are searched in parallel, sharing the best length found so far as a bound.
+ *
+ * Decoys considered: no clone, or one clone of any available type placed next to the start and walked along the
+ * shortest path to a cell some guard watches, after first stepping back and forth to the start up to maxDecoyDelay
+ * times so it gets there later. So an unsolved SolverResult only says none of those plans wins within maxSteps
+ * player moves: levels that need two clones, a clone placed further out, or a longer wait can be missed. It is
+ * a proof only when the end can't be reached at all, see SolverResult.isProvenUnsolvable.
+ */
+
+public final class LevelSolver {
+
+    public static final int DEFAULT_MAX_STEPS = 120;
+    public static final int DEFAULT_MAX_DECOY_TARGETS = 64; // per clone type and starting cell, nearest first
+    public static final int DEFAULT_MAX_DECOY_DELAY = 3;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+    private static final int CANDIDATES_PER_TASK = 4;
+
+    // open list keys, so the heap holds longs: f, then deeper first, then cell
+    private static final int CELL_BITS = 21;
+    private static final int STEP_BITS = 21;
+    private static final long FIELD_MASK = (1L << CELL_BITS) - 1;
+
+    private final Level level;
+    private final Topology topology;
+    private final int maxSteps;
+    private final int maxDecoyTargets;
+    private final int maxDecoyDelay;
+
+    private final int start;
+    private final int end;
+    private final boolean[] passable;
+    private final int[] distToEnd; // ignoring guards, the heuristic
+    private final CoverageSchedule schedule;
+
+    public LevelSolver(Level level) {
+        this(level, DEFAULT_MAX_STEPS, DEFAULT_MAX_DECOY_TARGETS, DEFAULT_MAX_DECOY_DELAY);
+    }
+
+    public LevelSolver(Level level, int maxSteps, int maxDecoyTargets, int maxDecoyDelay) {
+        this.level = level;
+        final Simulation base = new Simulation(level); // for terrain, topology, start and end
+        this.topology = base.getTopology();
+        this.maxSteps = maxSteps;
+        this.maxDecoyTargets = maxDecoyTargets;
+        this.maxDecoyDelay = maxDecoyDelay;
+        if (topology.getNumCells() > FIELD_MASK || maxSteps >= (1 << STEP_BITS)) {
+            throw new IllegalArgumentException("level too large to solve: " + topology.getNumCells() + " cells, " + maxSteps + " steps");
+        }
+
+        start = base.getPlayerObject().getCurCellIndex(topology);
+        end = topology.indexOf(base.getEndPos());
+        final Level.Terrain[][] terrain = base.getTerrain();
+        passable = new boolean[topology.getNumCells()];
+        for (int i = 0; i < passable.length; i++) {
+            passable[i] = Level.isPassable(terrain, topology.getX(i), topology.getY(i));
+        }
+        distToEnd = new int[passable.length];
+        bfs(end, distToEnd, null);
+        schedule = new CoverageSchedule(topology, terrain, level.getGuards(), Simulation.TICK_MS);
+    }
+
+    // the longest completion time the search covers
+    public long getBoundMs() {
+        return CoverageTimeline.enterTick(maxSteps) * Simulation.TICK_MS;
+    }
+
+    public SolverResult solve(final ForkJoinPool pool) {
+        if (distToEnd[start] == UNREACHABLE) {
+            return result(null, -1, 0, 0);
+        }
+        final List<Plan.ClonePlacement> noDecoys = Collections.emptyList();
+        final CoverageTimeline plain = new CoverageTimeline(schedule, topology, noDecoys, maxSteps);
+
+        final List<List<Plan.ClonePlacement>> candidates = new ArrayList<>();
+        candidates.add(noDecoys);
+        addDecoyCandidates(plain, candidates);
+
+        final AtomicInteger bestSteps = new AtomicInteger(maxSteps);
+        final AtomicLong statesExpanded = new AtomicLong();
+        final SearchTask task = new SearchTask(candidates, 0, candidates.size(), bestSteps, statesExpanded);
+        // callers already running in the pool (like LevelValidator) just join in
+        final Found found = ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+        if (found == null) {
+            return result(null, -1, candidates.size(), statesExpanded.get());
+        }
+
+        final Plan plan = new Plan(candidates.get(found.candidate), found.path);
+        final long completionTicks = CoverageTimeline.enterTick(found.path.size());
+        verify(plan, completionTicks);
+        return result(plan, completionTicks * Simulation.TICK_MS, candidates.size(), statesExpanded.get());
+    }
+
+    private SolverResult result(final Plan plan, final long completionMs, final int numCandidates, final long statesExpanded) {
+        int maxClones = 0;
+        for (int count : level.getCloneTypes()) {
+            if (count > 0) maxClones = 1;
+        }
+        return new SolverResult(plan, completionMs, getBoundMs(), numCandidates, statesExpanded, distToEnd[start] == UNREACHABLE,
+                maxSteps, maxClones, maxDecoyTargets, maxDecoyDelay);
+    }
+
+    // runs the plan in a real simulation, since the search relies on CoverageTimeline matching it exactly
+    private void verify(final Plan plan, final long completionTicks) {
+        final Simulation sim = new Simulation(level);
+        if (!plan.apply(sim)) {
+            throw new IllegalStateException("simulation rejected solved plan:\n" + plan);
+        }
+        sim.switchToExecute();
+        while (!sim.isDone() && sim.getTickCount() < completionTicks) {
+            sim.tick();
+        }
+        if (sim.getGameState() != Simulation.GameState.SUCCESS || sim.getTickCount() != completionTicks) {
+            throw new IllegalStateException("solved plan ended in " + sim.getGameState() + " at tick " + sim.getTickCount()
+                    + ", expected SUCCESS at tick " + completionTicks + ":\n" + plan);
+        }
+    }
+
+    private void addDecoyCandidates(final CoverageTimeline plain, final List<List<Plan.ClonePlacement>> out) {
+        final boolean[] watchedCells = new boolean[passable.length];
+        for (int i = 0; i < watchedCells.length; i++) {
+            watchedCells[i] = passable[i] && plain.isEverWatched(i);
+        }
+
+        final int[] neighbors = new int[topology.numDirections()];
+        final int numNeighbors = topology.neighbors(start, neighbors);
+        final int[] dist = new int[passable.length];
+        final int[] order = new int[passable.length];
+        final int[] parents = new int[passable.length];
+        final int[] cloneTypes = level.getCloneTypes();
+        for (int n = 0; n < numNeighbors; n++) {
+            final int cloneStart = neighbors[n];
+            if (!passable[cloneStart]) continue;
+            final int reached = bfs(cloneStart, dist, order, parents);
+
+            // standing still, then the nearest watched cells
+            final List<List<Cell>> paths = new ArrayList<>();
+            paths.add(Collections.<Cell>emptyList());
+            for (int i = 1; i < reached && paths.size() <= maxDecoyTargets; i++) {
+                if (watchedCells[order[i]]) {
+                    paths.add(pathTo(order[i], parents));
+                }
+            }
+
+            for (int type = 0; type < cloneTypes.length; type++) {
+                if (cloneTypes[type] <= 0) continue;
+                for (int delay = 0; delay <= maxDecoyDelay; delay++) {
+                    for (List<Cell> path : paths) {
+                        final List<Cell> delayed = new ArrayList<>();
+                        for (int i = 0; i < delay; i++) {
+                            delayed.add(topology.getCell(start));
+                            delayed.add(topology.getCell(cloneStart));
+                        }
+                        delayed.addAll(path);
+                        out.add(Collections.singletonList(new Plan.ClonePlacement(type, topology.getCell(cloneStart), delayed)));
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Cell> pathTo(int cell, final int[] parents) {
+        final List<Cell> path = new ArrayList<>();
+        while (parents[cell] != Topology.NO_CELL) {
+            path.add(topology.getCell(cell));
+            cell = parents[cell];
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private int bfs(final int from, final int[] dist, final int[] parents) {
+        return bfs(from, dist, new int[dist.length], parents);
+    }
+
+    // breadth first distances over passable cells from from. order gets the cells in the order they were reached,
+    // and parents (if not null) the cell each was reached from. returns how many cells were reached
+    private int bfs(final int from, final int[] dist, final int[] order, final int[] parents) {
+        Arrays.fill(dist, UNREACHABLE);
+        final int[] neighbors = new int[topology.numDirections()];
+        dist[from] = 0;
+        order[0] = from;
+        if (parents != null) parents[from] = Topology.NO_CELL;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int cell = order[head++];
+            final int numNeighbors = topology.neighbors(cell, neighbors);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int next = neighbors[i];
+                if (passable[next] && dist[next] == UNREACHABLE) {
+                    dist[next] = dist[cell] + 1;
+                    if (parents != null) parents[next] = cell;
+                    order[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    private static final class Found {
+        final int candidate;
+        final List<Cell> path;
+
+        Found(int candidate, List<Cell> path) {
+            this.candidate = candidate;
+            this.path = path;
+        }
+
+        // shortest path, then first candidate, so the answer doesn't depend on scheduling
+        static Found better(final Found a, final Found b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (b.path.size() < a.path.size() || (b.path.size() == a.path.size() && b.candidate < a.candidate)) {
+                return b;
+            }
+            return a;
+        }
+    }
+
+    private final class SearchTask extends RecursiveTask<Found> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Plan.ClonePlacement>> candidates;
+        private final int from;
+        private final int to;
+        private final AtomicInteger bestSteps;
+        private final AtomicLong statesExpanded;
+
+        SearchTask(List<List<Plan.ClonePlacement>> candidates, int from, int to, AtomicInteger bestSteps, AtomicLong statesExpanded) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.bestSteps = bestSteps;
+            this.statesExpanded = statesExpanded;
+        }
+
+        @Override
+        protected Found compute() {
+            if (to - from > CANDIDATES_PER_TASK) {
+                final int mid = (from + to) >>> 1;
+                final SearchTask left = new SearchTask(candidates, from, mid, bestSteps, statesExpanded);
+                final SearchTask right = new SearchTask(candidates, mid, to, bestSteps, statesExpanded);
+                right.fork();
+                final Found leftFound = left.compute();
+                return Found.better(leftFound, right.join());
+            }
+
+            final Search search = new Search();
+            Found best = null;
+            for (int i = from; i < to; i++) {
+                // ties are still searched so the lowest candidate wins them, and guards only need running that long
+                final int limit = bestSteps.get();
+                final CoverageTimeline timeline = new CoverageTimeline(schedule, topology, candidates.get(i), limit);
+                final List<Cell> path = search.run(timeline, limit);
+                if (path != null) {
+                    best = Found.better(best, new Found(i, path));
+                    int cur;
+                    while (path.size() < (cur = bestSteps.get()) && !bestSteps.compareAndSet(cur, path.size())) {
+                        // retry
+                    }
+                }
+            }
+            statesExpanded.addAndGet(search.expanded);
+            return best;
+        }
+    }
+
+    // A* over (cell, path index) against one timeline. Keeps its arrays between runs
+    private final class Search {
+        private final int numCells = passable.length;
+        private final long[] visited = new long[(int)(((long)(maxSteps + 1) * numCells + 63) >> 6)];
+        private final byte[] parentDir = new byte[(maxSteps + 1) * numCells]; // direction from a state's cell back to its parent's
+        private final int[] neighbors = new int[topology.numDirections()];
+        private long[] heap = new long[64];
+        private int heapSize;
+        long expanded;
+
+        // the player's path to the end in at most limit moves, or null
+        List<Cell> run(final CoverageTimeline timeline, final int limit) {
+            Arrays.fill(visited, 0);
+            heapSize = 0;
+            if (timeline.isWatched(0, start) || distToEnd[start] > limit) {
+                return null;
+            }
+            visit(0, start);
+            push(key(distToEnd[start], 0, start));
+
+            while (heapSize > 0) {
+                final long key = pop();
+                final int cell = (int)(key & FIELD_MASK);
+                final int step = maxSteps - (int)((key >>> CELL_BITS) & FIELD_MASK);
+                if (cell == end) {
+                    return reconstruct(step, cell);
+                }
+                expanded++;
+
+                final int nextStep = step + 1;
+                final int numNeighbors = topology.neighbors(cell, neighbors);
+                for (int i = 0; i < numNeighbors; i++) {
+                    final int next = neighbors[i];
+                    if (!passable[next] || nextStep + distToEnd[next] > limit) continue;
+                    // reaching the end wins before any guard gets to look
+                    if (next != end && timeline.isWatched(nextStep, next)) continue;
+                    if (visit(nextStep, next)) {
+                        parentDir[nextStep * numCells + next] = (byte)topology.getDirectionVector(next, cell);
+                        push(key(nextStep + distToEnd[next], nextStep, next));
+                    }
+                }
+            }
+            return null;
+        }
+
+        // marks the state visited, returns false if it already was
+        private boolean visit(final int step, final int cell) {
+            final long state = (long)step * numCells + cell;
+            final int word = (int)(state >> 6);
+            final long bit = 1L << state;
+            if ((visited[word] & bit) != 0) {
+                return false;
+            }
+            visited[word] |= bit;
+            return true;
+        }
+
+        private List<Cell> reconstruct(int step, int cell) {
+            final List<Cell> path = new ArrayList<>(step);
+            while (step > 0) {
+                path.add(topology.getCell(cell));
+                cell = topology.getNeighborInDirection(cell, parentDir[step * numCells + cell]);
+                step--;
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        private long key(final int f, final int step, final int cell) {
+            return ((long)f << (CELL_BITS + STEP_BITS)) | ((long)(maxSteps - step) << CELL_BITS) | cell;
+        }
+
+        private void push(final long key) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heap.length * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (heap[parent] <= key) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = key;
+        }
+
+        private long pop() {
+            final long top = heap[0];
+            final long last = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+                if (heap[child] >= last) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
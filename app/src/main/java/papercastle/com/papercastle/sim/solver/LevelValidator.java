@@ -0,0 +1,249 @@
+package papercastle.com.papercastle.sim.solver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.LevelPack;
+import papercastle.com.papercastle.sim.LevelReader;
+import papercastle.com.papercastle.sim.Simulation;
+
+/**
+ * Command line check of whole level packs: each level must build a Simulation (one start, one end, known clone
+ * types, valid guards) and be winnable, and its par time is the solver's fastest completion.
+ * Levels are checked in parallel and reported one JSON object per line, in input order. LevelSolver only tries
+ * some plans, so a level it can't win is no_solution_in_search with the search's limits in its line, and only
+ * unsolvable when walls keep the player from the end.
+ *
+ *   LevelValidator [--out=report.jsonl] [--max-steps=N] [pack.txt|pack.pack...]
+ *
+ * With no packs it checks Level.ALL_LEVELS. Exits with 1 if any level isn't ok.
+ */
+
+public final class LevelValidator {
+
+    public static final String OK = "ok";
+    public static final String INVALID = "invalid"; // breaks a structural rule, or the pack couldn't be read
+    public static final String TOO_LARGE = "too_large"; // valid, but past what LevelSolver can search
+    public static final String NO_SOLUTION_IN_SEARCH = "no_solution_in_search";
+    public static final String UNSOLVABLE = "unsolvable";
+    public static final String ERROR = "error"; // anything unexpected, including the solver disagreeing with Simulation
+
+    private static final class Input {
+        final String source;
+        final String name;
+        final Level level;
+        final String readError;
+
+        Input(String source, String name, Level level, String readError) {
+            this.source = source;
+            this.name = name;
+            this.level = level;
+            this.readError = readError;
+        }
+    }
+
+    private LevelValidator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String out = null;
+        int maxSteps = LevelSolver.DEFAULT_MAX_STEPS;
+        final List<String> packs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else if (arg.startsWith("--max-steps=")) {
+                maxSteps = Integer.parseInt(arg.substring("--max-steps=".length()));
+            } else {
+                packs.add(arg);
+            }
+        }
+
+        final PrintWriter report = out == null
+                ? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : new PrintWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8));
+        final int notOk = validate(packs, maxSteps, report);
+        if (out != null) {
+            report.close();
+        }
+        if (notOk > 0) {
+            System.exit(1);
+        }
+    }
+
+    // checks every level of the packs, or Level.ALL_LEVELS if there are none, writing a line for each to report.
+    // Returns how many weren't ok
+    static int validate(final List<String> packs, final int maxSteps, final PrintWriter report) throws IOException {
+        final List<Input> inputs = new ArrayList<>();
+        for (String pack : packs) {
+            readPack(pack, inputs);
+        }
+        if (packs.isEmpty()) {
+            for (int i = 0; i < Level.ALL_LEVELS.length; i++) {
+                inputs.add(new Input("builtin", Integer.toString(i), Level.ALL_LEVELS[i], null));
+            }
+        }
+
+        final long startNs = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool();
+        final List<ValidateTask> tasks = new ArrayList<>();
+        for (Input input : inputs) {
+            tasks.add(new ValidateTask(input, maxSteps, pool));
+        }
+        for (ValidateTask task : tasks) {
+            pool.execute(task);
+        }
+
+        int notOk = 0;
+        for (ValidateTask task : tasks) {
+            report.println(task.join());
+            if (!task.ok) {
+                notOk++;
+            }
+        }
+        report.flush();
+        pool.shutdown();
+
+        System.err.println(inputs.size() + " levels, " + notOk + " not ok, " + (System.nanoTime() - startNs) / 1000000 + "ms");
+        return notOk;
+    }
+
+    private static void readPack(final String path, final List<Input> inputs) throws IOException {
+        if (LevelPack.isPack(new File(path))) {
+            final LevelPack pack = LevelPack.open(new File(path));
+            for (int i = 0; i < pack.size(); i++) {
+                try {
+                    inputs.add(new Input(path, pack.getName(i), pack.getLevel(i), null));
+                } catch (IllegalArgumentException e) {
+                    inputs.add(new Input(path, Integer.toString(i), null, e.getMessage()));
+                }
+            }
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            for (LevelReader.Entry entry : LevelReader.read(in)) {
+                inputs.add(new Input(path, entry.name, entry.level, entry.error));
+            }
+        }
+    }
+
+    private static final class ValidateTask extends RecursiveTask<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final Input input;
+        private final int maxSteps;
+        private final ForkJoinPool pool;
+        boolean ok; // read after join
+
+        ValidateTask(Input input, int maxSteps, ForkJoinPool pool) {
+            this.input = input;
+            this.maxSteps = maxSteps;
+            this.pool = pool;
+        }
+
+        @Override
+        protected String compute() {
+            final Json json = new Json();
+            json.field("source", input.source).field("level", input.name);
+            if (input.level == null) {
+                return json.field("status", INVALID).field("message", input.readError).end();
+            }
+
+            final long startNs = System.nanoTime();
+            try {
+                new Simulation(input.level);
+            } catch (IllegalArgumentException e) {
+                return json.field("status", INVALID).field("message", e.getMessage()).end();
+            } catch (RuntimeException e) {
+                return json.field("status", ERROR).field("message", e.toString()).end();
+            }
+
+            final LevelSolver solver;
+            try {
+                solver = new LevelSolver(input.level, maxSteps, LevelSolver.DEFAULT_MAX_DECOY_TARGETS, LevelSolver.DEFAULT_MAX_DECOY_DELAY);
+            } catch (IllegalArgumentException e) {
+                // the level built a Simulation, so this is one of the solver's own limits
+                return json.field("status", TOO_LARGE).field("message", e.getMessage()).end();
+            } catch (RuntimeException e) {
+                return json.field("status", ERROR).field("message", e.toString()).end();
+            }
+
+            try {
+                final SolverResult result = solver.solve(pool);
+                ok = result.isSolved();
+                json.field("status", ok ? OK : result.isProvenUnsolvable() ? UNSOLVABLE : NO_SOLUTION_IN_SEARCH);
+                if (result.isSolved()) {
+                    json.field("par_ms", result.getCompletionMs());
+                    json.field("clones", result.getPlan().getClones().size());
+                } else if (!result.isProvenUnsolvable()) {
+                    json.field("max_steps", result.getMaxSteps())
+                            .field("max_clones", result.getMaxClones())
+                            .field("max_decoy_targets", result.getMaxDecoyTargets())
+                            .field("max_decoy_delay", result.getMaxDecoyDelay());
+                }
+                return json.field("bound_ms", result.getBoundMs())
+                        .field("candidates", result.getNumCandidates())
+                        .field("states", result.getStatesExpanded())
+                        .field("solve_ms", (System.nanoTime() - startNs) / 1000000)
+                        .end();
+            } catch (RuntimeException e) {
+                return json.field("status", ERROR).field("message", e.toString()).end();
+            }
+        }
+    }
+
+    // just enough json for flat report lines
+    private static final class Json {
+        private final StringBuilder sb = new StringBuilder("{");
+
+        Json field(final String name, final long value) {
+            key(name);
+            sb.append(value);
+            return this;
+        }
+
+        Json field(final String name, final String value) {
+            key(name);
+            if (value == null) {
+                sb.append("null");
+                return this;
+            }
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int)c));
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+            return this;
+        }
+
+        private void key(final String name) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('"').append(name).append("\":");
+        }
+
+        String end() {
+            return sb.append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package papercastle.com.papercastle.sim.solver;
+
+import papercastle.com.papercastle.sim.Plan;
+
+/**
+ * What LevelSolver found: the fastest plan and how long it takes to win, or that there is none among the plans it
+ * searched. Not finding one only proves the level unsolvable when the end can't be reached at all, so the search's
+ * limits are kept here with the result.
+ */
+
+public final class SolverResult {
+
+    private final Plan plan;
+    private final long completionMs;
+    private final long boundMs;
+    private final int numCandidates;
+    private final long statesExpanded;
+    private final boolean endUnreachable;
+    private final int maxSteps;
+    private final int maxClones;
+    private final int maxDecoyTargets;
+    private final int maxDecoyDelay;
+
+    SolverResult(Plan plan, long completionMs, long boundMs, int numCandidates, long statesExpanded, boolean endUnreachable,
+                 int maxSteps, int maxClones, int maxDecoyTargets, int maxDecoyDelay) {
+        this.plan = plan;
+        this.completionMs = completionMs;
+        this.boundMs = boundMs;
+        this.numCandidates = numCandidates;
+        this.statesExpanded = statesExpanded;
+        this.endUnreachable = endUnreachable;
+        this.maxSteps = maxSteps;
+        this.maxClones = maxClones;
+        this.maxDecoyTargets = maxDecoyTargets;
+        this.maxDecoyDelay = maxDecoyDelay;
+    }
+
+    public boolean isSolved() {
+        return plan != null;
+    }
+
+    // null if not solved
+    public Plan getPlan() {
+        return plan;
+    }
+
+    // time from starting execution to winning, or -1 if not solved
+    public long getCompletionMs() {
+        return completionMs;
+    }
+
+    // the longest completion time that was searched
+    public long getBoundMs() {
+        return boundMs;
+    }
+
+    // how many clone placements were tried, including placing none
+    public int getNumCandidates() {
+        return numCandidates;
+    }
+
+    public long getStatesExpanded() {
+        return statesExpanded;
+    }
+
+    // true only if no plan at all can win: walls keep the player from the end. Otherwise an unsolved result just
+    // means nothing within the limits below wins
+    public boolean isProvenUnsolvable() {
+        return endUnreachable;
+    }
+
+    // the most moves the player's path was allowed
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    // the most clones placed, always next to the start. 0 if the level has none
+    public int getMaxClones() {
+        return maxClones;
+    }
+
+    // how many watched cells each clone type and starting cell was walked to, nearest first
+    public int getMaxDecoyTargets() {
+        return maxDecoyTargets;
+    }
+
+    // the most times a clone stepped back to the start and out again before walking to its target
+    public int getMaxDecoyDelay() {
+        return maxDecoyDelay;
+    }
+
+    public String describeSearch() {
+        return "player moves <= " + maxSteps + ", clones <= " + maxClones + " next to the start, decoy targets <= "
+                + maxDecoyTargets + ", decoy delay <= " + maxDecoyDelay;
+    }
+
+    @Override
+    public String toString() {
+        if (isProvenUnsolvable()) {
+            return "unsolvable, the end can't be reached";
+        }
+        if (!isSolved()) {
+            return "no solution within " + boundMs + "ms searching " + describeSearch();
+        }
+        return "solved in " + completionMs + "ms:\n" + plan;
+    }
+}
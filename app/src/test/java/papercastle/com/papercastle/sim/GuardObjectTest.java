@@ -0,0 +1,77 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GuardObjectTest {
+
+    @Test
+    public void rayStopsAtWalls() {
+        final GridTopology t = new GridTopology(6, 1);
+        final Level.Terrain[][] terrain = ShadowCasterTest.open(6, 1);
+        terrain[0][4] = Level.Terrain.WALL;
+        final GuardObject guard = new GuardObject(new Cell(1, 0), 5, 0);
+        guard.computeLOS(t, terrain);
+        assertEquals(2, guard.getCurLos());
+        assertEquals(cells(t, 1, 0, 2, 0, 3, 0), guard.getPointsInLOS(t));
+        assertEquals(3, guard.getNumLOSCells());
+        assertTrue(guard.isInLOS(t.indexOf(3, 0)));
+        assertFalse(guard.isInLOS(t.indexOf(5, 0)));
+    }
+
+    @Test
+    public void coneSeesTheCellsItCasts() {
+        final GridTopology t = new GridTopology(9, 9);
+        final Level.Terrain[][] terrain = ShadowCasterTest.open(9, 9);
+        terrain[6][4] = Level.Terrain.WALL;
+        final GuardObject guard = new GuardObject(new Cell(4, 8), 4, 1, ShadowCaster.MAX_CONE);
+        guard.computeLOS(t, terrain);
+
+        final List<Cell> points = guard.getPointsInLOS(t);
+        assertEquals(guard.getNumLOSCells(), points.size());
+        assertEquals(new Cell(4, 8), points.get(0));
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(t.indexOf(points.get(i)), guard.getLOSCell(i));
+            assertTrue(Level.isPassable(terrain, points.get(i).x, points.get(i).y));
+        }
+        // not the cells straight ahead, which the wall hides
+        assertFalse(points.contains(new Cell(4, 6)));
+        assertFalse(points.contains(new Cell(4, 5)));
+        assertTrue(points.contains(new Cell(0, 4)));
+        // how far it can see, not how many cells
+        assertEquals(4, guard.getCurLos());
+    }
+
+    @Test
+    public void coneCurLosIsItsFurthestRow() {
+        // a wall across everything but the first row
+        final GridTopology t = new GridTopology(7, 7);
+        final Level.Terrain[][] terrain = ShadowCasterTest.open(7, 7);
+        for (int x = 0; x < 7; x++) {
+            terrain[4][x] = Level.Terrain.WALL;
+        }
+        final GuardObject guard = new GuardObject(new Cell(3, 6), 5, 1, ShadowCaster.MAX_CONE);
+        guard.computeLOS(t, terrain);
+        assertEquals(1, guard.getCurLos());
+        assertEquals(new HashSet<>(cells(t, 3, 6, 2, 5, 3, 5, 4, 5)), new HashSet<>(guard.getPointsInLOS(t)));
+
+        // facing the map's edge it only sees itself
+        final GuardObject edge = new GuardObject(new Cell(3, 6), 5, 3, ShadowCaster.MAX_CONE);
+        edge.computeLOS(t, terrain);
+        assertEquals(0, edge.getCurLos());
+        assertEquals(cells(t, 3, 6), edge.getPointsInLOS(t));
+    }
+
+    private static List<Cell> cells(final Topology t, final int... xy) {
+        final List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < xy.length; i += 2) {
+            cells.add(t.getCell(t.indexOf(xy[i], xy[i + 1])));
+        }
+        return cells;
+    }
+}
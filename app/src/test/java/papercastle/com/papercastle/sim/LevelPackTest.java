@@ -0,0 +1,205 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LevelPackTest {
+
+    // Level.ALL_LEVELS in the text format
+    private static final String BUILT_IN = ""
+            + "level 0\n"
+            + "clones 1 0 2\n"
+            + "S........\n"
+            + ".........\n"
+            + "..E#.....\n"
+            + ".........\n"
+            + ".........\n"
+            + ".........\n"
+            + "guard rotating 1 3 4 restart 0 1 2 3\n"
+            + "guard rotating 5 5 2 bounce 0 1 2\n"
+            + "guard patrolling 2 restart 4,4 4,3 3,3 3,4 4,4\n"
+            + "guard patrolling 1 bounce 8,2 8,1 7,1\n"
+            + "level 1\n"
+            + "clones 20\n"
+            + ".....#...\n"
+            + "...#.#...\n"
+            + "..S#.###.\n"
+            + "####.#E..\n"
+            + ".....###.\n"
+            + ".........\n"
+            + "guard stationary 0 5 4 0\n"
+            + "guard stationary 0 2 5 1\n"
+            + "guard stationary 8 0 1 2\n"
+            + "guard stationary 6 0 4 3\n";
+
+    private static final int TICKS = 3000;
+
+    @Test
+    public void builtInLevelsRoundTripFromText() throws Exception {
+        final List<String> names = new ArrayList<>();
+        final List<Level> levels = new ArrayList<>();
+        for (LevelReader.Entry entry : LevelReader.read(new BufferedReader(new StringReader(BUILT_IN)))) {
+            assertNull(entry.error);
+            names.add(entry.name);
+            levels.add(entry.level);
+        }
+        assertEquals(Level.ALL_LEVELS.length, levels.size());
+        for (int i = 0; i < levels.size(); i++) {
+            assertSameLevel(Level.ALL_LEVELS[i], levels.get(i));
+        }
+
+        final LevelPack pack = new LevelPack(compile(names, levels));
+        assertEquals(Level.ALL_LEVELS.length, pack.size());
+        for (int i = 0; i < pack.size(); i++) {
+            assertEquals(Integer.toString(i), pack.getName(i));
+            assertEquals(i, pack.indexOf(Integer.toString(i)));
+            assertSameLevel(Level.ALL_LEVELS[i], pack.getLevel(i));
+        }
+        assertEquals(-1, pack.indexOf("missing"));
+    }
+
+    @Test
+    public void conesRoundTrip() throws Exception {
+        final Level level = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+                {Level.Terrain.START, Level.Terrain.NONE, Level.Terrain.NONE, Level.Terrain.NONE},
+                {Level.Terrain.NONE, Level.Terrain.NONE, Level.Terrain.WALL, Level.Terrain.NONE},
+                {Level.Terrain.NONE, Level.Terrain.NONE, Level.Terrain.NONE, Level.Terrain.END}
+        }, new int[] {1}, new GuardObject.GuardFactory[] {
+                new GuardObject.StationaryGuardFactory(new Cell(3, 0), 3, 2, 90),
+                new RotatingGuardObject.RotatingGuardFactory(new Cell(0, 2), 2, new int[] {0, 1}, false, 45),
+                new PatrollingGuardObject.PatrollingGuardFactory(new Cell[] {new Cell(1, 1), new Cell(1, 2)}, 2, false, 60)
+        });
+        final LevelPack pack = new LevelPack(compile(Arrays.asList("cones"), Arrays.asList(level)));
+        final Level read = pack.getLevel(0);
+        assertEquals(90, ((GuardObject.StationaryGuardFactory)read.getGuards()[0]).cone);
+        assertEquals(45, ((RotatingGuardObject.RotatingGuardFactory)read.getGuards()[1]).cone);
+        assertEquals(60, ((PatrollingGuardObject.PatrollingGuardFactory)read.getGuards()[2]).cone);
+        assertSameLevel(level, read);
+    }
+
+    @Test
+    public void readsVersionOnePacksWithoutCones() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final byte[] name = "old".getBytes(StandardCharsets.UTF_8);
+        final int levelStart = LevelPack.HEADER_BYTES + 4 * 2;
+        out.writeInt(LevelPack.MAGIC);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeInt(1);
+        out.writeInt(levelStart);
+        final int levelEndOffset = bytes.size();
+        out.writeInt(0); // filled in below
+
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeByte(Level.CSType.GRID.ordinal());
+        out.writeShort(4);
+        out.writeShort(1);
+        // S . . E, 2 bits each from the low bits up
+        out.writeByte(Level.Terrain.START.ordinal() | Level.Terrain.END.ordinal() << 6);
+        out.writeByte(1);
+        out.writeShort(2);
+        out.writeShort(3);
+        out.writeByte(LevelPack.GUARD_STATIONARY);
+        out.writeShort(2);
+        out.writeShort(0);
+        out.writeShort(1); // los, then no cone
+        out.writeByte(2); // dir
+        out.writeByte(LevelPack.GUARD_ROTATING);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeShort(2);
+        out.writeByte(1); // restart
+        out.writeByte(2);
+        out.writeByte(0);
+        out.writeByte(2);
+        out.writeByte(LevelPack.GUARD_PATROLLING);
+        out.writeShort(1);
+        out.writeByte(0); // bounce
+        out.writeShort(2);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeShort(2);
+        out.writeShort(0);
+        out.flush();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(levelEndOffset, buffer.limit());
+
+        final LevelPack pack = new LevelPack(buffer);
+        assertEquals(1, pack.size());
+        assertEquals("old", pack.getName(0));
+        final Level expected = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+                {Level.Terrain.START, Level.Terrain.NONE, Level.Terrain.NONE, Level.Terrain.END}
+        }, new int[] {2}, new GuardObject.GuardFactory[] {
+                new GuardObject.StationaryGuardFactory(new Cell(2, 0), 1, 2),
+                new RotatingGuardObject.RotatingGuardFactory(new Cell(1, 0), 2, new int[] {0, 2}, true),
+                new PatrollingGuardObject.PatrollingGuardFactory(new Cell[] {new Cell(1, 0), new Cell(2, 0)}, 1, false)
+        });
+        final Level read = pack.getLevel(0);
+        for (GuardObject.GuardFactory guard : read.getGuards()) {
+            assertEquals(0, cone(guard));
+        }
+        assertSameLevel(expected, read);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNewerVersions() throws Exception {
+        final ByteBuffer buffer = compile(Arrays.asList("0"), Arrays.asList(Level.ALL_LEVELS[0]));
+        buffer.putShort(4, (short)(LevelPack.VERSION + 1));
+        new LevelPack(buffer);
+    }
+
+    private static ByteBuffer compile(final List<String> names, final List<Level> levels) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelPackCompiler.write(names, levels, out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static int cone(final GuardObject.GuardFactory guard) {
+        if (guard instanceof GuardObject.StationaryGuardFactory) {
+            return ((GuardObject.StationaryGuardFactory)guard).cone;
+        } else if (guard instanceof RotatingGuardObject.RotatingGuardFactory) {
+            return ((RotatingGuardObject.RotatingGuardFactory)guard).cone;
+        }
+        return ((PatrollingGuardObject.PatrollingGuardFactory)guard).cone;
+    }
+
+    // guard factories don't have equals, so levels are the same if they look the same and run the same: every
+    // tick hashes the same and every guard sees the same cells
+    private static void assertSameLevel(final Level expected, final Level actual) {
+        assertEquals(expected.getCsType(), actual.getCsType());
+        assertArrayEquals(expected.getLayout(), actual.getLayout());
+        assertArrayEquals(expected.getCloneTypes(), actual.getCloneTypes());
+        assertEquals(expected.getGuards().length, actual.getGuards().length);
+
+        final Simulation a = new Simulation(expected);
+        final Simulation b = new Simulation(actual);
+        a.switchToExecute();
+        b.switchToExecute();
+        for (int t = 0; t < TICKS && !a.isDone(); t++) {
+            a.tick();
+            b.tick();
+            assertEquals("tick " + a.getTickCount(), a.stateHash(), b.stateHash());
+            for (int g = 0; g < a.getNumGuards(); g++) {
+                final GuardObject ga = a.getGuard(g);
+                final GuardObject gb = b.getGuard(g);
+                assertEquals(ga.getNumLOSCells(), gb.getNumLOSCells());
+                for (int i = 0; i < ga.getNumLOSCells(); i++) {
+                    assertEquals(ga.getLOSCell(i), gb.getLOSCell(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+
+public class PatrollingGuardObjectTest {
+
+    private static final Cell[] BOUNCE = {new Cell(0, 0), new Cell(1, 0), new Cell(2, 0), new Cell(2, 1)};
+    private static final Cell[] LOOP = {new Cell(0, 0), new Cell(1, 0), new Cell(1, 1), new Cell(0, 1), new Cell(0, 0)};
+
+    @Test
+    public void bouncingVisitsTheSameCellsAsReversingTheList() {
+        final Topology t = new GridTopology(4, 3);
+        assertSameWalk(new PatrollingGuardObject(BOUNCE, 1, false, t), new ListPatrol(BOUNCE, false, t), 4000);
+    }
+
+    @Test
+    public void restartingVisitsTheSameCellsAsStartingTheListOver() {
+        final Topology t = new GridTopology(4, 3);
+        assertSameWalk(new PatrollingGuardObject(LOOP, 1, true, t), new ListPatrol(LOOP, true, t), 4000);
+    }
+
+    @Test
+    public void hexPatrolsToo() {
+        final Topology t = new HexTopology(5, 5);
+        final Cell[] patrol = {new Cell(1, 1), new Cell(2, 1), new Cell(2, 2), new Cell(1, 3)};
+        for (int i = 1; i < patrol.length; i++) {
+            assertEquals(1, t.distance(patrol[i - 1], patrol[i]));
+        }
+        assertSameWalk(new PatrollingGuardObject(patrol, 1, false, t), new ListPatrol(patrol, false, t), 3000);
+    }
+
+    @Test
+    public void periodBringsItBack() {
+        final Topology t = new GridTopology(4, 3);
+        for (Cell[] patrol : new Cell[][] {BOUNCE, LOOP}) {
+            final PatrollingGuardObject guard = new PatrollingGuardObject(patrol, 1, patrol == LOOP, t);
+            final long period = guard.getPeriodTicks(Simulation.TICK_MS);
+            final long[] start = new long[guard.stateSize()];
+            guard.saveState(start, 0);
+            for (long tick = 0; tick < period; tick++) {
+                guard.update(Simulation.TICK_MS);
+            }
+            final long[] after = new long[guard.stateSize()];
+            guard.saveState(after, 0);
+            // prevPathPos is where it was a tick ago, so it's the only thing that can differ
+            after[1] = start[1];
+            assertArrayEquals(start, after);
+        }
+    }
+
+    // restoring a snapshot from before a turnaround, or from while walking back, comes out the same as going straight
+    @Test
+    public void restoringAcrossATurnaroundHashesTheSame() {
+        final Level level = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+                {NONE, NONE, NONE, NONE},
+                {NONE, NONE, NONE, NONE},
+                {START, NONE, NONE, END}
+        }, new int[0], new GuardObject.GuardFactory[] {
+                new PatrollingGuardObject.PatrollingGuardFactory(BOUNCE, 1, false)
+        });
+        final int ticks = 3000;
+        final long[] straight = new long[ticks];
+        final Simulation sim = new Simulation(level);
+        sim.switchToExecute();
+        for (int i = 0; i < ticks; i++) {
+            sim.tick();
+            straight[i] = sim.stateHash();
+        }
+        assertEquals(Simulation.GameState.EXECUTE, sim.getGameState());
+
+        // a leg is 3 cells at half a cell a second, so it turns at 600 and 1200
+        for (int at : new int[] {590, 600, 899, 1195}) {
+            final Simulation restored = new Simulation(level);
+            restored.switchToExecute();
+            while (restored.getTickCount() < at) {
+                restored.tick();
+            }
+            final Simulation.Snapshot snapshot = new Simulation.Snapshot();
+            restored.save(snapshot);
+            for (int i = 0; i < 700; i++) {
+                restored.tick();
+            }
+            restored.restore(snapshot);
+            assertEquals(straight[at - 1], restored.stateHash());
+            while (restored.getTickCount() < ticks) {
+                restored.tick();
+                assertEquals("from " + at, straight[(int)restored.getTickCount() - 1], restored.stateHash());
+            }
+        }
+    }
+
+    private static void assertSameWalk(final PatrollingGuardObject guard, final ListPatrol expected, final int ticks) {
+        final Topology t = expected.topology;
+        int turns = 0;
+        for (int tick = 1; tick <= ticks; tick++) {
+            guard.update(Simulation.TICK_MS);
+            turns += expected.update(Simulation.TICK_MS) ? 1 : 0;
+            assertEquals("tick " + tick, expected.getCurCell(), guard.getCurCell());
+            assertEquals("tick " + tick, expected.getDir(), guard.getDir());
+            assertEquals("tick " + tick, expected.path.get(expected.path.size() - 1), guard.getLastPathPoint());
+            assertEquals("tick " + tick, expected.pos, guard.getPathPos());
+            assertEquals(t.indexOf(guard.getCurCell()), guard.getCurCellIndex(t));
+        }
+        assertTrue(turns >= 2);
+    }
+
+    // a patrol walked the way it was before paths were packed: a list of cells, replaced by a reversed copy or
+    // the patrol again at each end
+    private static final class ListPatrol {
+        final Cell[] patrol;
+        final boolean restart;
+        final Topology topology;
+        List<Cell> path;
+        long pos;
+
+        ListPatrol(final Cell[] patrol, final boolean restart, final Topology topology) {
+            this.patrol = patrol;
+            this.restart = restart;
+            this.topology = topology;
+            path = new ArrayList<>(Arrays.asList(patrol));
+        }
+
+        // returns whether it reached an end
+        boolean update(final long ms) {
+            pos += GameObject.pathStep(0.5, ms);
+            if (pos < (path.size() - 1) * GameObject.PATH_UNITS) {
+                return false;
+            }
+            if (restart) {
+                path = new ArrayList<>(Arrays.asList(patrol));
+            } else {
+                final List<Cell> reversed = new ArrayList<>(path);
+                Collections.reverse(reversed);
+                path = reversed;
+            }
+            pos = 0;
+            return true;
+        }
+
+        Cell getCurCell() {
+            final long index = (pos + GameObject.PATH_UNITS / 2) / GameObject.PATH_UNITS;
+            return path.get((int)Math.min(index, path.size() - 1));
+        }
+
+        int getDir() {
+            final int index = (int)Math.min(pos / GameObject.PATH_UNITS, path.size() - 2);
+            return topology.getDirectionVector(path.get(index), path.get(index + 1));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class ReplayerTest {
+
+    private static final Level LEVEL = Level.ALL_LEVELS[0];
+    private static final int MAX_TICKS = 5000;
+    private static final long LATE_TICK = 50; // when the session pauses to extend the player's path
+
+    @Test
+    public void recordedSessionReplaysTheSame() throws Exception {
+        final Recording recording = record(cell(2, 3));
+        assertTrue(recording.getNumTicks() > LATE_TICK);
+        assertNotNull(recording.getResult());
+
+        final Replayer.Result result = Replayer.replay(LEVEL, recording);
+        assertTrue(result.message, result.matched);
+        assertEquals(-1, result.mismatchTick);
+        assertEquals(recording.getResult(), result.gameState);
+        assertEquals(recording.getNumTicks(), result.ticks);
+    }
+
+    @Test
+    public void writtenRecordingReadsBackTheSame() throws Exception {
+        final Recording recording = record(cell(2, 3));
+        recording.setLevelName("0");
+        final StringWriter text = new StringWriter();
+        recording.write(text);
+        final Recording read = Recording.read(new BufferedReader(new StringReader(text.toString())));
+
+        assertEquals("0", read.getLevelName());
+        assertEquals(recording.getResult(), read.getResult());
+        assertEquals(recording.getNumCommands(), read.getNumCommands());
+        for (int i = 0; i < recording.getNumCommands(); i++) {
+            assertEquals(recording.getCommandTick(i), read.getCommandTick(i));
+            assertEquals(recording.getCommand(i), read.getCommand(i));
+        }
+        assertEquals(recording.getNumTicks(), read.getNumTicks());
+        for (long t = 1; t <= recording.getNumTicks(); t++) {
+            assertEquals(recording.getHash(t), read.getHash(t));
+        }
+        assertTrue(Replayer.replay(LEVEL, read).matched);
+    }
+
+    @Test
+    public void changedCommandIsAMismatchAtTheTickAfterIt() throws Exception {
+        final Recording recording = record(cell(2, 3));
+        final Recording changed = new Recording();
+        for (int i = 0; i < recording.getNumCommands(); i++) {
+            long command = recording.getCommand(i);
+            if (recording.getCommandTick(i) == LATE_TICK && Command.type(command) == Command.EXTEND_PATH) {
+                command = Command.extendPath(0, cell(1, 2));
+            }
+            changed.recordCommand(recording.getCommandTick(i), command);
+        }
+        for (long t = 1; t <= recording.getNumTicks(); t++) {
+            changed.recordTick(t, recording.getHash(t));
+        }
+        changed.setResult(recording.getResult());
+
+        final Replayer.Result result = Replayer.replay(LEVEL, changed);
+        assertFalse(result.matched);
+        assertEquals(LATE_TICK + 1, result.mismatchTick);
+        assertEquals(LATE_TICK + 1, result.ticks);
+    }
+
+    @Test
+    public void changedResultIsAMismatch() throws Exception {
+        final Recording recording = record(cell(2, 3));
+        recording.setResult(recording.getResult() == Simulation.GameState.SUCCESS
+                ? Simulation.GameState.FAILURE : Simulation.GameState.SUCCESS);
+        final Replayer.Result result = Replayer.replay(LEVEL, recording);
+        assertFalse(result.matched);
+        assertEquals(-1, result.mismatchTick);
+    }
+
+    // plays LEVEL the way LevelState does, recording each command before the tick after it and the hash after
+    // every tick: a clone is placed and given a path, the player heads for the end, and at LATE_TICK it's paused
+    // to extend the player's path to lateCell
+    private static Recording record(final int lateCell) {
+        final Simulation sim = new Simulation(LEVEL);
+        final Recording recording = new Recording();
+        apply(sim, recording, Command.startClonePlacement(0));
+        apply(sim, recording, Command.placeClone(cell(0, 1)));
+        apply(sim, recording, Command.select(1));
+        apply(sim, recording, Command.extendPath(1, cell(0, 2)));
+        apply(sim, recording, Command.select(0));
+        apply(sim, recording, Command.extendPath(0, cell(1, 0)));
+        apply(sim, recording, Command.extendPath(0, cell(2, 0)));
+        apply(sim, recording, Command.extendPath(0, cell(2, 1)));
+        apply(sim, recording, Command.extendPath(0, cell(2, 2)));
+        apply(sim, recording, Command.execute());
+        while (!sim.isDone() && sim.getTickCount() < MAX_TICKS) {
+            if (sim.getTickCount() == LATE_TICK) {
+                apply(sim, recording, Command.plan());
+                apply(sim, recording, Command.select(0));
+                apply(sim, recording, Command.extendPath(0, lateCell));
+                apply(sim, recording, Command.execute());
+            }
+            sim.tick();
+            recording.recordTick(sim.getTickCount(), sim.stateHash());
+        }
+        recording.setResult(sim.getGameState());
+        return recording;
+    }
+
+    private static void apply(final Simulation sim, final Recording recording, final long command) {
+        sim.apply(command);
+        recording.recordCommand(sim.getTickCount(), command);
+    }
+
+    private static int cell(final int x, final int y) {
+        return Simulation.createTopology(LEVEL).indexOf(x, y);
+    }
+}
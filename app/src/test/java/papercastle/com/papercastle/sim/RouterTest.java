@@ -0,0 +1,125 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RouterTest {
+
+    @Test
+    public void gridRoutesAreShortest() {
+        final Random random = new Random(23);
+        for (int level = 0; level < 30; level++) {
+            final Level.Terrain[][] terrain = randomTerrain(random, 5 + random.nextInt(40), 5 + random.nextInt(40));
+            checkAgainstBfs(new GridTopology(terrain[0].length, terrain.length), terrain, random);
+        }
+    }
+
+    @Test
+    public void hexRoutesAreShortest() {
+        final Random random = new Random(29);
+        for (int level = 0; level < 30; level++) {
+            final Level.Terrain[][] terrain = randomTerrain(random, 5 + random.nextInt(40), 5 + random.nextInt(40));
+            checkAgainstBfs(new HexTopology(terrain[0].length, terrain.length), terrain, random);
+        }
+    }
+
+    @Test
+    public void walledOffCellsHaveNoRoute() {
+        final Level.Terrain[][] terrain = ShadowCasterTest.open(7, 5);
+        for (int y = 0; y < 5; y++) {
+            terrain[y][3] = Level.Terrain.WALL;
+        }
+        final GridTopology t = new GridTopology(7, 5);
+        final Router router = new Router(t, terrain);
+        assertEquals(Router.NO_ROUTE, router.findRoute(t.indexOf(0, 0), t.indexOf(6, 4)));
+        assertEquals(Router.NO_ROUTE, router.findRoute(t.indexOf(0, 0), t.indexOf(3, 2)));
+        assertEquals(Router.NO_ROUTE, router.findRoute(t.indexOf(6, 4), t.indexOf(0, 0)));
+        assertFalse(router.isConnected(t.indexOf(0, 0), t.indexOf(6, 0)));
+        assertTrue(router.isConnected(t.indexOf(0, 0), t.indexOf(2, 4)));
+        assertEquals(6, router.findRoute(t.indexOf(0, 0), t.indexOf(2, 4)));
+        assertEquals(0, router.findRoute(t.indexOf(5, 1), t.indexOf(5, 1)));
+    }
+
+    @Test
+    public void aLevelThatsAllWallsHasNoRoutes() {
+        final Level.Terrain[][] terrain = new Level.Terrain[3][3];
+        for (Level.Terrain[] row : terrain) {
+            Arrays.fill(row, Level.Terrain.WALL);
+        }
+        final GridTopology t = new GridTopology(3, 3);
+        assertEquals(Router.NO_ROUTE, new Router(t, terrain).findRoute(0, 8));
+    }
+
+    // every route from a few cells is as long as breadth first search says, a chain of passable neighbors
+    // ending where it was going, and NO_ROUTE exactly where breadth first search can't get
+    private static void checkAgainstBfs(final Topology t, final Level.Terrain[][] terrain, final Random random) {
+        final Router router = new Router(t, terrain);
+        final int numCells = t.getNumCells();
+        for (int q = 0; q < 8; q++) {
+            final int from = random.nextInt(numCells);
+            if (!Level.isPassable(terrain, t.getX(from), t.getY(from))) {
+                continue;
+            }
+            final int[] dist = bfs(t, terrain, from);
+            for (int to = 0; to < numCells; to++) {
+                final int length = router.findRoute(from, to);
+                final String where = t.getCell(from) + " to " + t.getCell(to);
+                if (dist[to] == -1) {
+                    assertEquals(where, Router.NO_ROUTE, length);
+                    continue;
+                }
+                assertEquals(where, dist[to], length);
+                assertTrue(where, router.lowerBound(from, to) <= dist[to]);
+                int prev = from;
+                for (int i = 0; i < length; i++) {
+                    final int cell = router.getRouteCell(i);
+                    assertEquals(where, 1, t.distance(prev, cell));
+                    assertTrue(where, Level.isPassable(terrain, t.getX(cell), t.getY(cell)));
+                    prev = cell;
+                }
+                assertEquals(where, to, prev);
+            }
+        }
+    }
+
+    private static int[] bfs(final Topology t, final Level.Terrain[][] terrain, final int from) {
+        final int[] dist = new int[t.getNumCells()];
+        Arrays.fill(dist, -1);
+        final int[] queue = new int[t.getNumCells()];
+        final int[] neighbors = new int[t.numDirections()];
+        dist[from] = 0;
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int cell = queue[head++];
+            final int n = t.neighbors(cell, neighbors);
+            for (int i = 0; i < n; i++) {
+                final int next = neighbors[i];
+                if (dist[next] == -1 && Level.isPassable(terrain, t.getX(next), t.getY(next))) {
+                    dist[next] = dist[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return dist;
+    }
+
+    // walls scattered at a random density, often enough to cut levels into pieces
+    private static Level.Terrain[][] randomTerrain(final Random random, final int width, final int height) {
+        final Level.Terrain[][] terrain = ShadowCasterTest.open(width, height);
+        final int density = 10 + random.nextInt(35);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextInt(100) < density) {
+                    terrain[y][x] = Level.Terrain.WALL;
+                }
+            }
+        }
+        return terrain;
+    }
+}
@@ -0,0 +1,215 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SafeRouterTest {
+
+    private static final int MAX_LOS = 5;
+    private static final int MIN_GUARD_X = MAX_LOS + 1;
+
+    // walking a safe route is never caught, whether it was planned before executing or added part way along
+    @Test
+    public void safeRoutesAreNeverCaught() {
+        final Random random = new Random(24);
+        int routes = 0;
+        for (int seed = 0; seed < 60; seed++) {
+            final Level level = randomLevel(random, 12 + random.nextInt(12), 12 + random.nextInt(12), 4 + random.nextInt(8));
+            final Simulation sim = new Simulation(level);
+            final Topology t = sim.getTopology();
+            final SafeRouter safe = safeRouter(sim, level);
+            final SelectableGameObject player = sim.getPlayerObject();
+
+            int steps = safe.findRoute(player, 0, random.nextInt(t.getNumCells()));
+            if (steps == SafeRouter.NO_ROUTE) {
+                continue;
+            }
+            routes++;
+            extend(sim, player, safe, steps);
+            sim.switchToExecute();
+            walk(sim, player, player.getPathLength() / 2, seed);
+
+            steps = safe.findRoute(player, sim.getTickCount(), random.nextInt(t.getNumCells()));
+            if (steps != SafeRouter.NO_ROUTE) {
+                routes++;
+                extend(sim, player, safe, steps);
+            }
+            walk(sim, player, player.getPathLength() - 1, seed);
+        }
+        assertTrue(routes > 40);
+    }
+
+    @Test
+    public void withoutGuardsRoutesAreTheShortest() {
+        final Random random = new Random(25);
+        for (int seed = 0; seed < 30; seed++) {
+            final Level guarded = randomLevel(random, 8 + random.nextInt(20), 8 + random.nextInt(20), 0);
+            final Level level = new Level(guarded.getCsType(), guarded.getLayout(), new int[0], new GuardObject.GuardFactory[0]);
+            final Simulation sim = new Simulation(level);
+            final Topology t = sim.getTopology();
+            final Router router = new Router(t, sim.getTerrain());
+            final SafeRouter safe = new SafeRouter(t, router, new CoverageSchedule(level));
+            final SelectableGameObject player = sim.getPlayerObject();
+            final int from = player.getCurCellIndex(t);
+            for (int to = 0; to < t.getNumCells(); to++) {
+                final int steps = router.findRoute(from, to);
+                assertEquals(t.getCell(to).toString(), steps, safe.findRoute(player, 0, to));
+                for (int i = 0; i < steps; i++) {
+                    assertEquals(t.distance(i == 0 ? from : safe.getRouteCell(i - 1), safe.getRouteCell(i)), 1);
+                }
+                if (steps > 0) {
+                    assertEquals(to, safe.getRouteCell(steps - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givingUpFallsBackToTheShortestRoute() {
+        final Level.Terrain[][] layout = ShadowCasterTest.open(30, 30);
+        layout[0][0] = Level.Terrain.START;
+        layout[29][29] = Level.Terrain.END;
+        final Level level = new Level(Level.CSType.GRID, layout, new int[0], new GuardObject.GuardFactory[0]);
+        final Simulation sim = new Simulation(level);
+        final Topology t = sim.getTopology();
+        final Router router = new Router(t, sim.getTerrain());
+        final CoverageSchedule schedule = new CoverageSchedule(level);
+        final SelectableGameObject player = sim.getPlayerObject();
+        final int to = t.indexOf(20, 15);
+
+        final SafeRouter patient = new SafeRouter(t, router, schedule);
+        assertEquals(35, patient.findRoute(player, 0, to));
+        // a route is at least as many states as it has steps
+        final SafeRouter impatient = new SafeRouter(t, router, schedule, SafeRouter.DEFAULT_MAX_STEPS, 10);
+        assertEquals(SafeRouter.NO_ROUTE, impatient.findRoute(player, 0, to));
+        assertEquals(35, impatient.findRouteOrShortest(player, 0, to));
+        assertEquals(35, router.findRoute(t.indexOf(0, 0), to));
+        for (int i = 0; i < 35; i++) {
+            assertEquals(router.getRouteCell(i), impatient.getRouteCell(i));
+        }
+        assertEquals(2, impatient.findRouteOrShortest(player, 0, t.indexOf(1, 1)));
+    }
+
+    // the end is always watched, so no route is safe, and searching every way there gives up at MAX_EXPANSIONS
+    @Test
+    public void noSafeRouteFallsBackToTheShortestRoute() {
+        final GuardObject.GuardFactory[] guards = {new GuardObject.StationaryGuardFactory(new Cell(39, 30), 3, 3)};
+        final Level.Terrain[][] layout = ShadowCasterTest.open(40, 40);
+        layout[0][0] = Level.Terrain.START;
+        layout[39][39] = Level.Terrain.END;
+        final Level level = new Level(Level.CSType.GRID, layout, new int[0], guards);
+        final Simulation sim = new Simulation(level);
+        final Topology t = sim.getTopology();
+        final Router router = new Router(t, sim.getTerrain());
+        final SafeRouter safe = new SafeRouter(t, router, new CoverageSchedule(level));
+        final SelectableGameObject player = sim.getPlayerObject();
+        final int to = t.indexOf(39, 32);
+
+        final long start = System.nanoTime();
+        assertEquals(SafeRouter.NO_ROUTE, safe.findRoute(player, 0, to));
+        assertTrue(System.nanoTime() - start < 2000 * 1000000L);
+        assertEquals(71, safe.findRouteOrShortest(player, 0, to));
+        assertEquals(to, safe.getRouteCell(70));
+
+        // walled off is still no route at all
+        final Level.Terrain[][] walledLayout = ShadowCasterTest.open(40, 40);
+        walledLayout[0][0] = Level.Terrain.START;
+        walledLayout[39][39] = Level.Terrain.END;
+        walledLayout[38][39] = Level.Terrain.WALL;
+        walledLayout[39][38] = Level.Terrain.WALL;
+        final Level walledLevel = new Level(Level.CSType.GRID, walledLayout, new int[0], guards);
+        final Simulation walled = new Simulation(walledLevel);
+        final SafeRouter walledSafe = new SafeRouter(t, new Router(t, walled.getTerrain()), new CoverageSchedule(walledLevel));
+        assertEquals(SafeRouter.NO_ROUTE, walledSafe.findRouteOrShortest(walled.getPlayerObject(), 0, t.indexOf(39, 39)));
+    }
+
+    private static SafeRouter safeRouter(final Simulation sim, final Level level) {
+        final Topology t = sim.getTopology();
+        return new SafeRouter(t, new Router(t, sim.getTerrain()), new CoverageSchedule(t, sim.getTerrain(), level.getGuards(), Simulation.TICK_MS));
+    }
+
+    private static void extend(final Simulation sim, final SelectableGameObject object, final SafeRouter safe, final int steps) {
+        final Topology t = sim.getTopology();
+        for (int i = 0; i < steps; i++) {
+            assertTrue(sim.extendPath(object, t.getCell(safe.getRouteCell(i))));
+        }
+    }
+
+    // ticks until object is all the way to point index of its path, which the guards can't have seen it on
+    private static void walk(final Simulation sim, final SelectableGameObject object, final int index, final int seed) {
+        while (!sim.isDone() && object.getPathPos() < index * GameObject.PATH_UNITS) {
+            sim.tick();
+            assertNotEquals("level " + seed + " at " + sim.getTickCount(), Simulation.GameState.FAILURE, sim.getGameState());
+        }
+    }
+
+    // walls, and guards that stand, turn and patrol, some with cones, with the start in a corner
+    private static Level randomLevel(final Random random, final int width, final int height, final int numGuards) {
+        final Level.Terrain[][] layout = ShadowCasterTest.open(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextInt(8) == 0) {
+                    layout[y][x] = Level.Terrain.WALL;
+                }
+            }
+        }
+        layout[0][0] = Level.Terrain.START;
+        layout[height - 1][width - 1] = Level.Terrain.END;
+        final GuardObject.GuardFactory[] guards = new GuardObject.GuardFactory[numGuards];
+        for (int g = 0; g < numGuards; g++) {
+            // further from the start than any guard sees, since a route doesn't check where it starts
+            final Cell p = new Cell(MIN_GUARD_X + random.nextInt(width - MIN_GUARD_X), random.nextInt(height));
+            clear(layout, p);
+            final int los = 1 + random.nextInt(MAX_LOS);
+            final int cone = random.nextInt(3) == 0 ? 30 + random.nextInt(61) : 0;
+            switch (g % 3) {
+                case 0:
+                    guards[g] = new GuardObject.StationaryGuardFactory(p, los, random.nextInt(4), cone);
+                    break;
+                case 1:
+                    guards[g] = new RotatingGuardObject.RotatingGuardFactory(p, los, new int[] {random.nextInt(4), random.nextInt(4)},
+                            random.nextBoolean(), cone);
+                    break;
+                default:
+                    guards[g] = new PatrollingGuardObject.PatrollingGuardFactory(patrol(layout, p, random), los, false, cone);
+                    break;
+            }
+        }
+        return new Level(Level.CSType.GRID, layout, new int[0], guards);
+    }
+
+    // a random walk from p, clearing walls in the way
+    private static Cell[] patrol(final Level.Terrain[][] layout, final Cell p, final Random random) {
+        final List<Cell> cells = new ArrayList<>();
+        cells.add(p);
+        Cell cur = p;
+        final int length = 2 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            final int dir = random.nextInt(4);
+            final Cell next = new Cell(cur.x + GridTopology.deltaX(dir), cur.y + GridTopology.deltaY(dir));
+            if (next.x < MIN_GUARD_X || next.y < 0 || next.y >= layout.length || next.x >= layout[0].length) {
+                continue;
+            }
+            clear(layout, next);
+            cells.add(next);
+            cur = next;
+        }
+        if (cells.size() == 1) {
+            final Cell next = new Cell(p.x == MIN_GUARD_X ? p.x + 1 : p.x - 1, p.y);
+            clear(layout, next);
+            cells.add(next);
+        }
+        return cells.toArray(new Cell[cells.size()]);
+    }
+
+    private static void clear(final Level.Terrain[][] layout, final Cell p) {
+        if (layout[p.y][p.x] == Level.Terrain.WALL) {
+            layout[p.y][p.x] = Level.Terrain.NONE;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ShadowCasterTest {
+
+    private static final int EAST = 0;
+    private static final int NORTH = 1;
+
+    @Test
+    public void fullConeSeesItsWholeQuadrant() {
+        final Level.Terrain[][] terrain = open(9, 9);
+        final GridTopology t = new GridTopology(9, 9);
+        final Set<Integer> seen = cast(t, terrain, 4, 8, NORTH, 4, ShadowCaster.MAX_CONE);
+        assertEquals(ShadowCaster.maxCells(4), seen.size());
+        assertTrue(seen.contains(t.indexOf(4, 8)));
+        for (int depth = 1; depth <= 4; depth++) {
+            // both edges of every row, which are exactly 45 degrees off
+            assertTrue("row " + depth, seen.contains(t.indexOf(4 - depth, 8 - depth)));
+            assertTrue("row " + depth, seen.contains(t.indexOf(4 + depth, 8 - depth)));
+            assertFalse(seen.contains(t.indexOf(4 - depth - 1, 8 - depth)));
+        }
+        assertFalse(seen.contains(t.indexOf(4, 3))); // out of range
+        assertFalse(seen.contains(t.indexOf(3, 8))); // beside it isn't ahead of it
+    }
+
+    @Test
+    public void narrowConeKeepsToItsSlopes() {
+        final GridTopology t = new GridTopology(9, 9);
+        final Set<Integer> seen = cast(t, open(9, 9), 0, 4, EAST, 8, 30);
+        // a cell is seen when its middle is inside the cone, tan(15 degrees) is about 0.27
+        final double maxSlope = Math.tan(Math.toRadians(15));
+        for (int depth = 1; depth <= 8; depth++) {
+            for (int col = -4; col <= 4; col++) {
+                assertEquals("row " + depth + " col " + col, Math.abs(col) <= depth * maxSlope,
+                        seen.contains(t.indexOf(depth, 4 + col)));
+            }
+        }
+    }
+
+    @Test
+    public void wallsHideWhatsBehindThem() {
+        final Level.Terrain[][] terrain = open(9, 9);
+        terrain[6][4] = Level.Terrain.WALL; // two ahead of a guard at (4, 8) facing north
+        final GridTopology t = new GridTopology(9, 9);
+        final Set<Integer> seen = cast(t, terrain, 4, 8, NORTH, 6, ShadowCaster.MAX_CONE);
+        assertTrue(seen.contains(t.indexOf(4, 7)));
+        assertFalse(seen.contains(t.indexOf(4, 6))); // walls aren't returned
+        for (int y = 2; y <= 5; y++) {
+            assertFalse("behind at " + y, seen.contains(t.indexOf(4, y)));
+        }
+        // around the wall is still seen
+        assertTrue(seen.contains(t.indexOf(3, 6)));
+        assertTrue(seen.contains(t.indexOf(5, 6)));
+        assertTrue(seen.contains(t.indexOf(1, 4)));
+        assertTrue(seen.contains(t.indexOf(7, 4)));
+    }
+
+    @Test
+    public void stopsAtTheEdgeOfTheMap() {
+        final GridTopology t = new GridTopology(5, 5);
+        final Set<Integer> seen = cast(t, open(5, 5), 0, 0, NORTH, 4, ShadowCaster.MAX_CONE);
+        assertEquals(new HashSet<>(Arrays.asList(t.indexOf(0, 0))), seen);
+        // beyond the edge is as good as a wall, so a guard in the corner doesn't see round it
+        final Set<Integer> corner = cast(t, open(5, 5), 0, 0, EAST, 4, ShadowCaster.MAX_CONE);
+        assertTrue(corner.contains(t.indexOf(4, 0)));
+        assertTrue(corner.contains(t.indexOf(1, 1)));
+        assertTrue(corner.size() < ShadowCaster.maxCells(4));
+        assertEquals(1 + 3 + 5, cast(t, open(5, 5), 0, 2, EAST, 2, ShadowCaster.MAX_CONE).size());
+    }
+
+    // a cell sees another exactly when a guard there facing back would see it, on any walls
+    @Test
+    public void visibilityIsSymmetric() {
+        final Random random = new Random(19);
+        for (int map = 0; map < 20; map++) {
+            final int size = 12;
+            final Level.Terrain[][] terrain = open(size, size);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    if (random.nextInt(5) == 0) terrain[y][x] = Level.Terrain.WALL;
+                }
+            }
+            final GridTopology t = new GridTopology(size, size);
+            final int range = 1 + random.nextInt(8);
+            for (int cell = 0; cell < t.getNumCells(); cell++) {
+                if (!Level.isPassable(terrain, t.getX(cell), t.getY(cell))) continue;
+                for (int dir = 0; dir < 4; dir++) {
+                    for (int seen : cast(t, terrain, t.getX(cell), t.getY(cell), dir, range, ShadowCaster.MAX_CONE)) {
+                        final Set<Integer> back = cast(t, terrain, t.getX(seen), t.getY(seen), (dir + 2) % 4, range, ShadowCaster.MAX_CONE);
+                        assertTrue("map " + map + ": " + t.getCell(cell) + " sees " + t.getCell(seen) + " facing " + dir
+                                + " but not back", back.contains(cell));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<Integer> cast(final Topology t, final Level.Terrain[][] terrain, final int x, final int y, final int dir,
+                                     final int range, final int cone) {
+        final int[] out = new int[ShadowCaster.maxCells(range)];
+        final int n = new ShadowCaster().cast(t, terrain, t.indexOf(x, y), dir, range, cone, out);
+        assertEquals("guard's own cell first", t.indexOf(x, y), out[0]);
+        final Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            assertTrue("seen twice: " + t.getCell(out[i]), seen.add(out[i]));
+        }
+        return seen;
+    }
+
+    static Level.Terrain[][] open(final int width, final int height) {
+        final Level.Terrain[][] terrain = new Level.Terrain[height][width];
+        for (Level.Terrain[] row : terrain) {
+            Arrays.fill(row, Level.Terrain.NONE);
+        }
+        return terrain;
+    }
+}
@@ -0,0 +1,338 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+import static papercastle.com.papercastle.sim.Level.Terrain.WALL;
+
+public class SimulationTest {
+
+    // a guard in the bottom right corner watches the whole bottom row while the player goes round to the end
+    private static final Level LEVEL = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+            {NONE, NONE, NONE, NONE, NONE, NONE, END},
+            {NONE, START, NONE, NONE, NONE, NONE, NONE},
+            {NONE, NONE, NONE, NONE, NONE, NONE, NONE},
+            {NONE, NONE, NONE, WALL, NONE, NONE, NONE},
+            {NONE, NONE, NONE, NONE, NONE, NONE, NONE}
+    }, new int[] {3}, new GuardObject.GuardFactory[] {
+            new GuardObject.StationaryGuardFactory(new Cell(6, 4), 6, 2)
+    });
+
+    @Test
+    public void wallsAndTheEndAreKeptApart() {
+        final Simulation sim = new Simulation(LEVEL);
+        assertEquals(2, sim.getStaticObjects().size());
+        for (GameObject object : sim.getStaticObjects()) {
+            assertTrue(object.isStatic());
+        }
+        // in the order they're read, top to bottom
+        assertTrue(sim.getStaticObjects().get(0) instanceof EndObject);
+        assertEquals(new Cell(3, 3), sim.getStaticObjects().get(1).getCurCell());
+        assertEquals(1, sim.getNumGuards());
+        assertEquals(1, sim.getNumLive());
+        assertSame(sim.getPlayerObject(), sim.getLive(0));
+    }
+
+    @Test
+    public void catchesCompactTheLiveObjectsInOrder() {
+        final Simulation sim = new Simulation(LEVEL);
+        final GuardObject guard = sim.getGuard(0);
+        final SelectableGameObject player = sim.getPlayerObject();
+        for (Cell p : new Cell[] {new Cell(2, 1), new Cell(3, 1), new Cell(4, 1), new Cell(5, 1), new Cell(6, 1), new Cell(6, 0)}) {
+            assertTrue(sim.extendPath(player, p));
+        }
+        // two clones that reach the bottom row on the same tick, and one that stays put
+        final SelectableGameObject a = place(sim, new Cell(0, 1), new Cell(0, 2), new Cell(0, 3), new Cell(0, 4));
+        final SelectableGameObject b = place(sim, new Cell(1, 2), new Cell(1, 3), new Cell(2, 3), new Cell(2, 4));
+        final SelectableGameObject c = place(sim, new Cell(2, 1));
+        assertEquals(4, sim.getNumLive());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, sim.getLive(i).getId());
+        }
+
+        sim.switchToExecute();
+        while (sim.getNumLive() == 4) {
+            sim.tick();
+        }
+        assertEquals(250, sim.getTickCount());
+        assertEquals(2, sim.getNumLive());
+        assertSame(player, sim.getLive(0));
+        assertSame(c, sim.getLive(1));
+        // caught ones keep their ids, out of the occupancy grid
+        assertSame(a, sim.getSelectable(1));
+        assertSame(b, sim.getSelectable(2));
+        assertEquals(Topology.NO_CELL, a.occupiedCell);
+        assertEquals(Topology.NO_CELL, b.occupiedCell);
+        assertNull(sim.getOccupancy().getFirst(sim.getTopology().indexOf(0, 4)));
+        assertTrue(guard.isCelebrating());
+
+        while (!sim.isDone()) {
+            sim.tick();
+        }
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        assertEquals(550, sim.getTickCount()); // halfway into the end counts
+        assertSame(guard, sim.getGuard(0));
+        assertEquals(2, sim.getNumLive());
+    }
+
+    // commands the ui could never send at that point don't change anything, so a recording can't either
+    @Test
+    public void commandsTheUiCantSendDoNothing() {
+        final Simulation sim = new Simulation(LEVEL);
+        final Topology t = sim.getTopology();
+        final SelectableGameObject player = sim.getPlayerObject();
+        sim.apply(Command.startClonePlacement(0));
+        sim.apply(Command.placeClone(t.indexOf(0, 1)));
+        final SelectableGameObject clone = sim.getSelectable(1);
+        assertNotNull(clone);
+
+        // the clone isn't selected, no clone is being placed, and there's no such clone type or object
+        assertRejected(sim, Command.extendPath(1, t.indexOf(0, 2)));
+        assertRejected(sim, Command.stopClonePlacement());
+        assertRejected(sim, Command.placeClone(t.indexOf(2, 1)));
+        assertRejected(sim, Command.startClonePlacement(1));
+        assertRejected(sim, Command.select(7));
+        assertRejected(sim, Command.plan());
+        // placing a clone takes the map's taps
+        sim.apply(Command.startClonePlacement(0));
+        assertRejected(sim, Command.select(0));
+        assertRejected(sim, Command.extendPath(0, t.indexOf(2, 1)));
+        assertRejected(sim, Command.placeClone(t.getNumCells()));
+        sim.apply(Command.stopClonePlacement());
+
+        sim.apply(Command.select(1));
+        for (Cell p : new Cell[] {new Cell(0, 2), new Cell(0, 3), new Cell(0, 4)}) {
+            sim.apply(Command.extendPath(1, t.indexOf(p)));
+        }
+        assertEquals(4, clone.getPathLength());
+        sim.apply(Command.select(0));
+        sim.apply(Command.extendPath(0, t.indexOf(2, 1)));
+        assertEquals(2, player.getPathLength());
+        sim.apply(Command.execute());
+
+        // executing, the only thing there is to do is pause
+        assertRejected(sim, Command.select(0));
+        assertRejected(sim, Command.extendPath(0, t.indexOf(3, 1)));
+        assertRejected(sim, Command.startClonePlacement(0));
+        assertRejected(sim, Command.execute());
+        while (sim.getNumLive() == 2) {
+            sim.tick();
+        }
+        sim.apply(Command.plan());
+
+        // the clone's been caught
+        assertRejected(sim, Command.select(1));
+        assertRejected(sim, Command.extendPath(1, t.indexOf(1, 4)));
+        assertEquals(4, clone.getPathLength());
+        assertNull(sim.getSelectedObject());
+        sim.apply(Command.select(0));
+        assertSame(player, sim.getSelectedObject());
+    }
+
+    private static void assertRejected(final Simulation sim, final long command) {
+        final long hash = sim.stateHash();
+        sim.apply(command);
+        assertEquals(Command.toString(command), hash, sim.stateHash());
+    }
+
+    // a player crossing 3.5 cells a tick only ever stops on one in four of them, and never on the guarded one
+    @Test
+    public void crossingAGuardedCellBetweenTicksIsCaught() {
+        final Simulation sim = corridor(true);
+        run(sim, 350);
+        assertEquals(Simulation.GameState.FAILURE, sim.getGameState());
+        assertEquals(2, sim.getTickCount());
+        assertEquals(new Cell(7, 1), sim.getPlayerObject().getCurCell());
+    }
+
+    @Test
+    public void crossingTheEndBetweenTicksWins() {
+        final Simulation sim = corridor(false);
+        run(sim, 350);
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        assertEquals(4, sim.getTickCount());
+        assertEquals(new Cell(14, 1), sim.getPlayerObject().getCurCell());
+    }
+
+    @Test
+    public void fastClonesAreCaughtCrossingGuardedCells() {
+        final Simulation sim = corridor(true);
+        final SelectableGameObject player = sim.getPlayerObject();
+        sim.startClonePlacement(0);
+        final SelectableGameObject clone = sim.placeActiveClone(new Cell(1, 1));
+        assertNotNull(clone);
+        for (int x = 2; x < 16; x++) {
+            assertTrue(sim.extendPath(clone, new Cell(x, 1)));
+        }
+        clone.setSpeed(250);
+        player.setSpeed(0); // stays at the start
+        sim.switchToExecute();
+        // 2.5 cells a tick from x = 1 stops on 4 then 6
+        sim.tick();
+        assertEquals(new Cell(4, 1), clone.getCurCell());
+        assertEquals(2, sim.getNumLive());
+        sim.tick();
+        assertEquals(1, sim.getNumLive());
+        assertSame(player, sim.getLive(0));
+        assertEquals(Topology.NO_CELL, clone.occupiedCell);
+        assertTrue(sim.getGuard(0).isCelebrating());
+        assertEquals(Simulation.GameState.EXECUTE, sim.getGameState());
+    }
+
+    // the guard at the bottom of the passage faces east into the wall, then up the passage for ticks 250 to 499,
+    // which is while the player is crossing 5 at 450. Neither end of one long step sees it
+    @Test
+    public void advancingCatchesWhatAGuardSawDuringTheStep() {
+        final Simulation sim = corridor(new GuardObject.GuardFactory[] {
+                new RotatingGuardObject.RotatingGuardFactory(new Cell(5, 3), 2, new int[] {0, 1}, true)
+        });
+        sim.switchToExecute();
+        sim.advance(1000);
+        assertEquals(Simulation.GameState.FAILURE, sim.getGameState());
+        assertEquals(450, sim.getTickCount());
+        assertEquals(new Cell(5, 1), sim.getPlayerObject().getCurCell());
+        assertEquals(1, sim.getGuard(0).getDir());
+    }
+
+    // random walks for the player and clones past guards that turn, walk and see in cones, stepped in random
+    // sized chunks, end up exactly where ticking one at a time does
+    @Test
+    public void advancingMatchesTicking() {
+        final Random random = new Random(7);
+        int caught = 0;
+        int won = 0;
+        for (int run = 0; run < 60; run++) {
+            final long seed = random.nextLong();
+            final Simulation ticked = randomRun(new Random(seed));
+            final Simulation advanced = randomRun(new Random(seed));
+            assertEquals(ticked.stateHash(), advanced.stateHash());
+            final int placed = ticked.getNumLive();
+            ticked.switchToExecute();
+            advanced.switchToExecute();
+            while (!ticked.isDone() && ticked.getTickCount() < 6000) {
+                final int ticks = 1 + random.nextInt(random.nextBoolean() ? 8 : 400);
+                for (int i = 0; i < ticks && !ticked.isDone(); i++) {
+                    ticked.tick();
+                }
+                advanced.advance(ticks);
+                assertEquals("run " + run + " tick " + ticked.getTickCount(), ticked.getTickCount(), advanced.getTickCount());
+                assertEquals("run " + run + " tick " + ticked.getTickCount(), ticked.stateHash(), advanced.stateHash());
+                assertEquals(ticked.getNumLive(), advanced.getNumLive());
+            }
+            caught += placed - ticked.getNumLive();
+            if (ticked.getGameState() == Simulation.GameState.SUCCESS) won++;
+        }
+        // so the runs are worth comparing
+        assertTrue(caught > 10);
+        assertTrue(won > 0);
+    }
+
+    // a 12 by 9 room with a few walls and guards of every kind, and random paths for the player and up to 4 clones
+    private static Simulation randomRun(final Random random) {
+        final Level.Terrain[][] layout = new Level.Terrain[9][12];
+        for (Level.Terrain[] row : layout) {
+            Arrays.fill(row, NONE);
+        }
+        layout[3][3] = WALL;
+        layout[5][7] = WALL;
+        layout[6][2] = WALL;
+        layout[4][0] = START;
+        layout[4][11] = END;
+        final Cell[] patrol = new Cell[10];
+        for (int i = 0; i < patrol.length; i++) {
+            patrol[i] = new Cell(1 + i, 1);
+        }
+        final Simulation sim = new Simulation(new Level(Level.CSType.GRID, layout, new int[] {1, 1, 1, 1, 1}, new GuardObject.GuardFactory[] {
+                new RotatingGuardObject.RotatingGuardFactory(new Cell(5, 4), 3, new int[] {0, 1, 2, 3}, true),
+                new PatrollingGuardObject.PatrollingGuardFactory(patrol, 2, false),
+                new RotatingGuardObject.RotatingGuardFactory(new Cell(11, 8), 4, new int[] {1, 2}, false, 45),
+                new GuardObject.StationaryGuardFactory(new Cell(8, 8), 3, 1)
+        }));
+        // some runs are quick enough to go through cells between ticks
+        final boolean fast = random.nextInt(4) == 0;
+        final int clones = random.nextInt(5);
+        for (int c = 0; c < clones; c++) {
+            sim.startClonePlacement(c);
+            final SelectableGameObject clone = sim.placeActiveClone(random.nextBoolean() ? new Cell(0, 3) : new Cell(1, 4));
+            if (clone != null) {
+                randomWalk(sim, clone, random);
+                if (fast) clone.setSpeed(50 + random.nextInt(300));
+            }
+        }
+        // then back to row 4 and along it to the end, when it's short enough to get there
+        final SelectableGameObject player = sim.getPlayerObject();
+        randomWalk(sim, player, random);
+        for (int i = 0; i < 20 && !player.getLastPathPoint().equals(sim.getEndPos()); i++) {
+            final Cell last = player.getLastPathPoint();
+            if (last.y == 4 || !sim.extendPath(player, new Cell(last.x, last.y + (last.y < 4 ? 1 : -1)))) {
+                sim.extendPath(player, new Cell(last.x + 1, last.y));
+            }
+        }
+        if (fast) player.setSpeed(50 + random.nextInt(300));
+        return sim;
+    }
+
+    // up to 30 steps, heading right more often than not
+    private static void randomWalk(final Simulation sim, final SelectableGameObject object, final Random random) {
+        for (int i = 0; i < 30; i++) {
+            final Cell last = object.getLastPathPoint();
+            final int r = random.nextInt(6);
+            final Cell next = r < 3 ? new Cell(last.x + 1, last.y) : r == 3 ? new Cell(last.x - 1, last.y)
+                    : new Cell(last.x, last.y + (r == 4 ? 1 : -1));
+            if (next.x >= 0 && next.x < 12 && next.y >= 0 && next.y < 9) {
+                sim.extendPath(object, next);
+            }
+        }
+    }
+
+    // a corridor along row 1 with the end at 12, and if guarded a guard at the end of a passage below cell 5 looking
+    // up it, so it sees 5 and nothing else of the corridor. The player's path is the whole corridor
+    private static Simulation corridor(final boolean guarded) {
+        return corridor(guarded
+                ? new GuardObject.GuardFactory[] {new GuardObject.StationaryGuardFactory(new Cell(5, 3), 2, 1)}
+                : new GuardObject.GuardFactory[0]);
+    }
+
+    private static Simulation corridor(final GuardObject.GuardFactory[] guards) {
+        final Level.Terrain[][] layout = new Level.Terrain[5][16];
+        for (Level.Terrain[] row : layout) {
+            Arrays.fill(row, WALL);
+        }
+        Arrays.fill(layout[1], NONE);
+        layout[2][5] = NONE;
+        layout[3][5] = NONE;
+        layout[1][0] = START;
+        layout[1][12] = END;
+        final Simulation sim = new Simulation(new Level(Level.CSType.GRID, layout, new int[] {1}, guards));
+        for (int x = 1; x < 16; x++) {
+            assertTrue(sim.extendPath(sim.getPlayerObject(), new Cell(x, 1)));
+        }
+        return sim;
+    }
+
+    // runs sim with the player at speed until it's over
+    private static void run(final Simulation sim, final double speed) {
+        sim.getPlayerObject().setSpeed(speed);
+        sim.switchToExecute();
+        while (!sim.isDone() && sim.getTickCount() < 1000) {
+            sim.tick();
+        }
+    }
+
+    // a clone of type 0 placed next to the player at start, walking to each of to
+    private static SelectableGameObject place(final Simulation sim, final Cell start, final Cell... to) {
+        sim.startClonePlacement(0);
+        final SelectableGameObject clone = sim.placeActiveClone(start);
+        assertNotNull(clone);
+        for (Cell p : to) {
+            assertTrue(sim.extendPath(clone, p));
+        }
+        return clone;
+    }
+}
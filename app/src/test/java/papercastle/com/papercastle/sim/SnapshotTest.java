@@ -0,0 +1,157 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+
+public class SnapshotTest {
+
+    // the player walks the top row to the end while a clone walks the middle row into a guard looking up at it
+    private static final Level LEVEL = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+            {START, NONE, NONE, NONE, NONE, END},
+            {NONE, NONE, NONE, NONE, NONE, NONE},
+            {NONE, NONE, NONE, NONE, NONE, NONE}
+    }, new int[] {1}, new GuardObject.GuardFactory[] {
+            new GuardObject.StationaryGuardFactory(new Cell(3, 2), 1, 1)
+    });
+    private static final int MAX_TICKS = 2000;
+
+    @Test
+    public void restoringAfterACatchReplaysTheSame() {
+        final long[] straight = run(planned(true), MAX_TICKS);
+        final Simulation sim = planned(true);
+        final Simulation.Snapshot start = new Simulation.Snapshot();
+        sim.save(start);
+        assertArrayEquals(straight, run(sim, MAX_TICKS));
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        assertEquals(1, sim.getNumLive()); // the clone was caught
+
+        sim.restore(start);
+        assertEquals(0, sim.getTickCount());
+        assertEquals(Simulation.GameState.EXECUTE, sim.getGameState());
+        assertEquals(2, sim.getNumLive());
+        assertArrayEquals(straight, run(sim, MAX_TICKS));
+        assertEquals(1, sim.getNumLive());
+    }
+
+    @Test
+    public void restoringFromEveryTickReplaysTheSame() {
+        final long[] straight = run(planned(true), MAX_TICKS);
+        final Simulation sim = planned(true);
+        final Simulation.Snapshot snapshot = new Simulation.Snapshot();
+        // before the clone is caught, at it, and after
+        for (int at = 0; at < straight.length; at += 7) {
+            while (sim.getTickCount() < at) {
+                sim.tick();
+            }
+            sim.save(snapshot);
+            final int liveAtSave = sim.getNumLive();
+            run(sim, MAX_TICKS);
+            sim.restore(snapshot);
+            assertEquals(at, sim.getTickCount());
+            assertEquals(liveAtSave, sim.getNumLive());
+            final long[] rest = run(sim, MAX_TICKS);
+            for (int t = 0; t < rest.length; t++) {
+                assertEquals("from " + at + " at " + (at + t + 1), straight[at + t], rest[t]);
+            }
+            assertEquals(straight.length, at + rest.length);
+            sim.restore(snapshot);
+        }
+    }
+
+    @Test
+    public void restoringCutsBackPathsExtendedSince() {
+        final Simulation sim = planned();
+        final SelectableGameObject player = sim.getPlayerObject();
+        final Simulation.Snapshot plan = new Simulation.Snapshot();
+        sim.save(plan);
+        final int playerLength = player.getPathLength();
+        final int cloneLength = sim.getSelectable(1).getPathLength();
+
+        // a longer path for both, run, then back to the plan
+        assertTrue(sim.extendPath(player, new Cell(5, 1)));
+        assertTrue(sim.extendPath(sim.getSelectable(1), new Cell(4, 2)));
+        sim.switchToExecute();
+        run(sim, MAX_TICKS);
+        sim.restore(plan);
+        assertEquals(Simulation.GameState.PLAN, sim.getGameState());
+        assertEquals(playerLength, player.getPathLength());
+        assertEquals(cloneLength, sim.getSelectable(1).getPathLength());
+
+        final Simulation straight = planned();
+        straight.switchToExecute();
+        sim.switchToExecute();
+        assertArrayEquals(run(straight, MAX_TICKS), run(sim, MAX_TICKS));
+    }
+
+    @Test
+    public void restoringCutsBackPathsExtendedWhileExecuting() {
+        final long[] straight = run(planned(true), MAX_TICKS);
+        final Simulation sim = planned(true);
+        while (sim.getTickCount() < 50) {
+            sim.tick();
+        }
+        final Simulation.Snapshot snapshot = new Simulation.Snapshot();
+        sim.save(snapshot);
+        assertTrue(sim.extendPath(sim.getPlayerObject(), new Cell(5, 1)));
+        run(sim, 100);
+        sim.restore(snapshot);
+        final long[] rest = run(sim, MAX_TICKS);
+        for (int t = 0; t < rest.length; t++) {
+            assertEquals(straight[50 + t], rest[t]);
+        }
+    }
+
+    @Test
+    public void restoringRemovesClonesPlacedSince() {
+        final Simulation sim = new Simulation(LEVEL);
+        final Simulation.Snapshot empty = new Simulation.Snapshot();
+        sim.save(empty);
+        sim.startClonePlacement(0);
+        assertNotNull(sim.placeActiveClone(new Cell(0, 1)));
+        assertEquals(0, sim.getAvailableClones(0));
+        sim.restore(empty);
+        assertEquals(1, sim.getNumLive());
+        assertNull(sim.getSelectable(1));
+        assertEquals(1, sim.getAvailableClones(0));
+        assertEquals(new Simulation(LEVEL).stateHash(), sim.stateHash());
+    }
+
+    private static Simulation planned() {
+        return planned(false);
+    }
+
+    // LEVEL with the player's path to the end and a clone headed through the guard's sight, executing if execute
+    private static Simulation planned(final boolean execute) {
+        final Simulation sim = new Simulation(LEVEL);
+        final SelectableGameObject player = sim.getPlayerObject();
+        for (int x = 1; x <= 5; x++) {
+            assertTrue(sim.extendPath(player, new Cell(x, 0)));
+        }
+        sim.startClonePlacement(0);
+        final SelectableGameObject clone = sim.placeActiveClone(new Cell(0, 1));
+        for (int x = 1; x <= 4; x++) {
+            assertTrue(sim.extendPath(clone, new Cell(x, 1)));
+        }
+        if (execute) {
+            sim.switchToExecute();
+        }
+        return sim;
+    }
+
+    // the hash after each tick until it's done or max ticks have gone
+    private static long[] run(final Simulation sim, final int max) {
+        final long[] hashes = new long[max];
+        int n = 0;
+        while (n < max && !sim.isDone()) {
+            sim.tick();
+            hashes[n++] = sim.stateHash();
+        }
+        return Arrays.copyOf(hashes, n);
+    }
+}
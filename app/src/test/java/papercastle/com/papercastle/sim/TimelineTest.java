@@ -0,0 +1,112 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TimelineTest {
+
+    @Test
+    public void seekingMatchesTickingStraightThere() {
+        final long[] straight = straightRun(planned(), 10000);
+        final Simulation sim = planned();
+        final long startHash = sim.stateHash();
+        final Timeline timeline = new Timeline(sim, 10000);
+        while (!timeline.isComplete()) {
+            timeline.simulate(2);
+            assertEquals("simulate leaves it at the start", startHash, sim.stateHash());
+        }
+        assertEquals(350, timeline.getLength());
+        assertEquals(straight.length - 1, timeline.getLength());
+
+        // forwards, backwards and across keyframes
+        for (long t = 0; t <= timeline.getLength(); t++) {
+            timeline.seek(t);
+            assertEquals("tick " + t, straight[(int)t], sim.stateHash());
+        }
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        for (long t = timeline.getLength(); t >= 0; t -= 13) {
+            timeline.seek(t);
+            assertEquals(t, timeline.getSeekTick());
+            assertEquals("tick " + t, straight[(int)t], sim.stateHash());
+        }
+
+        timeline.stopSeeking();
+        assertEquals(-1, timeline.getSeekTick());
+        assertEquals(startHash, sim.stateHash());
+    }
+
+    @Test
+    public void seekingPastTheEndStopsAtIt() {
+        final Simulation sim = planned();
+        final Timeline timeline = new Timeline(sim, 10000);
+        timeline.simulate(1000);
+        assertTrue(timeline.isComplete());
+        timeline.seek(timeline.getLength() + 500);
+        assertEquals(timeline.getLength(), timeline.getSeekTick());
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        timeline.seek(-5);
+        assertEquals(0, timeline.getSeekTick());
+        assertEquals(Simulation.GameState.PLAN, sim.getGameState());
+    }
+
+    @Test
+    public void levelsThatDontEndStopAtMaxTicks() {
+        final Simulation sim = new Simulation(Level.ALL_LEVELS[1]); // the player has no path, so it never ends
+        final long[] straight = straightRun(new Simulation(Level.ALL_LEVELS[1]), 321);
+        final Timeline timeline = new Timeline(sim, 321);
+        timeline.simulate(1000);
+        assertTrue(timeline.isComplete());
+        assertEquals(321, timeline.getLength());
+        timeline.seek(321);
+        assertEquals(Simulation.GameState.EXECUTE, sim.getGameState());
+        assertEquals(straight[321], sim.stateHash());
+    }
+
+    @Test
+    public void seekingWhilePartlyRunGoesAsFarAsItCan() {
+        final long[] straight = straightRun(planned(), 10000);
+        final Simulation sim = planned();
+        final Timeline timeline = new Timeline(sim, 10000);
+        timeline.simulate(2);
+        assertFalse(timeline.isComplete());
+        assertEquals(2 * Timeline.KEYFRAME_TICKS, timeline.getLength());
+        timeline.seek(75);
+        // running further keeps the simulation where it was seeked to
+        timeline.simulate(1);
+        assertEquals(75, timeline.getSeekTick());
+        assertEquals(straight[75], sim.stateHash());
+        timeline.seek(1000);
+        assertEquals(3 * Timeline.KEYFRAME_TICKS, timeline.getSeekTick());
+        assertEquals(straight[3 * Timeline.KEYFRAME_TICKS], sim.stateHash());
+    }
+
+    // the state hash at every tick from the plan, [0] being the plan, until the level ends or max ticks
+    private static long[] straightRun(final Simulation sim, final int max) {
+        final long[] hashes = new long[max + 1];
+        hashes[0] = sim.stateHash();
+        sim.switchToExecute();
+        int n = 1;
+        while (n <= max && !sim.isDone()) {
+            sim.tick();
+            hashes[n++] = sim.stateHash();
+        }
+        return Arrays.copyOf(hashes, n);
+    }
+
+    // built-in level 0 with a clone out and the player's path to the end, which it gets to in 350 ticks
+    private static Simulation planned() {
+        final Simulation sim = new Simulation(Level.ALL_LEVELS[0]);
+        sim.startClonePlacement(0);
+        final SelectableGameObject clone = sim.placeActiveClone(new Cell(0, 1));
+        assertTrue(sim.extendPath(clone, new Cell(0, 2)));
+        final SelectableGameObject player = sim.getPlayerObject();
+        assertTrue(sim.extendPath(player, new Cell(1, 0)));
+        assertTrue(sim.extendPath(player, new Cell(2, 0)));
+        assertTrue(sim.extendPath(player, new Cell(2, 1)));
+        assertTrue(sim.extendPath(player, new Cell(2, 2)));
+        return sim;
+    }
+}
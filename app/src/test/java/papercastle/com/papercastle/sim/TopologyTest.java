@@ -0,0 +1,189 @@
+package papercastle.com.papercastle.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TopologyTest {
+
+    @Test
+    public void gridKeepsTheTopologyContract() {
+        checkContract(new GridTopology(7, 5));
+        checkContract(new GridTopology(1, 1));
+    }
+
+    @Test
+    public void hexKeepsTheTopologyContract() {
+        checkContract(new HexTopology(7, 5));
+        checkContract(new HexTopology(1, 1));
+    }
+
+    @Test
+    public void hexNeighborsAreAxial() {
+        final HexTopology t = new HexTopology(5, 5);
+        final int[][] expected = {{1, 0}, {1, -1}, {0, -1}, {-1, 0}, {-1, 1}, {0, 1}}; // anticlockwise from east
+        final int center = t.indexOf(2, 2);
+        for (int d = 0; d < 6; d++) {
+            final int neighbor = t.getNeighborInDirection(center, d);
+            assertEquals("direction " + d, t.indexOf(2 + expected[d][0], 2 + expected[d][1]), neighbor);
+            assertEquals(d, t.getDirectionVector(center, neighbor));
+            assertEquals(d, t.getDirectionVector(t.getCell(center), t.getCell(neighbor)));
+        }
+        // the two diagonals axial coordinates don't have aren't neighbors
+        assertEquals(2, t.distance(center, t.indexOf(3, 3)));
+        assertEquals(2, t.distance(center, t.indexOf(1, 1)));
+        assertBadDirection(t, center, t.indexOf(3, 3));
+        assertBadDirection(t, center, t.indexOf(1, 1));
+    }
+
+    @Test
+    public void hexEdgesHaveNoNeighborsOffTheMap() {
+        final HexTopology t = new HexTopology(4, 3);
+        // corners of the rhombus: the acute ones (top left, bottom right) have 2 neighbors, the obtuse ones 3
+        assertNeighbors(t, 0, 0, new int[][] {{1, 0}, {0, 1}});
+        assertNeighbors(t, 3, 2, new int[][] {{2, 2}, {3, 1}});
+        assertNeighbors(t, 3, 0, new int[][] {{2, 0}, {2, 1}, {3, 1}});
+        assertNeighbors(t, 0, 2, new int[][] {{1, 2}, {1, 1}, {0, 1}});
+        // edges
+        assertNeighbors(t, 1, 0, new int[][] {{2, 0}, {0, 0}, {0, 1}, {1, 1}});
+        assertNeighbors(t, 0, 1, new int[][] {{1, 1}, {1, 0}, {0, 0}, {0, 2}});
+
+        assertEquals(Topology.NO_CELL, t.getNeighborInDirection(t.indexOf(0, 0), 3));
+        assertEquals(Topology.NO_CELL, t.getNeighborInDirection(t.indexOf(0, 0), 2));
+        assertEquals(Topology.NO_CELL, t.getNeighborInDirection(t.indexOf(3, 2), 0));
+        assertEquals(Topology.NO_CELL, t.getNeighborInDirection(t.indexOf(3, 2), 5));
+        // walking off the map still gives where it would be
+        assertEquals(new Cell(-1, 1), t.getNeighborInDirection(new Cell(0, 0), 4));
+        assertEquals(new Cell(4, 1), t.getNeighborInDirection(new Cell(3, 2), 1));
+    }
+
+    @Test
+    public void indexOfIsNoCellOffTheMap() {
+        for (Topology t : Arrays.<Topology>asList(new GridTopology(4, 3), new HexTopology(4, 3))) {
+            assertEquals(0, t.indexOf(0, 0));
+            assertEquals(11, t.indexOf(3, 2));
+            assertEquals(Topology.NO_CELL, t.indexOf(-1, 0));
+            assertEquals(Topology.NO_CELL, t.indexOf(0, -1));
+            assertEquals(Topology.NO_CELL, t.indexOf(4, 0));
+            assertEquals(Topology.NO_CELL, t.indexOf(0, 3));
+            assertEquals(Topology.NO_CELL, t.indexOf(4, 2)); // would wrap to the next row if it weren't checked
+            assertEquals(Topology.NO_CELL, t.indexOf(new Cell(-1, 2)));
+        }
+    }
+
+    @Test
+    public void hexDistanceIsHalfTheCubeDistance() {
+        final HexTopology t = new HexTopology(9, 9);
+        assertEquals(0, t.distance(new Cell(4, 4), new Cell(4, 4)));
+        assertEquals(3, t.distance(new Cell(4, 4), new Cell(7, 1))); // straight north east
+        assertEquals(6, t.distance(new Cell(4, 4), new Cell(7, 7))); // both axes the same way
+        assertEquals(4, t.distance(new Cell(0, 8), new Cell(4, 4)));
+    }
+
+    // what every topology has to do, checked on each cell
+    private static void checkContract(final Topology t) {
+        final int n = t.getNumCells();
+        assertEquals(t.getWidth() * t.getHeight(), n);
+        final int[] out = new int[t.numDirections()];
+        for (int cell = 0; cell < n; cell++) {
+            final Cell p = t.getCell(cell);
+            assertEquals(cell, t.indexOf(p));
+            assertEquals(cell, t.indexOf(t.getX(cell), t.getY(cell)));
+            assertEquals(p.x, t.getX(cell));
+            assertEquals(p.y, t.getY(cell));
+
+            final int count = t.neighbors(cell, out);
+            final Set<Integer> fromIds = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                fromIds.add(out[i]);
+            }
+            final Set<Integer> fromCells = new HashSet<>();
+            for (Cell c : t.neighbors(p)) {
+                fromCells.add(t.indexOf(c));
+            }
+            assertEquals(fromIds, fromCells);
+            assertEquals(count, fromIds.size());
+
+            final Set<Integer> fromDirections = new HashSet<>();
+            for (int d = 0; d < t.numDirections(); d++) {
+                final int neighbor = t.getNeighborInDirection(cell, d);
+                final Cell step = t.getNeighborInDirection(p, d);
+                assertEquals(neighbor, t.indexOf(step));
+                if (neighbor == Topology.NO_CELL) {
+                    continue;
+                }
+                fromDirections.add(neighbor);
+                assertEquals(1, t.distance(cell, neighbor));
+                assertEquals(1, t.distance(p, step));
+                assertEquals(d, t.getDirectionVector(cell, neighbor));
+                // and back the opposite way
+                final int back = (d + t.numDirections() / 2) % t.numDirections();
+                assertEquals(cell, t.getNeighborInDirection(neighbor, back));
+                assertEquals(back, t.getDirectionVector(neighbor, cell));
+            }
+            assertEquals(fromIds, fromDirections);
+            assertBadDirection(t, cell, cell);
+        }
+
+        // distance is the fewest steps on an open map
+        for (int from = 0; from < n; from++) {
+            final int[] dist = bfs(t, from);
+            for (int to = 0; to < n; to++) {
+                assertEquals(dist[to], t.distance(from, to));
+                assertEquals(dist[to], t.distance(t.getCell(from), t.getCell(to)));
+            }
+        }
+    }
+
+    private static int[] bfs(final Topology t, final int from) {
+        final int[] dist = new int[t.getNumCells()];
+        Arrays.fill(dist, -1);
+        final int[] queue = new int[t.getNumCells()];
+        final int[] out = new int[t.numDirections()];
+        dist[from] = 0;
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int cell = queue[head++];
+            final int count = t.neighbors(cell, out);
+            for (int i = 0; i < count; i++) {
+                if (dist[out[i]] == -1) {
+                    dist[out[i]] = dist[cell] + 1;
+                    queue[tail++] = out[i];
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static void assertNeighbors(final Topology t, final int x, final int y, final int[][] expected) {
+        final List<Integer> want = new ArrayList<>();
+        for (int[] xy : expected) {
+            want.add(t.indexOf(xy[0], xy[1]));
+        }
+        final int[] out = new int[t.numDirections()];
+        final int count = t.neighbors(t.indexOf(x, y), out);
+        final List<Integer> got = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            got.add(out[i]);
+        }
+        assertEquals("neighbors of " + x + ", " + y, new HashSet<>(want), new HashSet<>(got));
+        assertEquals(want.size(), got.size());
+    }
+
+    private static void assertBadDirection(final Topology t, final int a, final int b) {
+        try {
+            t.getDirectionVector(a, b);
+            fail("direction from " + t.getCell(a) + " to " + t.getCell(b));
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
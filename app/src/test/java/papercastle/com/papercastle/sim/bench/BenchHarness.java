@@ -0,0 +1,137 @@
+package papercastle.com.papercastle.sim.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal JMH-style measurement loop: warmup, timed iterations, and the allocated bytes per
+ * operation (what JMH's gc profiler reports as gc.alloc.rate.norm), compared against a baseline.
+ */
+
+final class BenchHarness {
+
+    interface Bench {
+        // does ops operations and returns something derived from them so they can't be optimized out
+        long run(long ops);
+    }
+
+    static final class Result {
+        final String name;
+        final double nsPerOp;
+        final double bytesPerOp;
+
+        Result(String name, double nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private static final long WARMUP_NS = 300000000L;
+    private static final long ITERATION_NS = 200000000L;
+    private static final int ITERATIONS = 5;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<Result> results = new ArrayList<>();
+    private final String filter;
+    private long sink;
+
+    BenchHarness(String filter) {
+        this.filter = filter;
+    }
+
+    void measure(final String name, final Bench bench) {
+        if (filter != null && !name.contains(filter)) return;
+
+        // warmup, and find how many ops fill one iteration
+        long ops = 1;
+        final long warmupEnd = System.nanoTime() + WARMUP_NS;
+        while (true) {
+            final long start = System.nanoTime();
+            sink += bench.run(ops);
+            final long elapsed = System.nanoTime() - start;
+            if (System.nanoTime() >= warmupEnd && elapsed >= ITERATION_NS / 4) break;
+            if (elapsed < ITERATION_NS) {
+                ops *= 2;
+            }
+        }
+        final long threadId = Thread.currentThread().getId();
+
+        double bestNsPerOp = Double.MAX_VALUE;
+        long totalBytes = 0;
+        long totalOps = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            sink += bench.run(ops);
+            final long elapsed = System.nanoTime() - start;
+            totalBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+            totalOps += ops;
+            bestNsPerOp = Math.min(bestNsPerOp, elapsed / (double) ops);
+        }
+        final Result r = new Result(name, bestNsPerOp, totalBytes / (double) totalOps);
+        results.add(r);
+        System.out.println(String.format(Locale.US, "%-40s %14.1f ns/op %12.1f B/op", r.name, r.nsPerOp, r.bytesPerOp));
+    }
+
+    void compare(final File baselineFile) throws IOException {
+        if (!baselineFile.exists()) {
+            System.out.println("no baseline at " + baselineFile);
+            return;
+        }
+        final Map<String, double[]> baseline = read(baselineFile);
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-40s %10s %12s", "vs " + baselineFile.getName(), "time", "alloc B/op"));
+        for (Result r : results) {
+            final double[] b = baseline.get(r.name);
+            if (b == null) {
+                System.out.println(String.format(Locale.US, "%-40s %10s", r.name, "new"));
+                continue;
+            }
+            System.out.println(String.format(Locale.US, "%-40s %+9.1f%% %+12.1f", r.name, 100.0 * (r.nsPerOp - b[0]) / b[0], r.bytesPerOp - b[1]));
+        }
+    }
+
+    void write(final File baselineFile) throws IOException {
+        final PrintWriter out = new PrintWriter(baselineFile, "UTF-8");
+        try {
+            out.println("# name ns/op bytes/op, written by SimBenchmarks --write-baseline");
+            for (Result r : results) {
+                out.println(String.format(Locale.US, "%s %.1f %.1f", r.name, r.nsPerOp, r.bytesPerOp));
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("wrote " + baselineFile);
+    }
+
+    private static Map<String, double[]> read(final File file) throws IOException {
+        final Map<String, double[]> m = new LinkedHashMap<>();
+        final BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                final String[] parts = line.split("\\s+");
+                m.put(parts[0], new double[] {Double.parseDouble(parts[1]), Double.parseDouble(parts[2])});
+            }
+        } finally {
+            in.close();
+        }
+        return m;
+    }
+
+    long getSink() {
+        return sink;
+    }
+}
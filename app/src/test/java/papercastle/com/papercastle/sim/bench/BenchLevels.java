@@ -0,0 +1,152 @@
+package papercastle.com.papercastle.sim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.PatrollingGuardObject;
+import papercastle.com.papercastle.sim.RotatingGuardObject;
+import papercastle.com.papercastle.sim.SelectableGameObject;
+import papercastle.com.papercastle.sim.Simulation;
+
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+import static papercastle.com.papercastle.sim.Level.Terrain.WALL;
+
+/**
+ * Generated levels for benchmarking at scales the shipped levels don't reach.
+ *
+ * Row 0 and column 0 form a corridor walled off from the arena, so the player and the clones
+ * walking along it are never caught and every tick does the full amount of work.
+ */
+
+final class BenchLevels {
+
+    private BenchLevels() {
+    }
+
+    static Level generate(final int width, final int height, final int numGuards, final long seed) {
+        final Random random = new Random(seed);
+        final Level.Terrain[][] layout = new Level.Terrain[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((y == 1 && x >= 1) || (x == 1 && y >= 1)) {
+                    layout[y][x] = WALL;
+                } else if (x >= 2 && y >= 2 && random.nextInt(10) == 0) {
+                    layout[y][x] = WALL;
+                } else {
+                    layout[y][x] = NONE;
+                }
+            }
+        }
+        layout[0][0] = START;
+        layout[height - 1][width - 1] = END;
+
+        final GuardObject.GuardFactory[] guards = new GuardObject.GuardFactory[numGuards];
+        for (int i = 0; i < numGuards; i++) {
+            final Cell p = randomArenaCell(layout, random);
+            final int los = 1 + random.nextInt(6);
+            switch (i % 3) {
+                case 0:
+                    guards[i] = new GuardObject.StationaryGuardFactory(p, los, random.nextInt(4));
+                    break;
+                case 1:
+                    final int[] dirs = new int[2 + random.nextInt(3)];
+                    for (int d = 0; d < dirs.length; d++) {
+                        dirs[d] = random.nextInt(4);
+                    }
+                    guards[i] = new RotatingGuardObject.RotatingGuardFactory(p, los, dirs, random.nextBoolean());
+                    break;
+                default:
+                    final Cell[] patrol = randomWalk(layout, p, 2 + random.nextInt(8), random);
+                    if (patrol.length < 2) {
+                        // boxed in by walls, so it has to stand still
+                        guards[i] = new GuardObject.StationaryGuardFactory(p, los, random.nextInt(4));
+                    } else {
+                        guards[i] = new PatrollingGuardObject.PatrollingGuardFactory(patrol, los, false);
+                    }
+                    break;
+            }
+        }
+
+        final int[] cloneTypes = new int[SelectableGameObject.CLONE_TYPE_DEFS.length];
+        return new Level(Level.CSType.GRID, layout, cloneTypes, guards);
+    }
+
+    // a level with numClones clones of every type
+    static Level generate(final int width, final int height, final int numGuards, final int numClones, final long seed) {
+        final Level base = generate(width, height, numGuards, seed);
+        final int[] cloneTypes = new int[SelectableGameObject.CLONE_TYPE_DEFS.length];
+        for (int i = 0; i < cloneTypes.length; i++) {
+            cloneTypes[i] = (numClones + i) / cloneTypes.length;
+        }
+        return new Level(base.getCsType(), base.getLayout(), cloneTypes, base.getGuards());
+    }
+
+    // places every available clone next to the start and sends it back and forth along the safe corridor
+    static Simulation executing(final Level level, final long seed) {
+        final Random random = new Random(seed);
+        final Simulation sim = new Simulation(level);
+        final int width = level.getLayout()[0].length;
+        final int height = level.getLayout().length;
+        for (int type = 0; type < sim.getNumCloneTypes(); type++) {
+            while (sim.getAvailableClones(type) > 0) {
+                final boolean alongRow = random.nextBoolean();
+                final Cell start = alongRow ? new Cell(1, 0) : new Cell(0, 1);
+                sim.startClonePlacement(type);
+                sim.placeActiveClone(start);
+            }
+        }
+        for (int c = 1; c < sim.getNumLive(); c++) {
+            final SelectableGameObject clone = sim.getLive(c);
+            final Cell start = clone.getLastPathPoint();
+            final int limit = start.x == 1 ? width - 1 : height - 1;
+            final int far = 2 + random.nextInt(limit - 1);
+            for (int i = 2; i <= far; i++) {
+                sim.extendPath(clone, start.x == 1 ? new Cell(i, 0) : new Cell(0, i));
+            }
+            for (int i = far - 1; i >= 0; i--) {
+                sim.extendPath(clone, start.x == 1 ? new Cell(i, 0) : new Cell(0, i));
+            }
+        }
+        sim.switchToExecute();
+        return sim;
+    }
+
+    private static Cell randomArenaCell(final Level.Terrain[][] layout, final Random random) {
+        while (true) {
+            final int x = 2 + random.nextInt(layout[0].length - 2);
+            final int y = 2 + random.nextInt(layout.length - 2);
+            if (layout[y][x] == NONE) {
+                return new Cell(x, y);
+            }
+        }
+    }
+
+    private static Cell[] randomWalk(final Level.Terrain[][] layout, final Cell start, final int length, final Random random) {
+        final List<Cell> walk = new ArrayList<>();
+        walk.add(start);
+        Cell cur = start;
+        for (int i = 1; i < length; i++) {
+            final List<Cell> options = new ArrayList<>(4);
+            addIfArena(layout, options, cur.x + 1, cur.y);
+            addIfArena(layout, options, cur.x - 1, cur.y);
+            addIfArena(layout, options, cur.x, cur.y + 1);
+            addIfArena(layout, options, cur.x, cur.y - 1);
+            if (options.isEmpty()) break;
+            cur = options.get(random.nextInt(options.size()));
+            walk.add(cur);
+        }
+        return walk.toArray(new Cell[walk.size()]);
+    }
+
+    private static void addIfArena(final Level.Terrain[][] layout, final List<Cell> l, final int x, final int y) {
+        if (x >= 2 && y >= 2 && y < layout.length && x < layout[y].length && layout[y][x] == NONE) {
+            l.add(new Cell(x, y));
+        }
+    }
+}
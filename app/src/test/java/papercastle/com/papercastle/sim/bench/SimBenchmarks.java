@@ -0,0 +1,163 @@
+package papercastle.com.papercastle.sim.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.GameObject;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.Simulation;
+import papercastle.com.papercastle.sim.Topology;
+
+/**
+ * Benchmarks of the simulation hot paths, on the shipped levels and on generated levels with
+ * hundreds of guards and clones.
+ *
+ * Run from the app directory with the test classes on the classpath:
+ *   java papercastle.com.papercastle.sim.bench.SimBenchmarks [--write-baseline] [--baseline=file] [filter]
+ * Results are compared against src/test/resources/sim-benchmarks-baseline.txt.
+ */
+
+public class SimBenchmarks {
+
+    private static final String DEFAULT_BASELINE = "src/test/resources/sim-benchmarks-baseline.txt";
+
+    public static void main(String[] args) throws Exception {
+        boolean writeBaseline = false;
+        String baseline = DEFAULT_BASELINE;
+        String filter = null;
+        for (String arg : args) {
+            if (arg.equals("--write-baseline")) {
+                writeBaseline = true;
+            } else if (arg.startsWith("--baseline=")) {
+                baseline = arg.substring("--baseline=".length());
+            } else {
+                filter = arg;
+            }
+        }
+
+        final BenchHarness harness = new BenchHarness(filter);
+        scale(harness, "level0", shipped(Level.ALL_LEVELS[0]));
+        scale(harness, "level1", shipped(Level.ALL_LEVELS[1]));
+        scale(harness, "gen32", BenchLevels.executing(BenchLevels.generate(32, 32, 50, 50, 32), 7));
+        scale(harness, "gen128", BenchLevels.executing(BenchLevels.generate(128, 128, 500, 500, 128), 7));
+
+        if (writeBaseline) {
+            harness.write(new File(baseline));
+        } else {
+            harness.compare(new File(baseline));
+        }
+        if (harness.getSink() == 42) {
+            System.out.println();
+        }
+    }
+
+    // the shipped levels with no plan, where the player is never caught
+    private static Simulation shipped(final Level level) {
+        final Simulation sim = new Simulation(level);
+        sim.switchToExecute();
+        return sim;
+    }
+
+    private static void scale(final BenchHarness harness, final String name, final Simulation sim) {
+        final Topology topology = sim.getTopology();
+        final Level.Terrain[][] terrain = sim.getTerrain();
+
+        final List<GameObject> objects = new ArrayList<>(sim.getStaticObjects());
+        final List<GuardObject> guards = new ArrayList<>();
+        for (int g = 0; g < sim.getNumGuards(); g++) {
+            guards.add(sim.getGuard(g));
+        }
+        objects.addAll(guards);
+        for (int i = 0; i < sim.getNumLive(); i++) {
+            objects.add(sim.getLive(i));
+        }
+        final List<Cell> cells = new ArrayList<>();
+        for (int y = 0; y < topology.getHeight(); y++) {
+            for (int x = 0; x < topology.getWidth(); x++) {
+                cells.add(new Cell(x, y));
+            }
+        }
+
+        harness.measure(name + ".tick", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                for (long i = 0; i < ops; i++) {
+                    sim.tick();
+                }
+                if (sim.isDone()) throw new IllegalStateException(name + " finished while benchmarking");
+                return sim.getTickCount();
+            }
+        });
+
+        harness.measure(name + ".computeLOS", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                long r = 0;
+                for (long i = 0; i < ops; i++) {
+                    for (int g = 0; g < guards.size(); g++) {
+                        final GuardObject guard = guards.get(g);
+                        guard.computeLOS(topology, terrain);
+                        r += guard.getCurLos();
+                    }
+                }
+                return r;
+            }
+        });
+
+        harness.measure(name + ".getPointsInLOS", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                long r = 0;
+                for (long i = 0; i < ops; i++) {
+                    for (int g = 0; g < guards.size(); g++) {
+                        r += guards.get(g).getPointsInLOS(topology).size();
+                    }
+                }
+                return r;
+            }
+        });
+
+        harness.measure(name + ".getCurCell", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                long r = 0;
+                for (long i = 0; i < ops; i++) {
+                    for (int o = 0; o < objects.size(); o++) {
+                        r += objects.get(o).getCurCell().x;
+                    }
+                }
+                return r;
+            }
+        });
+
+        harness.measure(name + ".neighbors", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                long r = 0;
+                for (long i = 0; i < ops; i++) {
+                    for (int c = 0; c < cells.size(); c++) {
+                        r += topology.neighbors(cells.get(c)).size();
+                    }
+                }
+                return r;
+            }
+        });
+
+        final int[] neighborCells = new int[topology.numDirections()];
+        harness.measure(name + ".neighborsPacked", new BenchHarness.Bench() {
+            @Override
+            public long run(long ops) {
+                long r = 0;
+                for (long i = 0; i < ops; i++) {
+                    for (int c = 0; c < topology.getNumCells(); c++) {
+                        r += topology.neighbors(c, neighborCells);
+                    }
+                }
+                return r;
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package papercastle.com.papercastle.sim.solver;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import papercastle.com.papercastle.sim.Cell;
+import papercastle.com.papercastle.sim.GuardObject;
+import papercastle.com.papercastle.sim.Level;
+import papercastle.com.papercastle.sim.Simulation;
+
+import static org.junit.Assert.*;
+import static papercastle.com.papercastle.sim.Level.Terrain.END;
+import static papercastle.com.papercastle.sim.Level.Terrain.NONE;
+import static papercastle.com.papercastle.sim.Level.Terrain.START;
+import static papercastle.com.papercastle.sim.Level.Terrain.WALL;
+
+public class LevelSolverTest {
+
+    // the fastest completions of Level.ALL_LEVELS, in ms
+    private static final long[] PAR_MS = {3500, 16500};
+
+    @Test
+    public void builtInLevelsSolveInParTime() throws Exception {
+        assertEquals(PAR_MS.length, Level.ALL_LEVELS.length);
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (int i = 0; i < Level.ALL_LEVELS.length; i++) {
+                final SolverResult result = new LevelSolver(Level.ALL_LEVELS[i]).solve(pool);
+                assertTrue("level " + i, result.isSolved());
+                assertEquals("level " + i, PAR_MS[i], result.getCompletionMs());
+                assertWinsAt(Level.ALL_LEVELS[i], result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void walledOffEndIsUnsolvable() throws Exception {
+        final Level level = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+                {START, NONE, WALL, NONE},
+                {NONE, NONE, WALL, END}
+        }, new int[0], new GuardObject.GuardFactory[0]);
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            final SolverResult result = new LevelSolver(level).solve(pool);
+            assertFalse(result.isSolved());
+            assertNull(result.getPlan());
+            assertEquals(-1, result.getCompletionMs());
+            assertTrue(result.isProvenUnsolvable());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void watchedEndIsOnlyUnsolvedWithinTheSearch() throws Exception {
+        final Level level = new Level(Level.CSType.GRID, new Level.Terrain[][] {
+                {START, NONE, END},
+                {NONE, NONE, NONE}
+        }, new int[0], new GuardObject.GuardFactory[] {
+                new GuardObject.StationaryGuardFactory(new Cell(1, 1), 2, 1)
+        });
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            final SolverResult result = new LevelSolver(level, 40, 8, 2).solve(pool);
+            assertFalse(result.isSolved());
+            assertFalse(result.isProvenUnsolvable());
+            assertEquals(40, result.getMaxSteps());
+            assertEquals(0, result.getMaxClones());
+            assertEquals(8, result.getMaxDecoyTargets());
+            assertEquals(2, result.getMaxDecoyDelay());
+            assertTrue(result.toString(), result.toString().contains("player moves <= 40"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // solve already checks this, but not by itself
+    private static void assertWinsAt(final Level level, final SolverResult result) {
+        final Simulation sim = new Simulation(level);
+        assertTrue(result.getPlan().apply(sim));
+        sim.switchToExecute();
+        while (!sim.isDone()) {
+            sim.tick();
+        }
+        assertEquals(Simulation.GameState.SUCCESS, sim.getGameState());
+        assertEquals(result.getCompletionMs(), sim.getTickCount() * Simulation.TICK_MS);
+    }
+}
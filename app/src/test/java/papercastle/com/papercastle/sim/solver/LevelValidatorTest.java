@@ -0,0 +1,97 @@
+package papercastle.com.papercastle.sim.solver;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LevelValidatorTest {
+
+    private static final String PACK = ""
+            + "// one of each status\n"
+            + "level open\n"
+            + "S.E\n"
+            + "level bad-line\n"
+            + "S.E\n"
+            + "guard sideways 1 1\n"
+            + "level two-starts\n"
+            + "S.S\n"
+            + "..E\n"
+            + "level walled-in\n"
+            + "S#E\n"
+            + "level watched\n"
+            + "S.E\n"
+            + "...\n"
+            + "guard stationary 1 1 2 1\n";
+
+    @Test
+    public void reportsEveryLevelInOrder() throws Exception {
+        final File pack = File.createTempFile("validator", ".txt");
+        try {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(pack), StandardCharsets.UTF_8)) {
+                out.write(PACK);
+            }
+            final StringWriter report = new StringWriter();
+            final int notOk = LevelValidator.validate(Collections.singletonList(pack.getPath()), LevelSolver.DEFAULT_MAX_STEPS,
+                    new PrintWriter(report));
+
+            final String[] lines = report.toString().split("\n");
+            assertEquals(5, lines.length);
+            assertEquals(4, notOk);
+            assertLine(lines[0], "open", LevelValidator.OK);
+            assertTrue(lines[0], lines[0].contains("\"par_ms\":1500,\"clones\":0"));
+            assertLine(lines[1], "bad-line", LevelValidator.INVALID);
+            assertTrue(lines[1], lines[1].contains("\"message\":\"line 6: "));
+            assertLine(lines[2], "two-starts", LevelValidator.INVALID);
+            assertLine(lines[3], "walled-in", LevelValidator.UNSOLVABLE);
+            assertFalse(lines[3], lines[3].contains("par_ms"));
+            assertLine(lines[4], "watched", LevelValidator.NO_SOLUTION_IN_SEARCH);
+            assertTrue(lines[4], lines[4].contains("\"max_steps\":" + LevelSolver.DEFAULT_MAX_STEPS + ",\"max_clones\":0,"));
+        } finally {
+            assertTrue(pack.delete());
+        }
+    }
+
+    @Test
+    public void solverLimitsAreNotInvalid() throws Exception {
+        final File pack = File.createTempFile("validator", ".txt");
+        try {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(pack), StandardCharsets.UTF_8)) {
+                out.write("level open\nS.E\nlevel two-starts\nS.S\n..E\n");
+            }
+            final StringWriter report = new StringWriter();
+            assertEquals(2, LevelValidator.validate(Collections.singletonList(pack.getPath()), 1 << 21, new PrintWriter(report)));
+
+            final String[] lines = report.toString().split("\n");
+            assertLine(lines[0], "open", LevelValidator.TOO_LARGE);
+            assertTrue(lines[0], lines[0].contains("\"message\":\"level too large to solve"));
+            assertLine(lines[1], "two-starts", LevelValidator.INVALID);
+        } finally {
+            assertTrue(pack.delete());
+        }
+    }
+
+    @Test
+    public void builtInLevelsAreOk() throws Exception {
+        final StringWriter report = new StringWriter();
+        assertEquals(0, LevelValidator.validate(Collections.<String>emptyList(), LevelSolver.DEFAULT_MAX_STEPS, new PrintWriter(report)));
+        final String[] lines = report.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"source\":\"builtin\",\"level\":\"0\",\"status\":\"ok\",\"par_ms\":3500,"));
+        assertTrue(lines[1], lines[1].startsWith("{\"source\":\"builtin\",\"level\":\"1\",\"status\":\"ok\",\"par_ms\":16500,"));
+    }
+
+    private static void assertLine(final String line, final String name, final String status) {
+        assertTrue(line, line.startsWith("{\"source\":\""));
+        assertTrue(line, line.contains("\"level\":\"" + name + "\",\"status\":\"" + status + "\""));
+        assertTrue(line, line.endsWith("}"));
+    }
+}